@@ -0,0 +1,173 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates deterministic synthetic input for the benchmarks so that runs are comparable across commits.
+ */
+public class BenchmarkData {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    /**
+     * @param lines number of lines
+     * @param lineLength number of characters on each line
+     * @return newline separated text
+     */
+    public static String lines(int lines, int lineLength) {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder(lines * (lineLength + 1));
+        for (int i = 0; i < lines; i++) {
+            for (int j = 0; j < lineLength; j++) {
+                buf.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @param lines number of lines
+     * @param fieldCount number of fields on each line
+     * @param fieldLength number of characters in each field
+     * @param delimiter delimiter between the fields
+     * @return newline separated csv text; the first field of each line is the line number so it can be used as a sorted key
+     */
+    public static String csv(int lines, int fieldCount, int fieldLength, char delimiter) {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            buf.append(i);
+            for (int f = 1; f < fieldCount; f++) {
+                buf.append(delimiter);
+                for (int j = 0; j < fieldLength; j++) {
+                    buf.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @param blobs number of blobs
+     * @param blobSize approximate number of characters in each blob
+     * @return xml like content with blobs of the form &lt;node&gt;...&lt;/node&gt; separated by some whitespace
+     */
+    public static String xmlBlobs(int blobs, int blobSize) {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder();
+        buf.append("<osm>\n");
+        for (int i = 0; i < blobs; i++) {
+            buf.append("  <node id=\"").append(i).append("\">\n");
+            int written = 0;
+            while (written < blobSize) {
+                buf.append("    <tag k=\"k").append(written).append("\" v=\"");
+                for (int j = 0; j < 10; j++) {
+                    buf.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                buf.append("\"/>\n");
+                written += 30;
+            }
+            buf.append("  </node>\n");
+        }
+        buf.append("</osm>\n");
+        return buf.toString();
+    }
+
+    /**
+     * @param elements number of elements
+     * @param elementSize approximate number of characters in each element
+     * @return a json array of objects with an id and a list of tags, like {@link #xmlBlobs(int, int)}
+     */
+    public static String jsonArray(int elements, int elementSize) {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder();
+        buf.append("[\n");
+        for (int i = 0; i < elements; i++) {
+            buf.append(i == 0 ? "  " : ",\n  ").append("{\"id\":").append(i).append(",\"tags\":[");
+            int written = 0;
+            while (written < elementSize) {
+                buf.append(written == 0 ? "" : ",").append("{\"k\":\"k").append(written).append("\",\"v\":\"");
+                for (int j = 0; j < 10; j++) {
+                    buf.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                buf.append("\"}");
+                written += 30;
+            }
+            buf.append("]}");
+        }
+        buf.append("\n]\n");
+        return buf.toString();
+    }
+
+    /**
+     * @param size number of elements
+     * @return list with the numbers 0..size-1
+     */
+    public static List<Integer> integers(int size) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    public static StringReader reader(String content) {
+        return new StringReader(content);
+    }
+
+    /**
+     * @param content file content
+     * @return a temporary UTF-8 file with the content that is deleted on exit
+     * @throws IOException if the file cannot be written
+     */
+    public static File file(String content) throws IOException {
+        File file = File.createTempFile("benchmark", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(Charset.forName("UTF-8")));
+        return file;
+    }
+
+    /**
+     * @param content file content
+     * @return a temporary gzipped UTF-8 file with the content that is deleted on exit
+     * @throws IOException if the file cannot be written
+     */
+    public static File gzipFile(String content) throws IOException {
+        File file = File.createTempFile("benchmark", ".gz");
+        file.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(content.getBytes(Charset.forName("UTF-8")));
+        }
+        return file;
+    }
+
+    /**
+     * @param content file content
+     * @param memberSize number of chars compressed into each gzip member
+     * @return a temporary file with concatenated gzip members, like e.g. pigz --independent or cat a.gz b.gz would produce
+     * @throws IOException if the file cannot be written
+     */
+    public static File gzipMembersFile(String content, int memberSize) throws IOException {
+        File file = File.createTempFile("benchmark", ".gz");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int offset = 0; offset < content.length(); offset += memberSize) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(content.substring(offset, Math.min(content.length(), offset + memberSize)).getBytes(Charset.forName("UTF-8")));
+                gzip.finish();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,110 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.BlobIterable;
+import com.jillesvangurp.iterables.JsonArrayIterable;
+import com.jillesvangurp.iterables.ParallelBlobIterable;
+import com.jillesvangurp.iterables.XmlElementIterable;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobIterableBenchmark {
+    @Param({ "1000" })
+    int blobs;
+
+    @Param({ "100", "1000", "10000" })
+    int blobSize;
+
+    /**
+     * Only used by iterateFileInParallel.
+     */
+    @Param({ "4" })
+    int threads;
+
+    String content;
+    String json;
+    File file;
+
+    @Setup
+    public void setup() throws IOException {
+        content = BenchmarkData.xmlBlobs(blobs, blobSize);
+        json = BenchmarkData.jsonArray(blobs, blobSize);
+        file = BenchmarkData.file(content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void iterateBlobs(Blackhole blackhole) {
+        for (String blob : new BlobIterable(BenchmarkData.reader(content), "<node", "</node>")) {
+            blackhole.consume(blob);
+        }
+    }
+
+    /**
+     * Splits the same content by tracking the nesting of the elements instead of searching for the tags.
+     */
+    @Benchmark
+    public void iterateElements(Blackhole blackhole) {
+        for (String blob : new XmlElementIterable(BenchmarkData.reader(content), 1)) {
+            blackhole.consume(blob);
+        }
+    }
+
+    @Benchmark
+    public void iterateJsonArray(Blackhole blackhole) {
+        for (String blob : new JsonArrayIterable(BenchmarkData.reader(json))) {
+            blackhole.consume(blob);
+        }
+    }
+
+    @Benchmark
+    public void iterateFile(Blackhole blackhole) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"))) {
+            for (String blob : new BlobIterable(reader, "<node", "</node>")) {
+                blackhole.consume(blob);
+            }
+        }
+    }
+
+    /**
+     * Extracts the blobs from 64KB chunks on multiple threads, in order.
+     */
+    @Benchmark
+    public void iterateFileInParallel(Blackhole blackhole) throws IOException {
+        try (ParallelBlobIterable it = new ParallelBlobIterable(file, Charset.forName("UTF-8"), new String[] { "<node" }, new String[] { "</node>" }, threads,
+                64 * 1024, true)) {
+            for (String blob : it) {
+                blackhole.consume(blob);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.CSVLineIterable;
+import com.jillesvangurp.iterables.ColumnAggregates;
+import com.jillesvangurp.iterables.ColumnBatch;
+import com.jillesvangurp.iterables.CsvSchema;
+import com.jillesvangurp.iterables.CsvRecord;
+import com.jillesvangurp.iterables.Filter;
+import com.jillesvangurp.iterables.Iterables;
+import com.jillesvangurp.iterables.LineIterable;
+import com.jillesvangurp.iterables.ParallelCsvIterable;
+import com.jillesvangurp.iterables.Reducers;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVLineIterableBenchmark {
+    @Param({ "10000" })
+    int lines;
+
+    @Param({ "3", "20", "80" })
+    int fieldCount;
+
+    @Param({ "8" })
+    int fieldLength;
+
+    /**
+     * Only used by iterateFileInParallel.
+     */
+    @Param({ "4" })
+    int threads;
+
+    String content;
+    File file;
+
+    @Setup
+    public void setup() throws IOException {
+        content = BenchmarkData.csv(lines, fieldCount, fieldLength, '\t');
+        file = BenchmarkData.file(content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void iterateRecords(Blackhole blackhole) {
+        for (List<String> fields : new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t')) {
+            blackhole.consume(fields);
+        }
+    }
+
+    /**
+     * Reuses a single record and only materializes the key field.
+     */
+    @Benchmark
+    public void iterateReusedRecords(Blackhole blackhole) {
+        for (CsvRecord record : new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').records()) {
+            blackhole.consume(record.get(0));
+        }
+    }
+
+    /**
+     * Only parses two of the columns.
+     */
+    @Benchmark
+    public void iterateProjectedColumns(Blackhole blackhole) {
+        for (List<String> fields : new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').withColumns(0, fieldCount / 2)) {
+            blackhole.consume(fields);
+        }
+    }
+
+    /**
+     * Drops 90% of the records based on the first field before parsing the rest of the record.
+     */
+    @Benchmark
+    public void iterateFilteredRecords(Blackhole blackhole) {
+        CSVLineIterable iterable = new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').withFilter(0, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                return field.charAt(field.length() - 1) == '0';
+            }
+        });
+        for (List<String> fields : iterable) {
+            blackhole.consume(fields);
+        }
+    }
+
+    /**
+     * Parses the numeric first field with Long.parseLong on the field String.
+     */
+    @Benchmark
+    public long sumParsedKeys() {
+        long sum = 0;
+        for (List<String> fields : new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').withColumns(0)) {
+            sum += Long.parseLong(fields.get(0));
+        }
+        return sum;
+    }
+
+    /**
+     * Parses the numeric first field directly from the record's buffer.
+     */
+    @Benchmark
+    public long sumTypedKeys() {
+        long sum = 0;
+        for (CsvRecord record : new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').withColumns(0).records()) {
+            sum += record.getLong(0);
+        }
+        return sum;
+    }
+
+    /**
+     * Decodes the key column into batches of long vectors and sums them per batch.
+     */
+    @Benchmark
+    public long sumKeysInBatches() {
+        CsvSchema schema = new CsvSchema().column("key", CsvSchema.Type.LONG);
+        Iterable<ColumnBatch> batches = new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t').withSchema(schema, false).batches();
+        return Iterables.reduce(Iterables.map(batches, ColumnAggregates.sumLong(0)), Reducers.sum(Long.class));
+    }
+
+    /**
+     * Parses the file in 64KB chunks on multiple threads, in order.
+     */
+    @Benchmark
+    public void iterateFileInParallel(Blackhole blackhole) throws IOException {
+        try (ParallelCsvIterable it = new ParallelCsvIterable(file, Charset.forName("UTF-8"), '\t', '"', threads, 64 * 1024, true)) {
+            for (List<String> fields : it) {
+                blackhole.consume(fields);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.ConcurrentProcessingIterable;
+import com.jillesvangurp.iterables.PipelineMetrics;
+import com.jillesvangurp.iterables.Processor;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentProcessingIterableBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    /**
+     * Includes the producer thread.
+     */
+    @Param({ "2", "4", "8" })
+    int threads;
+
+    @Param({ "10", "100", "1000" })
+    int blockSize;
+
+    /**
+     * Amount of cpu burned per item, see {@link Blackhole#consumeCPU(long)}.
+     */
+    @Param({ "0", "100" })
+    int workPerItem;
+
+    List<Integer> input;
+    Processor<Integer, Integer> processor;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+        final int tokens = workPerItem;
+        processor = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                if (tokens > 0) {
+                    Blackhole.consumeCPU(tokens);
+                }
+                return input;
+            }
+        };
+    }
+
+    @Benchmark
+    public void processConcurrently(Blackhole blackhole) throws IOException {
+        try (ConcurrentProcessingIterable<Integer, Integer> it = new ConcurrentProcessingIterable<>(input, processor, blockSize, threads, 100)) {
+            for (Integer i : it) {
+                blackhole.consume(i);
+            }
+        }
+    }
+
+    /**
+     * Same as processConcurrently but with {@link PipelineMetrics} enabled, to keep an eye on the overhead of the metrics.
+     */
+    @Benchmark
+    public void processConcurrentlyWithMetrics(Blackhole blackhole) throws IOException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        try (ConcurrentProcessingIterable<Integer, Integer> it = new ConcurrentProcessingIterable<>(input, processor, blockSize, threads, 100).withListener(metrics)) {
+            for (Integer i : it) {
+                blackhole.consume(i);
+            }
+        }
+        blackhole.consume(metrics.snapshot());
+    }
+}
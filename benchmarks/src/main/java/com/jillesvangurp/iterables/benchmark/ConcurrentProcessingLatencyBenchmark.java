@@ -0,0 +1,66 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.ConcurrentProcessingIterable;
+import com.jillesvangurp.iterables.Processor;
+
+/**
+ * Measures the time it takes to set up, drain and close a pipeline for small inputs. For short lived pipelines this
+ * is dominated by the hand off between the threads and the detection of the end of the input rather than by the
+ * processing itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentProcessingLatencyBenchmark {
+    @Param({ "1", "10", "1000" })
+    int size;
+
+    @Param({ "4" })
+    int threads;
+
+    @Param({ "10" })
+    int blockSize;
+
+    List<Integer> input;
+    Processor<Integer, Integer> processor;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+        processor = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                return input;
+            }
+        };
+    }
+
+    @Benchmark
+    public void drain(Blackhole blackhole) throws IOException {
+        try (ConcurrentProcessingIterable<Integer, Integer> it = new ConcurrentProcessingIterable<>(input, processor, blockSize, threads, 100)) {
+            for (Integer i : it) {
+                blackhole.consume(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.ExternalSortingIterable;
+import com.jillesvangurp.iterables.Serializers;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalSortingIterableBenchmark {
+    private static final Comparator<Long> NATURAL = new Comparator<Long>() {
+        @Override
+        public int compare(Long o1, Long o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    @Param({ "200000" })
+    int elements;
+
+    @Param({ "20000" })
+    int runSize;
+
+    @Param({ "1", "4" })
+    int threads;
+
+    @Param({ "false", "true" })
+    boolean compressed;
+
+    List<Long> input;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        input = new ArrayList<>(elements);
+        for (int i = 0; i < elements; i++) {
+            input.add((long) random.nextInt(Integer.MAX_VALUE));
+        }
+    }
+
+    @Benchmark
+    public void externalSort(Blackhole blackhole) {
+        ExternalSortingIterable<Long> sorted = new ExternalSortingIterable<Long>(input, Serializers.longs(), NATURAL).withRunSize(runSize)
+                .withThreads(threads).withCompression(compressed);
+        for (Long value : sorted) {
+            blackhole.consume(value);
+        }
+    }
+
+    /**
+     * Sorting everything in memory, for comparison.
+     */
+    @Benchmark
+    public void inMemorySort(Blackhole blackhole) {
+        List<Long> copy = new ArrayList<>(input);
+        Collections.sort(copy, NATURAL);
+        for (Long value : copy) {
+            blackhole.consume(value);
+        }
+    }
+}
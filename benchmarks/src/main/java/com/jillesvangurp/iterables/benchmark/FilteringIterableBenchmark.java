@@ -0,0 +1,59 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.Filter;
+import com.jillesvangurp.iterables.FilteringIterable;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilteringIterableBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    /**
+     * One in every n elements passes the filter.
+     */
+    @Param({ "1", "10", "1000" })
+    int selectivity;
+
+    List<Integer> input;
+    Filter<Integer> filter;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+        final int n = selectivity;
+        filter = new Filter<Integer>() {
+            @Override
+            public boolean passes(Integer o) {
+                return o % n == 0;
+            }
+        };
+    }
+
+    @Benchmark
+    public void filter(Blackhole blackhole) {
+        for (Integer i : new FilteringIterable<>(input, filter)) {
+            blackhole.consume(i);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.LineIterable;
+
+/**
+ * Compares inflating gzipped files on the iterating thread with inflating them on a background thread, and with
+ * inflating the members of a multi member file on several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GzipLineIterableBenchmark {
+    @Param({ "100000" })
+    int lines;
+
+    @Param({ "100" })
+    int lineLength;
+
+    /**
+     * Amount of cpu burned per line by the consumer, see {@link Blackhole#consumeCPU(long)}.
+     */
+    @Param({ "0", "100" })
+    int workPerLine;
+
+    @Param({ "4" })
+    int threads;
+
+    File file;
+    File membersFile;
+
+    @Setup
+    public void setup() throws IOException {
+        String content = BenchmarkData.lines(lines, lineLength);
+        file = BenchmarkData.gzipFile(content);
+        membersFile = BenchmarkData.gzipMembersFile(content, 1024 * 1024);
+    }
+
+    @Benchmark
+    public void openGzipFile(Blackhole blackhole) throws IOException {
+        try (LineIterable it = LineIterable.openGzipFile(file.getAbsolutePath())) {
+            consume(it, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void openGzipFileWithReadAhead(Blackhole blackhole) throws IOException {
+        try (LineIterable it = LineIterable.openGzipFileWithReadAhead(file.getAbsolutePath())) {
+            consume(it, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void openMultiMemberGzipFile(Blackhole blackhole) throws IOException {
+        try (LineIterable it = LineIterable.openGzipFile(membersFile.getAbsolutePath())) {
+            consume(it, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void openMultiMemberGzipFileInParallel(Blackhole blackhole) throws IOException {
+        try (LineIterable it = LineIterable.openGzipFileInParallel(membersFile.getAbsolutePath(), threads)) {
+            consume(it, blackhole);
+        }
+    }
+
+    private void consume(LineIterable it, Blackhole blackhole) {
+        for (String line : it) {
+            if (workPerLine > 0) {
+                Blackhole.consumeCPU(workPerLine);
+            }
+            blackhole.consume(line);
+        }
+    }
+}
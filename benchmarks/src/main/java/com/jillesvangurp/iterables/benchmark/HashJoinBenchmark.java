@@ -0,0 +1,131 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.CSVLineIterable;
+import com.jillesvangurp.iterables.CsvRecord;
+import com.jillesvangurp.iterables.HashJoin;
+import com.jillesvangurp.iterables.LineIterable;
+import com.jillesvangurp.iterables.LongKeyExtractor;
+import com.jillesvangurp.iterables.SortMergeJoin;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashJoinBenchmark {
+    private static final LongKeyExtractor<CsvRecord> RECORD_KEY = new LongKeyExtractor<CsvRecord>() {
+        @Override
+        public long key(CsvRecord record) {
+            return record.getLong(0);
+        }
+    };
+
+    private static final LongKeyExtractor<List<String>> LIST_KEY = new LongKeyExtractor<List<String>>() {
+        @Override
+        public long key(List<String> record) {
+            return Long.parseLong(record.get(0));
+        }
+    };
+
+    @Param({ "100000" })
+    int lines;
+
+    @Param({ "10000" })
+    int buildLines;
+
+    String probe;
+    List<List<String>> build;
+
+    @Setup
+    public void setup() {
+        probe = BenchmarkData.csv(lines, 5, 8, '\t');
+        build = new ArrayList<>();
+        // every tenth key matches
+        for (int i = 0; i < buildLines; i++) {
+            List<String> record = new ArrayList<>();
+            record.add(Integer.toString(i * 10));
+            record.add("value" + i);
+            build.add(record);
+        }
+    }
+
+    @Benchmark
+    public void hashJoin(Blackhole blackhole) {
+        HashJoin.Cursor<CsvRecord, List<String>> cursor = HashJoin.joinOnLongKeys(csv(probe).records(), RECORD_KEY, build, LIST_KEY, SortMergeJoin.JoinType.INNER)
+                .cursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.left().next());
+            Iterator<List<String>> matches = cursor.right();
+            while (matches.hasNext()) {
+                blackhole.consume(matches.next());
+            }
+        }
+    }
+
+    /**
+     * A HashMap with boxed keys, for comparison.
+     */
+    @Benchmark
+    public void hashMapJoin(Blackhole blackhole) {
+        Map<Long, List<List<String>>> index = new HashMap<>();
+        for (List<String> record : build) {
+            Long key = LIST_KEY.key(record);
+            List<List<String>> matches = index.get(key);
+            if (matches == null) {
+                matches = new ArrayList<>(1);
+                index.put(key, matches);
+            }
+            matches.add(record);
+        }
+        for (CsvRecord record : csv(probe).records()) {
+            List<List<String>> matches = index.get(record.getLong(0));
+            if (matches != null) {
+                blackhole.consume(record);
+                for (List<String> match : matches) {
+                    blackhole.consume(match);
+                }
+            }
+        }
+    }
+
+    /**
+     * Both sides happen to be sorted here, so no sorting is needed for the merge.
+     */
+    @Benchmark
+    public void sortMergeJoin(Blackhole blackhole) {
+        SortMergeJoin.Cursor<CsvRecord, List<String>> cursor = SortMergeJoin.joinOnLongKeys(csv(probe).records(), RECORD_KEY, build, LIST_KEY,
+                SortMergeJoin.JoinType.INNER).cursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.left().next());
+            Iterator<List<String>> matches = cursor.right();
+            while (matches.hasNext()) {
+                blackhole.consume(matches.next());
+            }
+        }
+    }
+
+    private static CSVLineIterable csv(String content) {
+        return new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t');
+    }
+}
@@ -0,0 +1,90 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.Filter;
+import com.jillesvangurp.iterables.Iterables;
+import com.jillesvangurp.iterables.Processor;
+import com.jillesvangurp.iterables.Reducer;
+import com.jillesvangurp.iterables.Reducers;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterablesBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    /**
+     * Only used for mapReduce, includes the producer thread.
+     */
+    @Param({ "2", "4", "8" })
+    int threads;
+
+    @Param({ "1000" })
+    int blockSize;
+
+    List<Integer> input;
+    Processor<Integer, Long> toLong;
+    Filter<Integer> even;
+    Reducer<Long> sum;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+        toLong = new Processor<Integer, Long>() {
+            @Override
+            public Long process(Integer input) {
+                return input.longValue();
+            }
+        };
+        even = new Filter<Integer>() {
+            @Override
+            public boolean passes(Integer o) {
+                return o % 2 == 0;
+            }
+        };
+        sum = Reducers.sum(Long.class);
+    }
+
+    @Benchmark
+    public void map(Blackhole blackhole) {
+        for (Long l : Iterables.map(input, toLong)) {
+            blackhole.consume(l);
+        }
+    }
+
+    @Benchmark
+    public void filter(Blackhole blackhole) {
+        for (Integer i : Iterables.filter(input, even)) {
+            blackhole.consume(i);
+        }
+    }
+
+    @Benchmark
+    public Long reduce() {
+        return Iterables.reduce(Iterables.map(input, toLong), sum);
+    }
+
+    @Benchmark
+    public Long mapReduce() {
+        return Iterables.mapReduce(input, toLong, sum, blockSize, threads, 100);
+    }
+}
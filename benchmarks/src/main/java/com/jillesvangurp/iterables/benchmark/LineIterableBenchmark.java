@@ -0,0 +1,46 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.LineIterable;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineIterableBenchmark {
+    @Param({ "10000" })
+    int lines;
+
+    @Param({ "10", "100", "1000" })
+    int lineLength;
+
+    String content;
+
+    @Setup
+    public void setup() {
+        content = BenchmarkData.lines(lines, lineLength);
+    }
+
+    @Benchmark
+    public void iterateLines(Blackhole blackhole) {
+        for (String line : new LineIterable(BenchmarkData.reader(content))) {
+            blackhole.consume(line);
+        }
+    }
+}
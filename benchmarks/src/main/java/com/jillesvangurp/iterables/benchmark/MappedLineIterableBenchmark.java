@@ -0,0 +1,128 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.ByteLine;
+import com.jillesvangurp.iterables.ConcurrentProcessingIterable;
+import com.jillesvangurp.iterables.Iterables;
+import com.jillesvangurp.iterables.LineIterable;
+import com.jillesvangurp.iterables.MappedLineIterable;
+import com.jillesvangurp.iterables.Processor;
+
+/**
+ * Compares reading a file with {@link LineIterable} and {@link MappedLineIterable}, both when every line is needed as
+ * a String and when a filter on the first character discards most lines. The last two benchmarks compare decoding the
+ * lines concurrently behind a single producer thread with reading and decoding ranges of the file in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedLineIterableBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Param({ "100000" })
+    int lines;
+
+    @Param({ "10", "100", "1000" })
+    int lineLength;
+
+    /**
+     * Threads used by the concurrent benchmarks.
+     */
+    @Param({ "4" })
+    int threads;
+
+    File file;
+    Processor<ByteLine, String> decode = new Processor<ByteLine, String>() {
+        @Override
+        public String process(ByteLine input) {
+            return input.toString();
+        }
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        file = BenchmarkData.file(BenchmarkData.lines(lines, lineLength));
+    }
+
+    @Benchmark
+    public void lineIterable(Blackhole blackhole) throws IOException {
+        try (LineIterable it = new LineIterable(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            for (String line : it) {
+                blackhole.consume(line);
+            }
+        }
+    }
+
+    @Benchmark
+    public void lineIterableFiltered(Blackhole blackhole) throws IOException {
+        try (LineIterable it = new LineIterable(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            for (String line : it) {
+                if (line.length() > 0 && line.charAt(0) == 'a') {
+                    blackhole.consume(line);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedLineIterable(Blackhole blackhole) throws IOException {
+        try (MappedLineIterable it = new MappedLineIterable(file)) {
+            for (ByteLine line : it) {
+                blackhole.consume(line.toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedLineIterableFiltered(Blackhole blackhole) throws IOException {
+        try (MappedLineIterable it = new MappedLineIterable(file)) {
+            for (ByteLine line : it) {
+                if (line.byteLength() > 0 && line.byteAt(0) == 'a') {
+                    blackhole.consume(line.toString());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void processConcurrently(Blackhole blackhole) throws IOException {
+        try (MappedLineIterable it = new MappedLineIterable(file);
+                ConcurrentProcessingIterable<ByteLine, String> processed = Iterables.processConcurrently(it, decode, 100, threads + 1, 100)) {
+            for (String line : processed) {
+                blackhole.consume(line);
+            }
+        }
+    }
+
+    @Benchmark
+    public void processPartitionsConcurrently(Blackhole blackhole) throws IOException {
+        try (MappedLineIterable it = new MappedLineIterable(file);
+                ConcurrentProcessingIterable<ByteLine, String> processed = Iterables.processPartitionsConcurrently(it.split(threads), decode, 100, 100)) {
+            for (String line : processed) {
+                blackhole.consume(line);
+            }
+        }
+    }
+}
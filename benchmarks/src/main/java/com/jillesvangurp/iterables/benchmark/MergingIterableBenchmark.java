@@ -0,0 +1,132 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.LongKeyExtractor;
+import com.jillesvangurp.iterables.MergingIterable;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergingIterableBenchmark {
+    private static final LongKeyExtractor<Long> IDENTITY = new LongKeyExtractor<Long>() {
+        @Override
+        public long key(Long value) {
+            return value;
+        }
+    };
+
+    private static final Comparator<Long> NATURAL = new Comparator<Long>() {
+        @Override
+        public int compare(Long o1, Long o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    @Param({ "64" })
+    int inputs;
+
+    @Param({ "100000" })
+    int elements;
+
+    List<List<Long>> shards;
+
+    @Setup
+    public void setup() {
+        shards = new ArrayList<>();
+        for (int i = 0; i < inputs; i++) {
+            shards.add(new ArrayList<Long>());
+        }
+        // round robin, so every input takes part in the whole merge
+        for (int i = 0; i < elements; i++) {
+            shards.get((i * 31) % inputs).add((long) i);
+        }
+    }
+
+    @Benchmark
+    public void mergeOnLongKeys(Blackhole blackhole) {
+        for (Long value : MergingIterable.onLongKeys(shards, IDENTITY)) {
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public void mergeWithComparator(Blackhole blackhole) {
+        for (Long value : new MergingIterable<Long>(shards, NATURAL)) {
+            blackhole.consume(value);
+        }
+    }
+
+    /**
+     * Chains two way merges, as was needed with MergingCsvIterable.
+     */
+    @Benchmark
+    public void mergePairwise(Blackhole blackhole) {
+        Iterable<Long> merged = shards.get(0);
+        for (int i = 1; i < shards.size(); i++) {
+            merged = MergingIterable.onLongKeys(Arrays.asList(merged, shards.get(i)), IDENTITY);
+        }
+        for (Long value : merged) {
+            blackhole.consume(value);
+        }
+    }
+
+    /**
+     * Binary heap of input iterators.
+     */
+    @Benchmark
+    public void mergeWithPriorityQueue(Blackhole blackhole) {
+        PriorityQueue<Head> heap = new PriorityQueue<>(inputs);
+        for (List<Long> shard : shards) {
+            Iterator<Long> it = shard.iterator();
+            if (it.hasNext()) {
+                heap.add(new Head(it));
+            }
+        }
+        while (!heap.isEmpty()) {
+            Head head = heap.poll();
+            blackhole.consume(head.value);
+            if (head.it.hasNext()) {
+                head.value = head.it.next();
+                heap.add(head);
+            }
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+        final Iterator<Long> it;
+        Long value;
+
+        Head(Iterator<Long> it) {
+            this.it = it;
+            value = it.next();
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            return value.compareTo(o.value);
+        }
+    }
+}
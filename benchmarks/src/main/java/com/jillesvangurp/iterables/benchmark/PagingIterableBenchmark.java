@@ -0,0 +1,50 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.Iterables;
+
+/**
+ * PagingIterable is package private, so this goes through {@link Iterables#page(Iterable, int)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagingIterableBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    @Param({ "10", "100", "10000" })
+    int pageSize;
+
+    List<Integer> input;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+    }
+
+    @Benchmark
+    public void page(Blackhole blackhole) {
+        for (List<Integer> page : Iterables.page(input, pageSize)) {
+            blackhole.consume(page);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.ConcurrentProcessingIterable;
+import com.jillesvangurp.iterables.Processor;
+import com.jillesvangurp.iterables.WaitStrategy;
+
+/**
+ * Compares the LinkedBlockingQueues with the ring buffers used to hand blocks between the threads of a
+ * {@link ConcurrentProcessingIterable}. Uses small blocks and a trivial processor so the hand off dominates.
+ * {@link WaitStrategy#SPIN} is left out because it only makes sense with a core per thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueTransportBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    /**
+     * Includes the producer thread.
+     */
+    @Param({ "2", "8", "32" })
+    int threads;
+
+    @Param({ "1", "10" })
+    int blockSize;
+
+    @Param({ "LINKED", "YIELD", "PARK" })
+    String transport;
+
+    List<Integer> input;
+    Processor<Integer, Integer> processor;
+
+    @Setup
+    public void setup() {
+        input = BenchmarkData.integers(size);
+        processor = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                return input;
+            }
+        };
+    }
+
+    @Benchmark
+    public void processConcurrently(Blackhole blackhole) throws IOException {
+        try (ConcurrentProcessingIterable<Integer, Integer> it = create()) {
+            for (Integer i : it) {
+                blackhole.consume(i);
+            }
+        }
+    }
+
+    private ConcurrentProcessingIterable<Integer, Integer> create() {
+        if ("LINKED".equals(transport)) {
+            return new ConcurrentProcessingIterable<>(input, processor, blockSize, threads, 100);
+        } else {
+            return new ConcurrentProcessingIterable<>(input, processor, blockSize, threads, 100, WaitStrategy.valueOf(transport));
+        }
+    }
+}
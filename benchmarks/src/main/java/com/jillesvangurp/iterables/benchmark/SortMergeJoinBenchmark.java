@@ -0,0 +1,83 @@
+package com.jillesvangurp.iterables.benchmark;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jillesvangurp.iterables.CSVLineIterable;
+import com.jillesvangurp.iterables.CsvRecord;
+import com.jillesvangurp.iterables.LineIterable;
+import com.jillesvangurp.iterables.LongKeyExtractor;
+import com.jillesvangurp.iterables.MergingCsvIterable;
+import com.jillesvangurp.iterables.SortMergeJoin;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortMergeJoinBenchmark {
+    @Param({ "10000" })
+    int lines;
+
+    @Param({ "10" })
+    int fieldCount;
+
+    String primary;
+    String secondary;
+
+    @Setup
+    public void setup() {
+        primary = BenchmarkData.csv(lines, fieldCount, 8, '\t');
+        // keys 0 to 3 * lines, so a third of the secondary lines match a primary line
+        secondary = BenchmarkData.csv(lines * 3, fieldCount, 8, '\t');
+    }
+
+    @Benchmark
+    public void mergingCsvIterable(Blackhole blackhole) {
+        MergingCsvIterable merging = new MergingCsvIterable(csv(primary), csv(secondary), 0, 0);
+        for (List<List<String>> records : merging) {
+            blackhole.consume(records);
+        }
+    }
+
+    /**
+     * Streams the groups of reused records without collecting them.
+     */
+    @Benchmark
+    public void joinCursor(Blackhole blackhole) {
+        LongKeyExtractor<CsvRecord> key = new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(0);
+            }
+        };
+        SortMergeJoin.Cursor<CsvRecord, CsvRecord> cursor = SortMergeJoin.joinOnLongKeys(csv(primary).records(), key, csv(secondary).records(), key,
+                SortMergeJoin.JoinType.LEFT).cursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.left().next().get(1));
+            Iterator<CsvRecord> right = cursor.right();
+            while (right.hasNext()) {
+                blackhole.consume(right.next().get(1));
+            }
+        }
+    }
+
+    private static CSVLineIterable csv(String content) {
+        return new CSVLineIterable(new LineIterable(BenchmarkData.reader(content)), '\t');
+    }
+}
@@ -0,0 +1,99 @@
+package com.jillesvangurp.iterables;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runtime state for the adaptive mode of {@link ConcurrentProcessingIterable}. The workers report the time they spent
+ * on each block, which is used to pick the size of the next block the producer cuts and, together with the occupancy of
+ * the queues, to decide how many workers should be active.
+ */
+class AdaptiveController {
+    // weight of the latest measurement in the moving average of the processing time per item
+    private static final double ALPHA = 0.25;
+
+    private final AdaptiveTuning tuning;
+    private final BlockingQueue<?> scheduledWork;
+    private final BlockingQueue<?> completedWork;
+
+    private volatile int blockSize;
+    private volatile int activeWorkers;
+    // guarded by this
+    private double averageItemNanos = -1;
+    private long lastAdjustment = System.nanoTime();
+    private boolean endOfInput = false;
+
+    AdaptiveController(AdaptiveTuning tuning, BlockingQueue<?> scheduledWork, BlockingQueue<?> completedWork) {
+        this.tuning = tuning;
+        this.scheduledWork = scheduledWork;
+        this.completedWork = completedWork;
+        blockSize = tuning.getMinBlockSize();
+        // start in the middle and let the queue occupancy decide
+        activeWorkers = Math.max(tuning.getMinWorkers(), (tuning.getMinWorkers() + tuning.getMaxWorkers()) / 2);
+    }
+
+    /**
+     * @return the size of the next block the producer should cut
+     */
+    int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return number of workers that are currently allowed to take work
+     */
+    int activeWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * Blocks the worker with the given index for as long as it is not one of the active workers.
+     * @param worker index of the worker
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void awaitTurn(int worker) throws InterruptedException {
+        while(worker >= activeWorkers && !endOfInput) {
+            wait();
+        }
+    }
+
+    /**
+     * Called when a worker sees the end of the input. Wakes up all inactive workers so they can see it as well.
+     */
+    synchronized void endOfInput() {
+        endOfInput = true;
+        notifyAll();
+    }
+
+    /**
+     * Called by the workers after processing a block.
+     * @param items number of items in the block
+     * @param nanos time it took to process the block
+     */
+    synchronized void blockCompleted(int items, long nanos) {
+        if(items == 0) {
+            return;
+        }
+        double itemNanos = (double) nanos / items;
+        averageItemNanos = averageItemNanos < 0 ? itemNanos : ALPHA * itemNanos + (1 - ALPHA) * averageItemNanos;
+        long size = Math.round(tuning.getTargetBlockNanos() / Math.max(1.0, averageItemNanos));
+        blockSize = (int) Math.max(tuning.getMinBlockSize(), Math.min(tuning.getMaxBlockSize(), size));
+
+        long now = System.nanoTime();
+        // give each change some time to have an effect before making the next one
+        if(now - lastAdjustment >= tuning.getTargetBlockNanos()) {
+            lastAdjustment = now;
+            if(completedWork.remainingCapacity() == 0 || scheduledWork.isEmpty()) {
+                // the consumer is the bottleneck or the workers are starved; more workers won't help
+                if(activeWorkers > tuning.getMinWorkers()) {
+                    activeWorkers--;
+                }
+            } else if(scheduledWork.remainingCapacity() == 0 || scheduledWork.size() > activeWorkers) {
+                // the producer is ahead of the workers
+                if(activeWorkers < tuning.getMaxWorkers()) {
+                    activeWorkers++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.jillesvangurp.iterables;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds for the adaptive mode of {@link ConcurrentProcessingIterable}. In adaptive mode, the block size and the number
+ * of active worker threads are not fixed but tuned at runtime within these bounds.
+ *
+ * The block size is chosen such that processing a block takes roughly the target block duration, based on the measured
+ * processing time per item. So cheap items end up in large blocks, which keeps the overhead of the queues low, and
+ * expensive items end up in small blocks, which avoids having a few workers finish large blocks long after the others
+ * are done. Worker threads are activated when the scheduled work queue fills up and deactivated again when the workers
+ * run out of work or the consumer can't keep up.
+ */
+public class AdaptiveTuning {
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final long targetBlockNanos;
+
+    /**
+     * @param minBlockSize smallest block size the producer will cut, at least 1
+     * @param maxBlockSize largest block size the producer will cut
+     * @param minWorkers minimum number of active worker threads, at least 1
+     * @param maxWorkers maximum number of active worker threads; this many threads are started, excluding the producer thread
+     * @param targetBlockDuration how long it should take a worker to process a block
+     * @param unit unit of the targetBlockDuration
+     */
+    public AdaptiveTuning(int minBlockSize, int maxBlockSize, int minWorkers, int maxWorkers, long targetBlockDuration, TimeUnit unit) {
+        if(minBlockSize < 1 || maxBlockSize < minBlockSize) {
+            throw new IllegalArgumentException("block size bounds should satisfy 1 <= minBlockSize <= maxBlockSize");
+        }
+        if(minWorkers < 1 || maxWorkers < minWorkers) {
+            throw new IllegalArgumentException("worker bounds should satisfy 1 <= minWorkers <= maxWorkers");
+        }
+        if(targetBlockDuration <= 0) {
+            throw new IllegalArgumentException("targetBlockDuration should be positive");
+        }
+        this.minBlockSize = minBlockSize;
+        this.maxBlockSize = maxBlockSize;
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.targetBlockNanos = unit.toNanos(targetBlockDuration);
+    }
+
+    /**
+     * @return block sizes between 1 and 10000, between 1 and one worker per available processor, and blocks of roughly 10ms.
+     */
+    public static AdaptiveTuning defaults() {
+        return new AdaptiveTuning(1, 10000, 1, Runtime.getRuntime().availableProcessors(), 10, TimeUnit.MILLISECONDS);
+    }
+
+    public int getMinBlockSize() {
+        return minBlockSize;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public long getTargetBlockNanos() {
+        return targetBlockNanos;
+    }
+}
@@ -21,9 +21,9 @@
  */
 package com.jillesvangurp.iterables;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -37,86 +37,129 @@ import java.util.NoSuchElementException;
  * Basically this class is an Iterable of String, which means you can simply use a
  * for each loop to iterate over the content.
  *
+ * The reader is read into a large char buffer that is reused, and the tags are found with a Boyer-Moore-Horspool
+ * search, so most chars in between blobs are skipped without looking at them. Only the blobs themselves are copied
+ * into Strings. You can look for several kinds of blobs at once, e.g. the nodes, ways and relations in an
+ * openstreetmap file.
+ *
  * Note. make sure to close the reader after iterating. This class does not attempt to close the reader.
  */
 public class BlobIterable implements Iterable<String> {
+	/**
+	 * 64K chars, the buffer grows if a blob is larger.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
 	private final Reader r;
-	private final String openTag;
-	private final String closeTag;
+	private final Horspool openTags;
+	private final Horspool[] closeTags;
+	private final int bufferSize;
 
 	public BlobIterable(Reader r, String openTag, String closeTag) {
+		this(r, new String[] {openTag}, new String[] {closeTag}, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param r reader
+	 * @param openTags tags that start a blob; if several match at the same position, the first one wins
+	 * @param closeTags the tag that ends a blob for each of the open tags
+	 * @param bufferSize initial size of the buffer in chars
+	 */
+	public BlobIterable(Reader r, String[] openTags, String[] closeTags, int bufferSize) {
+		if(openTags.length != closeTags.length) {
+			throw new IllegalArgumentException("there should be a close tag for every open tag");
+		}
+		if(bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize should be at least 1");
+		}
 		this.r = r;
-		this.openTag = openTag;
-		this.closeTag = closeTag;
+		this.openTags = new Horspool(openTags);
+		this.closeTags = new Horspool[closeTags.length];
+		for(int i = 0; i < closeTags.length; i++) {
+			this.closeTags[i] = new Horspool(closeTags[i]);
+		}
+		this.bufferSize = bufferSize;
 	}
 
 	@Override
 	public Iterator<String> iterator() {
-		final BufferedReader br = new BufferedReader(r);
-
-		return new BlobIterator(br);
+		return new BlobIterator();
 	}
 
 	private final class BlobIterator implements Iterator<String> {
-		private final BufferedReader br;
-		StringBuilder current = new StringBuilder();
+		private char[] buffer = new char[bufferSize];
+		private int limit = 0;
+		// where the next search starts
+		private int position = 0;
+		// start of the blob that is being read or -1
+		private int blobStart = -1;
+		private Horspool closeTag;
+		private boolean endOfInput = false;
 
 		String next;
 
-		private BlobIterator(BufferedReader br) {
-			this.br = br;
+		private BlobIterator() {
 			readNext();
 		}
 
 		private void readNext() {
-			current = new StringBuilder();
 			next = null;
-			try {
-				int c;
-				if(next == null) {
-					while(next == null && (c = br.read()) != -1) {
-						if(openTag.charAt(0) == c) {
-							current.append((char)c);
-							int o=1;
-							while(o<openTag.length() && (c=br.read()) != -1) {
-								current.append((char)c);
-								o++;
-							}
-							if(openTag.equals(current.toString())) {
-
-								while(!fastEndsWith(current, closeTag) && (c=br.read()) != -1) {
-									current.append((char)c);
-								}
-								if(fastEndsWith(current, closeTag)) {
-									next = current.toString();
-									return;
-								}
-							}
-							current = new StringBuilder();
-						}
+			while(true) {
+				if(blobStart < 0) {
+					int start = openTags.search(buffer, position, limit, endOfInput);
+					if(start >= 0) {
+						int tag = openTags.patternAt(buffer, start, limit);
+						blobStart = start;
+						closeTag = closeTags[tag];
+						position = start + openTags.length(tag);
+						continue;
+					}
+					if(endOfInput) {
+						return;
+					}
+					position = Math.max(position, limit - openTags.maxLength() + 1);
+					fill(position);
+				} else {
+					int end = closeTag.search(buffer, position, limit, endOfInput);
+					if(end >= 0) {
+						position = end + closeTag.length(0);
+						next = new String(buffer, blobStart, position - blobStart);
+						blobStart = -1;
+						return;
 					}
+					if(endOfInput) {
+						// blobs without a close tag are ignored
+						return;
+					}
+					position = Math.max(position, limit - closeTag.maxLength() + 1);
+					fill(blobStart);
 				}
-			} catch (IOException e) {
-				throw new IllegalStateException("cannot read from stream",e);
 			}
 		}
 
-		private boolean fastEndsWith(CharSequence buf, String postFix) {
-			// String.endsWith is very slow and creating extra String objects
-			// every time we want to check the StringBuilder content is
-			// inefficient
-			if(buf.length()<postFix.length()) {
-				return false;
-			} else {
-				boolean match = true;
-				for(int i=1;i<=postFix.length();i++) {
-					match = match && buf.charAt(buf.length()-i) == postFix.charAt(postFix.length()-i);
-					if(!match) {
-						return false;
-					}
+		/**
+		 * Discards the chars before keep and reads more chars after those that are left.
+		 */
+		private void fill(int keep) {
+			if(keep > 0) {
+				System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+				limit -= keep;
+				position -= keep;
+				if(blobStart >= 0) {
+					blobStart -= keep;
 				}
-				return match;
+			} else if(limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			try {
+				int read = r.read(buffer, limit, buffer.length - limit);
+				if(read < 0) {
+					endOfInput = true;
+				} else {
+					limit += read;
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("cannot read from stream",e);
 			}
 		}
 
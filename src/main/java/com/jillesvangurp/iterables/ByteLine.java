@@ -0,0 +1,157 @@
+package com.jillesvangurp.iterables;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Lightweight view of a line in a {@link ByteBuffer}, e.g. a memory mapped file. Creating one does not copy or decode
+ * any bytes. The line is only decoded into a String when {@link #toString()} is called, or when {@link #charAt(int)}
+ * is called on a line that contains non ASCII bytes. This makes it cheap to filter on the raw bytes and only pay for
+ * decoding the lines you actually need.
+ *
+ * The charset must be ASCII compatible (e.g. UTF-8 or ISO-8859-1).
+ */
+public class ByteLine implements CharSequence {
+    private static final byte UNKNOWN = 0;
+    private static final byte ASCII = 1;
+    private static final byte NON_ASCII = 2;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final Charset charset;
+    private byte encoding = UNKNOWN;
+    private String string;
+
+    /**
+     * @param buffer the buffer with the bytes; the line is read using absolute gets so the position of the buffer does not matter.
+     * @param offset offset of the first byte of the line in the buffer
+     * @param length number of bytes in the line
+     * @param charset used to decode the line
+     */
+    public ByteLine(ByteBuffer buffer, int offset, int length, Charset charset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    /**
+     * @return number of bytes in the line
+     */
+    public int byteLength() {
+        return length;
+    }
+
+    /**
+     * @param index byte index in the line
+     * @return the byte
+     */
+    public byte byteAt(int index) {
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return buffer.get(offset + index);
+    }
+
+    /**
+     * @param b a byte, e.g. a separator like '\t'
+     * @param fromIndex byte index to start searching
+     * @return the byte index of the first occurrence of b at or after fromIndex or -1
+     */
+    public int indexOf(byte b, int fromIndex) {
+        for(int i = Math.max(0, fromIndex); i < length; i++) {
+            if(buffer.get(offset + i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param prefix bytes
+     * @return true if the line starts with the prefix
+     */
+    public boolean startsWith(byte[] prefix) {
+        if(prefix.length > length) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length; i++) {
+            if(buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param byteStart first byte, inclusive
+     * @param byteEnd last byte, exclusive
+     * @return a view of part of this line, e.g. a field between two separators. Like this line, this does not copy anything.
+     */
+    public ByteLine slice(int byteStart, int byteEnd) {
+        if(byteStart < 0 || byteEnd > length || byteStart > byteEnd) {
+            throw new IndexOutOfBoundsException("[" + byteStart + "," + byteEnd + ") in line of " + length + " bytes");
+        }
+        return new ByteLine(buffer, offset + byteStart, byteEnd - byteStart, charset);
+    }
+
+    /**
+     * @return a copy of the bytes in the line
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return number of chars in the line. Decodes the line if it contains non ASCII bytes.
+     */
+    @Override
+    public int length() {
+        return isAscii() ? length : toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(isAscii()) {
+            return (char) byteAt(index);
+        }
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(isAscii()) {
+            return slice(start, end);
+        }
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * @return the decoded line; decoded once and then cached.
+     */
+    @Override
+    public String toString() {
+        if(string == null) {
+            string = new String(toByteArray(), charset);
+        }
+        return string;
+    }
+
+    private boolean isAscii() {
+        if(encoding == UNKNOWN) {
+            encoding = ASCII;
+            for(int i = 0; i < length; i++) {
+                if(buffer.get(offset + i) < 0) {
+                    encoding = NON_ASCII;
+                    break;
+                }
+            }
+        }
+        return encoding == ASCII;
+    }
+}
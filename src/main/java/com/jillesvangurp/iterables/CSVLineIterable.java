@@ -1,29 +1,133 @@
 package com.jillesvangurp.iterables;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
-import com.google.common.base.Splitter;
-
 /**
- * Simple iterable that breaks lines into fields based on a separator.
- * Note. this class is fairly simplistic compared to solutions like open csv and doesn't support things like escaping
- * currently. Feel free to contribute patches to fix this.
+ * Iterable that breaks lines into fields based on a separator. Fields may be quoted with double quotes as described
+ * in RFC 4180, so they can contain the delimiter, escaped quotes ("") and line breaks. Unquoted fields are trimmed.
+ *
+ * Iterating over this iterable gives you a new list of Strings for every record. If you are processing large files,
+ * use {@link #records()} instead, which reuses a single {@link CsvRecord} and only creates Strings for the fields that you
+ * actually use.
+ *
+ * If you only need a few of the columns, use {@link #withColumns(int...)} to skip the other columns while parsing. Use
+ * {@link #withFilter(int, Filter)} to drop records based on the value of a field; those records are dropped as soon as
+ * the field is parsed, before the rest of the record is parsed or any Strings are created.
+ *
+ * With {@link #withSchema(CsvSchema, boolean)}, the columns are looked up by name in the header and the types are
+ * checked against the first record once per file, after which you can use the typed getters of {@link CsvRecord} on
+ * the columns of the schema.
  */
 public class CSVLineIterable implements Iterable<List<String>> {
     private final Iterable<String> lineIterator;
     private final char delimiter;
+    private final char quote;
+    private int[] columns;
+    private CsvSchema schema;
+    private boolean header;
+    private Filter<CharSequence>[] filters;
 
     public CSVLineIterable(Iterable<String> lineIterator, char delimiter) {
+        this(lineIterator, delimiter, '"');
+    }
+
+    /**
+     * @param lineIterator lines
+     * @param delimiter field delimiter
+     * @param quote quote character
+     */
+    public CSVLineIterable(Iterable<String> lineIterator, char delimiter, char quote) {
+        if(delimiter == quote) {
+            throw new IllegalArgumentException("delimiter and quote must be different");
+        }
         this.lineIterator = lineIterator;
         this.delimiter = delimiter;
+        this.quote = quote;
+    }
+
+    /**
+     * Only parse the given columns. The records contain these fields, in the order given here. Records that have fewer
+     * columns get empty fields for the missing columns.
+     * @param columns indices of the columns in the csv
+     * @return this iterable
+     */
+    public CSVLineIterable withColumns(int... columns) {
+        if(schema != null) {
+            throw new IllegalStateException("cannot use both a schema and columns");
+        }
+        this.columns = columns.clone();
+        // fail fast on negative or duplicate columns
+        new CsvParser(delimiter, quote, this.columns, filters);
+        return this;
+    }
+
+    /**
+     * Only parse the columns in the schema. The records contain these fields, in the order of the schema.
+     * @param schema the schema
+     * @param header if true, the first line is a header with the column names and the columns are looked up by name;
+     *        the header itself is not returned as a record. Otherwise the schema describes the first columns of the csv.
+     * @return this iterable
+     */
+    public CSVLineIterable withSchema(CsvSchema schema, boolean header) {
+        if(columns != null) {
+            throw new IllegalStateException("cannot use both a schema and columns");
+        }
+        this.schema = schema;
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Skip records with a field that does not pass the filter. The filter is called with a view on the parser's buffer
+     * that is only valid during the call, so use toString() if you need to keep the value. Adding more than one
+     * filter for a column means that the field must pass all of them.
+     * @param column index of the column in the csv, which does not need to be one of the columns passed to {@link #withColumns(int...)}
+     * @param filter filter for the field
+     * @return this iterable
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CSVLineIterable withFilter(int column, final Filter<CharSequence> filter) {
+        if(column < 0) {
+            throw new IllegalArgumentException("negative column " + column);
+        }
+        if(filters == null) {
+            filters = new Filter[column + 1];
+        } else if(filters.length <= column) {
+            filters = Arrays.copyOf(filters, column + 1);
+        }
+        final Filter<CharSequence> existing = filters[column];
+        if(existing == null) {
+            filters[column] = filter;
+        } else {
+            filters[column] = new Filter<CharSequence>() {
+                @Override
+                public boolean passes(CharSequence field) {
+                    return existing.passes(field) && filter.passes(field);
+                }
+            };
+        }
+        return this;
+    }
+
+    /**
+     * @param lines other lines
+     * @return a new iterable for the lines with the same delimiter, quote, columns, schema and filters as this one
+     */
+    CSVLineIterable withLines(Iterable<String> lines) {
+        CSVLineIterable copy = new CSVLineIterable(lines, delimiter, quote);
+        copy.columns = columns;
+        copy.schema = schema;
+        copy.header = header;
+        copy.filters = filters;
+        return copy;
     }
 
     @Override
     public Iterator<List<String>> iterator() {
-        final Iterator<String> iterator = lineIterator.iterator();
+        final Iterator<CsvRecord> iterator = records().iterator();
         return new Iterator<List<String>>() {
 
             @Override
@@ -33,16 +137,7 @@ public class CSVLineIterable implements Iterable<List<String>> {
 
             @Override
             public List<String> next() {
-                String line = iterator.next();
-                if (line != null) {
-                    List<String> result = new ArrayList<>();
-                    for (String field : Splitter.on(delimiter).trimResults().split(line)) {
-                        result.add(field);
-                    }
-                    return result;
-                } else {
-                    throw new NoSuchElementException();
-                }
+                return iterator.next().toList();
             }
 
             @Override
@@ -51,4 +146,125 @@ public class CSVLineIterable implements Iterable<List<String>> {
             }
         };
     }
+
+    /**
+     * @return iterable that parses each record into the same {@link CsvRecord}. The record is overwritten when you
+     *         move to the next record so use {@link CsvRecord#toList()} if you need to keep it.
+     */
+    public Iterable<CsvRecord> records() {
+        return new Iterable<CsvRecord>() {
+            @Override
+            public Iterator<CsvRecord> iterator() {
+                final Iterator<String> iterator = lineIterator.iterator();
+                final CsvParser parser = new CsvParser(delimiter, quote, projection(iterator), filters);
+                final CsvRecord record = new CsvRecord();
+                final CsvSchema recordSchema = schema;
+                if(recordSchema != null) {
+                    record.types = recordSchema.types();
+                }
+                return new Iterator<CsvRecord>() {
+                    boolean parsed = false;
+                    boolean validated = recordSchema == null;
+
+                    @Override
+                    public boolean hasNext() {
+                        if(!parsed) {
+                            parsed = parser.parse(iterator, record);
+                            if(parsed && !validated) {
+                                recordSchema.validate(record);
+                                validated = true;
+                            }
+                        }
+                        return parsed;
+                    }
+
+                    @Override
+                    public CsvRecord next() {
+                        if(!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        parsed = false;
+                        return record;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return {@link #batches(int)} with {@link ColumnBatch#DEFAULT_SIZE} rows per batch
+     */
+    public Iterable<ColumnBatch> batches() {
+        return batches(ColumnBatch.DEFAULT_SIZE);
+    }
+
+    /**
+     * Reads the records into column vectors, see {@link ColumnBatch}. Requires a schema, see {@link #withSchema(CsvSchema, boolean)}.
+     * The same batch is reused, so process each batch before moving to the next one.
+     * @param batchSize maximum number of rows per batch
+     * @return iterable of batches
+     */
+    public Iterable<ColumnBatch> batches(final int batchSize) {
+        if(schema == null) {
+            throw new IllegalStateException("batches require a schema");
+        }
+        final CsvSchema batchSchema = schema;
+        return new Iterable<ColumnBatch>() {
+            @Override
+            public Iterator<ColumnBatch> iterator() {
+                final Iterator<CsvRecord> iterator = records().iterator();
+                final ColumnBatch batch = new ColumnBatch(batchSchema, batchSize);
+                return new Iterator<ColumnBatch>() {
+                    boolean filled = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        if(!filled) {
+                            batch.clear();
+                            while(!batch.isFull() && iterator.hasNext()) {
+                                batch.add(iterator.next());
+                            }
+                            filled = batch.size() > 0;
+                        }
+                        return filled;
+                    }
+
+                    @Override
+                    public ColumnBatch next() {
+                        if(!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        filled = false;
+                        return batch;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("cannot remove batches");
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the columns to parse, reading the header if needed
+     */
+    private int[] projection(Iterator<String> iterator) {
+        if(schema == null) {
+            return columns;
+        }
+        if(header) {
+            CsvRecord headerRecord = new CsvRecord();
+            if(new CsvParser(delimiter, quote).parse(iterator, headerRecord)) {
+                return schema.resolve(headerRecord);
+            }
+        }
+        return schema.positional();
+    }
 }
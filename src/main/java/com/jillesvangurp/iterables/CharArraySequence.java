@@ -0,0 +1,42 @@
+package com.jillesvangurp.iterables;
+
+/**
+ * Reusable CharSequence view on a range of a char array.
+ */
+class CharArraySequence implements CharSequence {
+    private char[] buffer;
+    private int offset;
+    private int length;
+
+    void set(char[] buffer, int start, int end) {
+        this.buffer = buffer;
+        this.offset = start;
+        this.length = end - start;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + length);
+        }
+        return buffer[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + "-" + end + " out of bounds for length " + length);
+        }
+        return new String(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+}
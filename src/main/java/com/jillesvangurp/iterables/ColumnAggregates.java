@@ -0,0 +1,104 @@
+package com.jillesvangurp.iterables;
+
+/**
+ * Vectorized aggregates over {@link ColumnBatch}es. Each aggregate is a processor that aggregates a whole batch with a
+ * tight loop over a primitive column; combine the results of the batches with the matching reducer from {@link Reducers}.
+ *
+ * <pre>
+ * Iterable&lt;ColumnBatch&gt; batches = new CSVLineIterable(lines, ',').withSchema(schema, true).batches();
+ * double total = Iterables.reduce(Iterables.map(batches, ColumnAggregates.sumDouble(price)), Reducers.sum(Double.class));
+ * </pre>
+ */
+public class ColumnAggregates {
+
+    /**
+     * @param column int or long column
+     * @return sum per batch, combine with {@link Reducers#sum(Class)}
+     */
+    public static Processor<ColumnBatch, Long> sumLong(final int column) {
+        return new Processor<ColumnBatch, Long>() {
+            @Override
+            public Long process(ColumnBatch batch) {
+                return batch.sumLong(column);
+            }
+        };
+    }
+
+    /**
+     * @param column int or long column
+     * @return minimum per batch, combine with {@link Reducers#min(Class)}
+     */
+    public static Processor<ColumnBatch, Long> minLong(final int column) {
+        return new Processor<ColumnBatch, Long>() {
+            @Override
+            public Long process(ColumnBatch batch) {
+                return batch.minLong(column);
+            }
+        };
+    }
+
+    /**
+     * @param column int or long column
+     * @return maximum per batch, combine with {@link Reducers#max(Class)}
+     */
+    public static Processor<ColumnBatch, Long> maxLong(final int column) {
+        return new Processor<ColumnBatch, Long>() {
+            @Override
+            public Long process(ColumnBatch batch) {
+                return batch.maxLong(column);
+            }
+        };
+    }
+
+    /**
+     * @param column double column
+     * @return sum per batch, combine with {@link Reducers#sum(Class)}
+     */
+    public static Processor<ColumnBatch, Double> sumDouble(final int column) {
+        return new Processor<ColumnBatch, Double>() {
+            @Override
+            public Double process(ColumnBatch batch) {
+                return batch.sumDouble(column);
+            }
+        };
+    }
+
+    /**
+     * @param column double column
+     * @return minimum per batch, combine with {@link Reducers#min(Class)}
+     */
+    public static Processor<ColumnBatch, Double> minDouble(final int column) {
+        return new Processor<ColumnBatch, Double>() {
+            @Override
+            public Double process(ColumnBatch batch) {
+                return batch.minDouble(column);
+            }
+        };
+    }
+
+    /**
+     * @param column double column
+     * @return maximum per batch, combine with {@link Reducers#max(Class)}
+     */
+    public static Processor<ColumnBatch, Double> maxDouble(final int column) {
+        return new Processor<ColumnBatch, Double>() {
+            @Override
+            public Double process(ColumnBatch batch) {
+                return batch.maxDouble(column);
+            }
+        };
+    }
+
+    /**
+     * @param column any column
+     * @return number of values that are not null per batch, combine with {@link Reducers#sum(Class)}
+     */
+    public static Processor<ColumnBatch, Long> count(final int column) {
+        return new Processor<ColumnBatch, Long>() {
+            @Override
+            public Long process(ColumnBatch batch) {
+                return (long) batch.count(column);
+            }
+        };
+    }
+}
@@ -0,0 +1,345 @@
+package com.jillesvangurp.iterables;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of csv records stored as one primitive array per column, see {@link CSVLineIterable#batches(int)}. The
+ * columns are those of a {@link CsvSchema}: int, long, double and boolean columns are stored in arrays of that type and
+ * string columns are stored as int codes into a dictionary that is shared by all batches of a file. Empty fields are
+ * null; their bit is set in the null bitmap of the column and their value is 0, false or code -1.
+ *
+ * The arrays are reused for every batch and are only valid up to {@link #size()}. The aggregate methods such as
+ * {@link #sumLong(int)} are simple loops over these arrays that the JIT can unroll and vectorize.
+ */
+public class ColumnBatch {
+    public static final int DEFAULT_SIZE = 4096;
+
+    private final CsvSchema schema;
+    private final int capacity;
+    private final CsvSchema.Type[] types;
+    private final Object[] vectors;
+    private final long[][] nulls;
+    private final int[] nullCounts;
+    private final StringDictionary[] dictionaries;
+    private int size;
+
+    ColumnBatch(CsvSchema schema, int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity should be positive");
+        }
+        this.schema = schema;
+        this.capacity = capacity;
+        int columns = schema.size();
+        types = new CsvSchema.Type[columns];
+        vectors = new Object[columns];
+        nulls = new long[columns][(capacity + 63) >>> 6];
+        nullCounts = new int[columns];
+        dictionaries = new StringDictionary[columns];
+        for(int i = 0; i < columns; i++) {
+            types[i] = schema.type(i);
+            switch(types[i]) {
+            case INT:
+                vectors[i] = new int[capacity];
+                break;
+            case LONG:
+                vectors[i] = new long[capacity];
+                break;
+            case DOUBLE:
+                vectors[i] = new double[capacity];
+                break;
+            case BOOLEAN:
+                vectors[i] = new boolean[capacity];
+                break;
+            case STRING:
+                vectors[i] = new int[capacity];
+                dictionaries[i] = new StringDictionary();
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported type " + types[i]);
+            }
+        }
+    }
+
+    public CsvSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return number of rows in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return values of an int column
+     */
+    public int[] ints(int column) {
+        return (int[]) vector(column, CsvSchema.Type.INT);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return values of a long column
+     */
+    public long[] longs(int column) {
+        return (long[]) vector(column, CsvSchema.Type.LONG);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return values of a double column
+     */
+    public double[] doubles(int column) {
+        return (double[]) vector(column, CsvSchema.Type.DOUBLE);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return values of a boolean column
+     */
+    public boolean[] booleans(int column) {
+        return (boolean[]) vector(column, CsvSchema.Type.BOOLEAN);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return dictionary codes of a string column, see {@link #dictionary(int)}
+     */
+    public int[] codes(int column) {
+        return (int[]) vector(column, CsvSchema.Type.STRING);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return the values of a string column, indexed by code. The dictionary grows as new values are found in the file.
+     */
+    public List<String> dictionary(int column) {
+        vector(column, CsvSchema.Type.STRING);
+        return dictionaries[column].values();
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @param row row in the batch
+     * @return the value of a string column or null
+     */
+    public String getString(int column, int row) {
+        int code = codes(column)[row];
+        return code < 0 ? null : dictionaries[column].values().get(code);
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @param row row in the batch
+     * @return true if the field was empty
+     */
+    public boolean isNull(int column, int row) {
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return bitmap with a bit set for every null row; the bit for row r is bit r % 64 of element r / 64
+     */
+    public long[] nulls(int column) {
+        return nulls[column];
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return number of nulls in the column
+     */
+    public int nullCount(int column) {
+        return nullCounts[column];
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @return number of rows that are not null
+     */
+    public int count(int column) {
+        return size - nullCounts[column];
+    }
+
+    /**
+     * @param column index of an int or long column
+     * @return sum of the values, nulls are ignored
+     */
+    public long sumLong(int column) {
+        long sum = 0;
+        if(types[column] == CsvSchema.Type.INT) {
+            int[] values = ints(column);
+            for(int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+        } else {
+            long[] values = longs(column);
+            for(int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param column index of an int or long column
+     * @return smallest value or Long.MAX_VALUE if there are no values
+     */
+    public long minLong(int column) {
+        long min = Long.MAX_VALUE;
+        boolean noNulls = nullCounts[column] == 0;
+        if(types[column] == CsvSchema.Type.INT) {
+            int[] values = ints(column);
+            for(int i = 0; i < size; i++) {
+                if(noNulls || !isNull(column, i)) {
+                    min = Math.min(min, values[i]);
+                }
+            }
+        } else {
+            long[] values = longs(column);
+            for(int i = 0; i < size; i++) {
+                if(noNulls || !isNull(column, i)) {
+                    min = Math.min(min, values[i]);
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @param column index of an int or long column
+     * @return largest value or Long.MIN_VALUE if there are no values
+     */
+    public long maxLong(int column) {
+        long max = Long.MIN_VALUE;
+        boolean noNulls = nullCounts[column] == 0;
+        if(types[column] == CsvSchema.Type.INT) {
+            int[] values = ints(column);
+            for(int i = 0; i < size; i++) {
+                if(noNulls || !isNull(column, i)) {
+                    max = Math.max(max, values[i]);
+                }
+            }
+        } else {
+            long[] values = longs(column);
+            for(int i = 0; i < size; i++) {
+                if(noNulls || !isNull(column, i)) {
+                    max = Math.max(max, values[i]);
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param column index of a double column
+     * @return sum of the values, nulls are ignored
+     */
+    public double sumDouble(int column) {
+        double[] values = doubles(column);
+        double sum = 0;
+        for(int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param column index of a double column
+     * @return smallest value or positive infinity if there are no values
+     */
+    public double minDouble(int column) {
+        double[] values = doubles(column);
+        double min = Double.POSITIVE_INFINITY;
+        boolean noNulls = nullCounts[column] == 0;
+        for(int i = 0; i < size; i++) {
+            if(noNulls || !isNull(column, i)) {
+                min = Math.min(min, values[i]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @param column index of a double column
+     * @return largest value or negative infinity if there are no values
+     */
+    public double maxDouble(int column) {
+        double[] values = doubles(column);
+        double max = Double.NEGATIVE_INFINITY;
+        boolean noNulls = nullCounts[column] == 0;
+        for(int i = 0; i < size; i++) {
+            if(noNulls || !isNull(column, i)) {
+                max = Math.max(max, values[i]);
+            }
+        }
+        return max;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    void clear() {
+        for(int i = 0; i < nulls.length; i++) {
+            if(nullCounts[i] > 0) {
+                Arrays.fill(nulls[i], 0L);
+                nullCounts[i] = 0;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds a record with the fields in the order of the schema. All fields are parsed before the null bitmaps and the
+     * size are updated, so a field that fails to parse leaves the batch as it was.
+     */
+    void add(CsvRecord record) {
+        int row = size;
+        for(int column = 0; column < types.length; column++) {
+            boolean empty = record.isEmpty(column);
+            switch(types[column]) {
+            case INT:
+                ((int[]) vectors[column])[row] = empty ? 0 : record.getInt(column);
+                break;
+            case LONG:
+                ((long[]) vectors[column])[row] = empty ? 0 : record.getLong(column);
+                break;
+            case DOUBLE:
+                ((double[]) vectors[column])[row] = empty ? 0 : record.getDouble(column);
+                break;
+            case BOOLEAN:
+                ((boolean[]) vectors[column])[row] = empty ? false : record.getBoolean(column);
+                break;
+            case STRING:
+                ((int[]) vectors[column])[row] = empty ? -1 : dictionaries[column].code(record, column);
+                break;
+            default:
+                throw new IllegalStateException("unsupported type " + types[column]);
+            }
+        }
+        for(int column = 0; column < types.length; column++) {
+            if(record.isEmpty(column)) {
+                nulls[column][row >>> 6] |= 1L << row;
+                nullCounts[column]++;
+            } else {
+                nulls[column][row >>> 6] &= ~(1L << row);
+            }
+        }
+        size++;
+    }
+
+    private Object vector(int column, CsvSchema.Type type) {
+        if(types[column] != type) {
+            throw new IllegalStateException("column " + schema.name(column) + " is a " + types[column] + " column, not " + type);
+        }
+        return vectors[column];
+    }
+}
@@ -0,0 +1,249 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Map reduce engine behind {@link Iterables#mapReduce(Iterable, Processor, Reducer, int, int, int)}.
+ *
+ * The calling thread cuts the input into blocks and hands them to the workers. Each worker maps the items in the
+ * blocks it picks up and reduces them into its own running accumulator, so there is no per block partial result that
+ * needs to be funneled back through a single thread. When the input is exhausted, the accumulators of the workers are
+ * combined pairwise in parallel until one result remains.
+ *
+ * Alternatively, {@link #mapReducePartitions(List)} reads each partition of the input on its own thread, which reduces
+ * into its own accumulator directly, so the input is not read by a single thread.
+ *
+ * @param <I> input type
+ * @param <O> output type
+ */
+class ConcurrentMapReduce<I, O> {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentMapReduce.class);
+
+    private final Processor<I, O> mapper;
+    private final Reducer<O> reducer;
+    private final int blockSize;
+    private final int workers;
+    private final int queueCapacity;
+
+    /**
+     * @param mapper processor that transforms I into O
+     * @param reducer reducer that combines the outputs
+     * @param blockSize number of items handed to a worker in one go
+     * @param threadPoolSize number of threads, including the calling thread that reads the input
+     * @param queueCapacity number of blocks that get queued
+     */
+    ConcurrentMapReduce(Processor<I, O> mapper, Reducer<O> reducer, int blockSize, int threadPoolSize, int queueCapacity) {
+        if(threadPoolSize < 2) {
+            throw new IllegalArgumentException("threadPoolSize should be at least 2: the calling thread and at least one worker thread");
+        }
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("blockSize should be at least 1");
+        }
+        this.mapper = mapper;
+        this.reducer = reducer;
+        this.blockSize = blockSize;
+        this.workers = threadPoolSize - 1;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Use this for {@link #mapReducePartitions(List)}, which does not need blocks or a queue.
+     * @param mapper processor that transforms I into O
+     * @param reducer reducer that combines the outputs
+     */
+    ConcurrentMapReduce(Processor<I, O> mapper, Reducer<O> reducer) {
+        this.mapper = mapper;
+        this.reducer = reducer;
+        this.blockSize = 0;
+        this.workers = 0;
+        this.queueCapacity = 0;
+    }
+
+    /**
+     * @param input input iterable
+     * @return the reduced output
+     * @throws NoSuchElementException if there was nothing to reduce
+     */
+    O mapReduce(Iterable<I> input) {
+        ExecutorService executorService = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            int number=0;
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "mapReduceThread_"+number++);
+            }
+        });
+        try {
+            final LinkedBlockingQueue<List<I>> scheduledWork = new LinkedBlockingQueue<>(queueCapacity);
+            // compared by reference
+            final List<I> endOfInput = new ArrayList<>();
+
+            List<Future<O>> accumulators = new ArrayList<>(workers);
+            for(int i=0; i<workers;i++) {
+                accumulators.add(executorService.submit(new Callable<O>() {
+                    @Override
+                    public O call() throws Exception {
+                        O accumulator = null;
+                        List<I> block;
+                        while((block = scheduledWork.take()) != endOfInput) {
+                            accumulator = accumulate(accumulator, block);
+                        }
+                        return accumulator;
+                    }
+                }));
+            }
+
+            try {
+                List<I> block = new ArrayList<>(blockSize);
+                for (I item : input) {
+                    block.add(item);
+                    if(block.size() == blockSize) {
+                        schedule(scheduledWork, block, accumulators);
+                        block = new ArrayList<>(blockSize);
+                    }
+                }
+                if(block.size() > 0) {
+                    schedule(scheduledWork, block, accumulators);
+                }
+                for(int i=0; i<workers;i++) {
+                    schedule(scheduledWork, endOfInput, accumulators);
+                }
+
+                List<O> partials = new ArrayList<>(workers);
+                for (Future<O> future : accumulators) {
+                    O partial = future.get();
+                    if(partial != null) {
+                        partials.add(partial);
+                    }
+                }
+                return combine(executorService, partials);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted during map reduce", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("error during map reduce", e.getCause());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @param partitions input, divided into partitions that can be read independently. One thread is started for each partition.
+     * @return the reduced output
+     * @throws NoSuchElementException if there was nothing to reduce
+     */
+    O mapReducePartitions(List<? extends Iterable<I>> partitions) {
+        if(partitions.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(partitions.size(), new ThreadFactory() {
+            int number=0;
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "mapReduceThread_"+number++);
+            }
+        });
+        try {
+            List<Future<O>> accumulators = new ArrayList<>(partitions.size());
+            for (final Iterable<I> partition : partitions) {
+                accumulators.add(executorService.submit(new Callable<O>() {
+                    @Override
+                    public O call() throws Exception {
+                        return accumulate(null, partition);
+                    }
+                }));
+            }
+            try {
+                List<O> partials = new ArrayList<>(partitions.size());
+                for (Future<O> future : accumulators) {
+                    O partial = future.get();
+                    if(partial != null) {
+                        partials.add(partial);
+                    }
+                }
+                return combine(executorService, partials);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted during map reduce", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("error during map reduce", e.getCause());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Map the items and reduce them into the accumulator.
+     * @param accumulator accumulator or null if nothing was reduced yet
+     * @return the new accumulator, or null if nothing was reduced yet
+     */
+    private O accumulate(O accumulator, Iterable<I> items) {
+        for (I item : items) {
+            O mapped;
+            try {
+                mapped = mapper.process(item);
+            } catch (Exception e) {
+                LOG.warn("exception processing item; " + e.getMessage(), e);
+                continue;
+            }
+            if(mapped != null) {
+                accumulator = accumulator == null ? reducer.reduce(mapped) : reducer.reduce(accumulator, mapped);
+            }
+        }
+        return accumulator;
+    }
+
+    private void schedule(LinkedBlockingQueue<List<I>> scheduledWork, List<I> block, List<Future<O>> accumulators) throws InterruptedException, ExecutionException {
+        // don't block forever on a full queue if the workers have failed
+        while(!scheduledWork.offer(block, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<O> future : accumulators) {
+                if(future.isDone()) {
+                    future.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Combine the partial results pairwise in parallel; takes log2(workers) rounds.
+     */
+    private O combine(ExecutorService executorService, List<O> partials) throws InterruptedException, ExecutionException {
+        if(partials.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        while(partials.size() > 1) {
+            List<Future<O>> merged = new ArrayList<>(partials.size() / 2);
+            for(int i=0; i+1 < partials.size(); i+=2) {
+                final O left = partials.get(i);
+                final O right = partials.get(i+1);
+                merged.add(executorService.submit(new Callable<O>() {
+                    @Override
+                    public O call() throws Exception {
+                        return reducer.reduce(left, right);
+                    }
+                }));
+            }
+            List<O> next = new ArrayList<>(merged.size() + 1);
+            for (Future<O> future : merged) {
+                next.add(future.get());
+            }
+            if(partials.size() % 2 == 1) {
+                next.add(partials.get(partials.size()-1));
+            }
+            partials = next;
+        }
+        return partials.get(0);
+    }
+}
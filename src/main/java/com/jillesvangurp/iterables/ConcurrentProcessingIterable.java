@@ -2,17 +2,26 @@ package com.jillesvangurp.iterables;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +32,32 @@ import org.slf4j.LoggerFactory;
  * Please note that this class implements {@link Closeable} and that you are supposed to use a try with resources call.
  * The reason for this is to guarantee the executor used for delegating the work is shut down correctly.
  *
+ * By default the output is produced in whatever order the worker threads finish their blocks. In ordered mode, each
+ * block is tagged with a sequence number and the completed blocks are reassembled in a bounded reorder buffer so that
+ * the output has the same order as the input. A slow block only holds back the output after its own position; the
+ * workers keep on processing subsequent blocks until the reorder buffer is full.
+ *
+ * By default, a producer thread and threadPoolSize - 1 long running worker threads are started on a thread pool that
+ * is owned by this iterable. Alternatively, you can provide your own {@link ExecutorService}, which is not shut down
+ * when this iterable is closed. In task per block mode, each block is submitted to the executor as a separate task
+ * with a limit on the number of tasks in flight instead. This is intended for executors that create a (virtual)
+ * thread per task, see {@link #newVirtualThreadPerTaskExecutor()}, and allows IO bound processors to have thousands of
+ * items in flight.
+ *
+ * Instead of a single input, you can provide a list of partitions of the input, e.g. the ranges of a file from
+ * {@link MappedLineIterable#split(int)}. Each partition is then read by its own thread, which also processes the
+ * blocks it reads. There is no producer thread, so reading the input scales with the number of partitions.
+ *
+ * In adaptive mode, the block size and the number of active workers are tuned at runtime based on the measured
+ * processing time per item and the occupancy of the queues, see {@link AdaptiveTuning}.
+ *
+ * The blocks are handed between the threads through LinkedBlockingQueues by default. Alternatively, lock free ring
+ * buffers can be used with a {@link WaitStrategy}, see {@link RingBufferQueue}. These avoid allocating a node per block
+ * and the locking in the queues, which mainly pays off with small blocks and many threads.
+ *
+ * Use {@link #withListener(PipelineListener)} with e.g. {@link PipelineMetrics} to monitor the throughput, the queues
+ * and the processing latency.
+ *
  * @param <Input>
  *            type of the input processed by this iterable
  * @param <Output>
@@ -33,14 +68,27 @@ public class ConcurrentProcessingIterable<Input, Output> implements Iterable<Out
 
     private final int blockSize;
     private final int threadPoolSize;
+    private final boolean ordered;
+    private final Semaphore reorderBufferPermits;
+    private final boolean taskPerBlock;
+    private final Semaphore tasksInFlight;
+    private final AdaptiveController adaptive;
+    private volatile PipelineListener listener;
 
     private final Processor<Input, Output> processor;
     private final Iterable<Input> input;
+    private final List<? extends Iterable<Input>> partitions;
     private final ExecutorService executorService;
-    private final LinkedBlockingQueue<List<Input>> scheduledWork;
-    private final LinkedBlockingQueue<List<Output>> completedWork;
-    private final AtomicBoolean doneProducing = new AtomicBoolean(false);
+    private final boolean ownsExecutorService;
+    private final BlockingQueue<Block<Input>> scheduledWork;
+    private final BlockingQueue<Block<Output>> completedWork;
     private final AtomicBoolean abort = new AtomicBoolean(false);
+    // tasks that have not completed yet
+    private final Set<FutureTask<Void>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<FutureTask<Void>, Boolean>());
+    private final AtomicReference<Throwable> inputFailure = new AtomicReference<>();
+    // end of stream markers, compared by reference
+    private final Block<Input> endOfInput = new Block<>(-1, null);
+    private final Block<Output> endOfOutput = new Block<>(-1, null);
 
     /**
      * Create a new iterable.
@@ -59,151 +107,675 @@ public class ConcurrentProcessingIterable<Input, Output> implements Iterable<Out
      * @param queueCapacity number of items to keep queued before the producer thread blocks. Tune this to ensure the consumers have enough to do.
      */
     public ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, int blockSize, int threadPoolSize, int queueCapacity) {
+        this(input, processor, blockSize, threadPoolSize, queueCapacity, false, 0);
+    }
+
+    /**
+     * Create a new iterable that optionally preserves the order of the input in its output.
+     *
+     * @param input
+     *            iterable with the input
+     * @param processor
+     *            {@link Processor} that processes each element in the input
+     * @param blockSize
+     *            size of the list of elements that is processed by the worker threads.
+     * @param threadPoolSize
+     *            number of threads used, including the producer thread.
+     * @param queueCapacity number of items to keep queued before the producer thread blocks.
+     * @param ordered if true, the output is in the same order as the input.
+     * @param reorderBufferSize only used in ordered mode. Maximum number of blocks that may be scheduled, in progress
+     *            or waiting in the reorder buffer ahead of the block the consumer is waiting for. Together with the blockSize this limits
+     *            the memory used for reordering. The producer thread blocks when this limit is reached. Should be at least
+     *            the number of worker threads to keep them busy.
+     */
+    public ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, int blockSize, int threadPoolSize, int queueCapacity, boolean ordered, int reorderBufferSize) {
+        this(input, processor, blockSize, threadPoolSize, queueCapacity, ordered, reorderBufferSize, newFixedThreadPool(threadPoolSize), true, false);
+    }
+
+    /**
+     * Create a new iterable that hands the blocks between the threads using lock free ring buffers instead of LinkedBlockingQueues.
+     *
+     * @param input
+     *            iterable with the input
+     * @param processor
+     *            {@link Processor} that processes each element in the input
+     * @param blockSize
+     *            size of the list of elements that is processed by the worker threads.
+     * @param threadPoolSize
+     *            number of threads used, including the producer thread.
+     * @param queueCapacity number of items to keep queued before the producer thread blocks.
+     * @param waitStrategy what the threads do while waiting for work or for room in the queues. Use {@link WaitStrategy#SPIN}
+     *            only if you have a core for each thread.
+     */
+    public ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, int blockSize, int threadPoolSize, int queueCapacity, WaitStrategy waitStrategy) {
+        this(input, null, processor, blockSize, threadPoolSize, queueCapacity, false, 0, newFixedThreadPool(threadPoolSize), true, false, null, waitStrategy);
+    }
+
+    /**
+     * Create a new iterable that runs on an externally managed executor. The executor is not shut down when this iterable is closed.
+     *
+     * @param input
+     *            iterable with the input
+     * @param processor
+     *            {@link Processor} that processes each element in the input
+     * @param blockSize
+     *            size of the list of elements that is processed in one task. Use 1 in task per block mode to process each item in its own task.
+     * @param concurrency
+     *            without task per block, this is the number of long running tasks (one producer and concurrency - 1 workers) and the executor
+     *            must be able to run all of them at the same time. In task per block mode, this is the maximum number of blocks in flight.
+     * @param queueCapacity number of items to keep queued before the producer blocks.
+     * @param ordered if true, the output is in the same order as the input.
+     * @param reorderBufferSize only used in ordered mode. Maximum number of blocks ahead of the block the consumer is waiting for.
+     * @param executorService the executor used to run the producer and the workers
+     * @param taskPerBlock if true, each block is submitted as a separate task instead of being picked up by long running worker tasks.
+     */
+    public ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, int blockSize, int concurrency, int queueCapacity, boolean ordered, int reorderBufferSize, ExecutorService executorService, boolean taskPerBlock) {
+        this(input, processor, blockSize, concurrency, queueCapacity, ordered, reorderBufferSize, executorService, false, taskPerBlock);
+    }
+
+    /**
+     * Create a new iterable that reads each of the partitions on its own thread and processes the blocks it reads on
+     * that same thread. The output is produced in whatever order the threads finish their blocks.
+     *
+     * @param partitions
+     *            the input, divided into partitions that can be read independently, e.g. with {@link MappedLineIterable#split(int)}.
+     *            One thread is started for each partition.
+     * @param processor
+     *            {@link Processor} that processes each element in the input
+     * @param blockSize
+     *            number of elements that is processed before the output is handed to the consumer.
+     * @param queueCapacity number of processed blocks to keep queued before the threads block.
+     */
+    public ConcurrentProcessingIterable(List<? extends Iterable<Input>> partitions, Processor<Input, Output> processor, int blockSize, int queueCapacity) {
+        this(null, partitions, processor, blockSize, partitions.size(), queueCapacity, false, 0, newFixedThreadPool(Math.max(1, partitions.size())), true, false, null, null);
+    }
+
+    /**
+     * Create a new iterable that tunes its block size and number of active worker threads at runtime.
+     *
+     * @param input
+     *            iterable with the input
+     * @param processor
+     *            {@link Processor} that processes each element in the input
+     * @param tuning bounds for the block size and the number of workers. The maximum number of workers plus one producer thread are started.
+     * @param queueCapacity number of blocks to keep queued before the producer thread blocks.
+     * @param ordered if true, the output is in the same order as the input.
+     * @param reorderBufferSize only used in ordered mode. Maximum number of blocks ahead of the block the consumer is waiting for.
+     */
+    public ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, AdaptiveTuning tuning, int queueCapacity, boolean ordered, int reorderBufferSize) {
+        this(input, null, processor, tuning.getMinBlockSize(), tuning.getMaxWorkers() + 1, queueCapacity, ordered, reorderBufferSize, newFixedThreadPool(tuning.getMaxWorkers() + 1), true, false, tuning, null);
+    }
+
+    ConcurrentProcessingIterable(Iterable<Input> input, Processor<Input, Output> processor, int blockSize, int concurrency, int queueCapacity, boolean ordered, int reorderBufferSize, ExecutorService executorService, boolean ownsExecutorService, boolean taskPerBlock) {
+        this(input, null, processor, blockSize, concurrency, queueCapacity, ordered, reorderBufferSize, executorService, ownsExecutorService, taskPerBlock, null, null);
+    }
+
+    private ConcurrentProcessingIterable(Iterable<Input> input, List<? extends Iterable<Input>> partitions, Processor<Input, Output> processor, int blockSize, int concurrency, int queueCapacity, boolean ordered, int reorderBufferSize, ExecutorService executorService, boolean ownsExecutorService, boolean taskPerBlock, AdaptiveTuning tuning, WaitStrategy waitStrategy) {
+        if(partitions != null && partitions.isEmpty()) {
+            throw new IllegalArgumentException("there should be at least one partition");
+        }
+        if(partitions == null && !taskPerBlock && concurrency < 2) {
+            throw new IllegalArgumentException("threadPoolSize should be at least 2: one producer thread and at least one worker thread");
+        }
+        if(taskPerBlock && concurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be at least 1");
+        }
+        if(ordered && reorderBufferSize < 1) {
+            throw new IllegalArgumentException("reorderBufferSize should be at least 1 in ordered mode");
+        }
         this.input = input;
+        this.partitions = partitions;
         this.processor = processor;
         this.blockSize = blockSize;
-        this.threadPoolSize = threadPoolSize;
-        executorService = Executors.newFixedThreadPool(threadPoolSize, new ThreadFactory() {
+        this.threadPoolSize = concurrency;
+        this.ordered = ordered;
+        this.taskPerBlock = taskPerBlock;
+        this.executorService = executorService;
+        this.ownsExecutorService = ownsExecutorService;
+        reorderBufferPermits = ordered ? new Semaphore(reorderBufferSize) : null;
+        tasksInFlight = taskPerBlock ? new Semaphore(concurrency) : null;
+        if(waitStrategy == null) {
+            scheduledWork = new LinkedBlockingQueue<>(queueCapacity);
+            completedWork = new LinkedBlockingQueue<>(queueCapacity);
+        } else {
+            // only the producer thread schedules work and only the consumer takes completed work
+            scheduledWork = RingBufferQueue.singleProducerMultiConsumer(queueCapacity, waitStrategy);
+            completedWork = RingBufferQueue.multiProducerSingleConsumer(queueCapacity, waitStrategy);
+        }
+        adaptive = tuning == null ? null : new AdaptiveController(tuning, scheduledWork, completedWork);
+    }
+
+    private static ExecutorService newFixedThreadPool(int threadPoolSize) {
+        return Executors.newFixedThreadPool(threadPoolSize, new ThreadFactory() {
             int number=0;
             @Override
             public Thread newThread(Runnable r) {
                 return new Thread(r, "concurrentProcessingIterableThread_"+number++);
             }
         });
-        scheduledWork = new LinkedBlockingQueue<>(queueCapacity);
-        completedWork = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * On Java 21 and later this returns Executors.newVirtualThreadPerTaskExecutor(). Because this library is compiled
+     * for Java 7, this is looked up using reflection. On older versions, this falls back to a cached thread pool with
+     * daemon threads, which also creates a thread per concurrent task but with platform threads.
+     *
+     * Intended to be used in task per block mode.
+     *
+     * @return an executor that runs each task on a new (virtual) thread
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                final AtomicInteger number = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "concurrentProcessingIterableTask_" + number.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("could not create virtual thread executor", e);
+        }
     }
 
     @Override
     public Iterator<Output> iterator() {
-        // start the producer thread
-        executorService.execute(new Runnable() {
+        if(partitions != null) {
+            startPartitionReaders();
+        } else if(taskPerBlock) {
+            startTaskPerBlockProducer();
+        } else {
+            startProducerAndWorkers();
+        }
+
+        return new Iterator<Output>() {
+            Output next = null;
+            List<Output> currentBlock = null;
+            int blockIndex = 0;
+            boolean endOfStream = false;
+            // only used in ordered mode
+            final HashMap<Long, List<Output>> reorderBuffer = new HashMap<>();
+            long nextSequence = 0;
+
             @Override
-            public void run() {
+            public boolean hasNext() {
                 try {
-                    ArrayList<Input> block = new ArrayList<>(blockSize);
-                    for (Input i : input) {
+                    while(next == null) {
                         if(abort.get()) {
-                            break;
+                            return false;
                         }
-                        block.add(i);
-                        if (block.size() == blockSize) {
-                            scheduledWork.put(block);
-                            block = new ArrayList<>(blockSize);
+                        if (currentBlock != null && blockIndex < currentBlock.size()) {
+                            next = currentBlock.get(blockIndex++);
+                        } else if ((currentBlock = nextCompletedBlock()) != null) {
+                            blockIndex = 0;
+                        } else {
+                            return false;
                         }
                     }
-                    ;
-                    if (block.size() > 0) {
-                        scheduledWork.put(block);
-                    }
+                    return true;
                 } catch (InterruptedException e) {
                     throw new IllegalStateException(e);
-                } finally {
-                    doneProducing.set(true);
+                }
+            }
+
+            /**
+             * Blocks until the next block of output is available or until all of the output has been consumed.
+             */
+            private List<Output> nextCompletedBlock() throws InterruptedException {
+                while(true) {
+                    if(abort.get()) {
+                        return null;
+                    }
+                    if(ordered) {
+                        List<Output> items = reorderBuffer.remove(nextSequence);
+                        if(items != null) {
+                            nextSequence++;
+                            // allow the producer to schedule another block
+                            reorderBufferPermits.release();
+                            if(listener != null) {
+                                listener.itemsOut(items.size());
+                            }
+                            return items;
+                        }
+                    }
+                    if(endOfStream) {
+                        Throwable failure = inputFailure.get();
+                        if(failure != null) {
+                            throw new IllegalStateException("failed to read all of the input", failure);
+                        }
+                        return null;
+                    }
+                    Block<Output> block = takeCompleted();
+                    if(block == endOfOutput) {
+                        // in ordered mode, whatever is left in the reorder buffer still needs to be consumed
+                        endOfStream = true;
+                    } else if(ordered) {
+                        // a block that failed after it was delivered is delivered again, the first one counts
+                        if(block.sequence >= nextSequence && !reorderBuffer.containsKey(block.sequence)) {
+                            reorderBuffer.put(block.sequence, block.items);
+                        }
+                    } else {
+                        if(listener != null) {
+                            listener.itemsOut(block.items.size());
+                        }
+                        return block.items;
+                    }
+                }
+            }
+
+            private Block<Output> takeCompleted() throws InterruptedException {
+                PipelineListener listener = ConcurrentProcessingIterable.this.listener;
+                if(listener == null) {
+                    return completedWork.take();
+                }
+                Block<Output> block = completedWork.poll();
+                if(block == null) {
+                    long start = System.nanoTime();
+                    block = completedWork.take();
+                    listener.consumerBlocked(System.nanoTime() - start);
+                }
+                return block;
+            }
+
+            @Override
+            public Output next() {
+                if (hasNext()) {
+                    Output result = next;
+                    next = null;
+                    return result;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void startProducerAndWorkers() {
+        final int workers = threadPoolSize - 1;
+        submit(new Producer() {
+            @Override
+            void schedule(Block<Input> block) throws InterruptedException {
+                PipelineListener listener = ConcurrentProcessingIterable.this.listener;
+                if(listener == null) {
+                    scheduledWork.put(block);
+                } else {
+                    if(!scheduledWork.offer(block)) {
+                        long start = System.nanoTime();
+                        scheduledWork.put(block);
+                        listener.producerBlocked(System.nanoTime() - start);
+                    }
+                    listener.blockScheduled(scheduledWork.size());
+                }
+            }
+
+            @Override
+            void endOfInput() throws InterruptedException {
+                // tell each of the workers there is no more input
+                for (int i = 0; i < workers; i++) {
+                    scheduledWork.put(endOfInput);
                 }
             }
         });
-        final CountDownLatch activeConsumers = new CountDownLatch(threadPoolSize - 1);
+        final AtomicInteger activeWorkers = new AtomicInteger(workers);
 
-        // start consumer threads
-        for (int i = 0; i < threadPoolSize - 1; i++) {
-            executorService.execute(new Runnable() {
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            submit(new Runnable() {
                 @Override
                 public void run() {
-                    List<Input> block;
+                    // the block that is being processed
+                    Block<Input> block = null;
                     try {
-                        while (((block = scheduledWork.poll(10, TimeUnit.MILLISECONDS)) != null || !doneProducing.get()) && !abort.get()) {
-                            if (block != null) {
-                                ArrayList<Output> outputBlock = new ArrayList<>(blockSize);
-                                for (Input input : block) {
-                                    try {
-                                        Output processResult = processor.process(input);
-                                        if(processResult != null) {
-                                            outputBlock.add(processResult);
-                                        }
-                                    } catch (Exception e) {
-                                        LOG.warn("exception processing item; " + e.getMessage(), e);
-                                    }
-                                }
-                                if (outputBlock.size() > 0) {
-                                    completedWork.put(outputBlock);
-                                }
+                        while (awaitTurn(worker) && (block = scheduledWork.take()) != endOfInput && !abort.get()) {
+                            if(adaptive != null) {
+                                long start = System.nanoTime();
+                                Block<Output> outputBlock = process(block);
+                                // measure before handing off the output, which may block on the consumer
+                                adaptive.blockCompleted(block.items.size(), System.nanoTime() - start);
+                                deliver(outputBlock);
+                            } else {
+                                deliver(process(block));
                             }
+                            block = null;
                         }
                     } catch (InterruptedException e) {
-                        throw new IllegalStateException(e);
+                        if(!abort.get()) {
+                            inputFailure.set(e);
+                            deliverFailed(block);
+                        }
+                    } catch (RuntimeException e) {
+                        // e.g. a listener that throws
+                        inputFailure.set(e);
+                        deliverFailed(block);
                     } finally {
-                        activeConsumers.countDown();
+                        if(adaptive != null) {
+                            // also wakes up inactive workers if this worker failed
+                            adaptive.endOfInput();
+                        }
+                        // the last worker to finish tells the consumer there is no more output
+                        if(activeWorkers.decrementAndGet() == 0 && !abort.get()) {
+                            try {
+                                completedWork.put(endOfOutput);
+                            } catch (InterruptedException e) {
+                                LOG.warn("interrupted while signalling the end of the output");
+                            }
+                        }
                     }
                 }
             });
         }
+    }
 
-        return new Iterator<Output>() {
-            Output next = null;
-            List<Output> currentBlock = null;
-            int blockIndex = 0;
-            int recurse;
+    private void startPartitionReaders() {
+        final AtomicInteger activeReaders = new AtomicInteger(partitions.size());
+        for (final Iterable<Input> partition : partitions) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ArrayList<Input> block = new ArrayList<>(blockSize);
+                        for (Input i : partition) {
+                            if(abort.get()) {
+                                break;
+                            }
+                            block.add(i);
+                            if (block.size() >= blockSize) {
+                                processAndDeliver(block);
+                                block = new ArrayList<>(blockSize);
+                            }
+                        }
+                        if (block.size() > 0 && !abort.get()) {
+                            processAndDeliver(block);
+                        }
+                    } catch (InterruptedException e) {
+                        if(!abort.get()) {
+                            inputFailure.set(e);
+                        }
+                    } catch (RuntimeException e) {
+                        inputFailure.set(e);
+                    } finally {
+                        // the last reader to finish tells the consumer there is no more output
+                        if(activeReaders.decrementAndGet() == 0 && !abort.get()) {
+                            try {
+                                completedWork.put(endOfOutput);
+                            } catch (InterruptedException e) {
+                                LOG.warn("interrupted while signalling the end of the output");
+                            }
+                        }
+                    }
+                }
 
+                private void processAndDeliver(ArrayList<Input> block) throws InterruptedException {
+                    if(listener != null) {
+                        listener.itemsIn(block.size());
+                    }
+                    deliver(process(new Block<Input>(0, block)));
+                }
+            });
+        }
+    }
+
+    private boolean awaitTurn(int worker) throws InterruptedException {
+        if(adaptive != null) {
+            adaptive.awaitTurn(worker);
+        }
+        return true;
+    }
+
+    private void startTaskPerBlockProducer() {
+        submit(new Producer() {
             @Override
-            public boolean hasNext() {
+            void schedule(final Block<Input> block) throws InterruptedException {
+                acquire(tasksInFlight);
+                if(listener != null) {
+                    // there is no queue in this mode, report the number of blocks in flight instead
+                    listener.blockScheduled(threadPoolSize - tasksInFlight.availablePermits());
+                }
                 try {
-                    if(abort.get()) {
-                        return false;
-                    }
-                    if (next != null) {
-                        recurse=0;
-                        return true;
-                    } else if (currentBlock != null && blockIndex < currentBlock.size()) {
-                        next = currentBlock.get(blockIndex++);
-                        recurse=0;
-                        return true;
-                    } else if ((currentBlock = completedWork.poll(Math.max(10*recurse,200)+1, TimeUnit.MILLISECONDS)) != null) {
-                        blockIndex = 0;
-                        recurse++;
-                        return hasNext();
-                    } else if (doneProducing.get() && scheduledWork.size() == 0 && completedWork.size() == 0 && activeConsumers.getCount() == 0) {
-                        recurse=0;
-                        return false;
-                    } else {
-                        recurse++;
-                        return hasNext();
-                    }
-                } catch (InterruptedException e) {
-                    throw new IllegalStateException(e);
+                    submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if(!abort.get()) {
+                                    deliver(process(block));
+                                }
+                            } catch (InterruptedException e) {
+                                if(!abort.get()) {
+                                    inputFailure.set(e);
+                                    deliverFailed(block);
+                                }
+                            } catch (RuntimeException e) {
+                                // e.g. a listener that throws
+                                inputFailure.set(e);
+                                deliverFailed(block);
+                            } finally {
+                                tasksInFlight.release();
+                            }
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // e.g. a RejectedExecutionException
+                    tasksInFlight.release();
+                    throw e;
                 }
             }
 
             @Override
-            public Output next() {
-                if (hasNext()) {
-                    Output result = next;
-                    next = null;
-                    return result;
-                } else {
-                    throw new NoSuchElementException();
+            void endOfInput() throws InterruptedException {
+                try {
+                    // once we have all the permits, all of the tasks have completed
+                    tasksInFlight.acquire(threadPoolSize);
+                } finally {
+                    // also when interrupted, e.g. by shutdownNow(), which drops tasks that have not started
+                    completedWork.put(endOfOutput);
                 }
             }
+        });
+    }
 
+    private void submit(Runnable runnable) {
+        FutureTask<Void> task = new FutureTask<Void>(runnable, null) {
             @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
+            protected void done() {
+                tasks.remove(this);
             }
         };
+        tasks.add(task);
+        executorService.execute(task);
     }
 
+    private Block<Output> process(Block<Input> block) {
+        PipelineListener listener = this.listener;
+        ArrayList<Output> outputBlock = new ArrayList<>(block.items.size());
+        int index = 0;
+        for (Input input : block.items) {
+            boolean sample = listener != null && index++ % PipelineListener.LATENCY_SAMPLE_RATE == 0;
+            long start = sample ? System.nanoTime() : 0;
+            try {
+                Output processResult = processor.process(input);
+                if(processResult != null) {
+                    outputBlock.add(processResult);
+                }
+            } catch (Exception e) {
+                if(listener != null) {
+                    listener.processorFailed(e);
+                }
+                LOG.warn("exception processing item; " + e.getMessage(), e);
+            }
+            if(sample) {
+                listener.itemProcessed(System.nanoTime() - start);
+            }
+        }
+        return new Block<Output>(block.sequence, outputBlock);
+    }
+
+    private void deliver(Block<Output> block) throws InterruptedException {
+        // in ordered mode the consumer needs every sequence number, even if nothing came out of the block
+        if (block.items.size() > 0 || ordered) {
+            completedWork.put(block);
+            if(listener != null) {
+                listener.blockCompleted(completedWork.size());
+            }
+        }
+    }
+
+    /**
+     * In ordered mode, delivers an empty block in place of a block that failed, so the consumer does not wait for its
+     * sequence number forever. The consumer rethrows the failure at the end of the output.
+     */
+    private void deliverFailed(Block<Input> block) {
+        if(ordered && block != null && block != endOfInput) {
+            try {
+                completedWork.put(new Block<Output>(block.sequence, new ArrayList<Output>(0)));
+            } catch (InterruptedException e) {
+                LOG.warn("interrupted while delivering a failed block");
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit and report the time spent waiting for it as time the producer was blocked.
+     */
+    private void acquire(Semaphore semaphore) throws InterruptedException {
+        PipelineListener listener = this.listener;
+        if(listener == null) {
+            semaphore.acquire();
+        } else if(!semaphore.tryAcquire()) {
+            long start = System.nanoTime();
+            semaphore.acquire();
+            listener.producerBlocked(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Cuts the input into blocks and hands them to the workers.
+     */
+    private abstract class Producer implements Runnable {
+        abstract void schedule(Block<Input> block) throws InterruptedException;
+
+        abstract void endOfInput() throws InterruptedException;
+
+        @Override
+        public void run() {
+            try {
+                long sequence = 0;
+                int currentBlockSize = nextBlockSize();
+                ArrayList<Input> block = new ArrayList<>(currentBlockSize);
+                for (Input i : input) {
+                    if(abort.get()) {
+                        break;
+                    }
+                    block.add(i);
+                    if (block.size() >= currentBlockSize) {
+                        scheduleInOrder(new Block<Input>(sequence++, block));
+                        currentBlockSize = nextBlockSize();
+                        block = new ArrayList<>(currentBlockSize);
+                    }
+                }
+                if (block.size() > 0 && !abort.get()) {
+                    scheduleInOrder(new Block<Input>(sequence++, block));
+                }
+            } catch (InterruptedException e) {
+                if(!abort.get()) {
+                    inputFailure.set(e);
+                }
+            } catch (RuntimeException e) {
+                inputFailure.set(e);
+            } finally {
+                if(!abort.get()) {
+                    try {
+                        endOfInput();
+                    } catch (InterruptedException e) {
+                        inputFailure.set(e);
+                        LOG.warn("interrupted while signalling the end of the input");
+                    }
+                }
+            }
+        }
+
+        private int nextBlockSize() {
+            return adaptive == null ? blockSize : adaptive.blockSize();
+        }
+
+        private void scheduleInOrder(Block<Input> block) throws InterruptedException {
+            if(ordered) {
+                // limits the number of blocks ahead of the consumer
+                acquire(reorderBufferPermits);
+            }
+            if(listener != null) {
+                listener.itemsIn(block.items.size());
+            }
+            schedule(block);
+        }
+    }
+
+    /**
+     * Aborts any unfinished work and shuts down the executor if it is owned by this iterable. Externally provided
+     * executors are left running.
+     */
     @Override
     public void close() throws IOException {
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(1, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new IllegalStateException("executor failed to shut down cleanly within 1 second");
+        if(!tasks.isEmpty()) {
+            // the output was not fully consumed; make sure no tasks are left blocking on the queues
+            abort();
         }
+        if(ownsExecutorService) {
+            executorService.shutdown();
+            try {
+                if(!executorService.awaitTermination(1, TimeUnit.SECONDS)) {
+                    LOG.warn("executor failed to shut down cleanly within 1 second");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted while waiting for the executor to shut down");
+            }
+        }
+    }
+
+    /**
+     * Report what happens in this pipeline to a listener. Must be called before iterating.
+     * @param listener a listener, e.g. {@link PipelineMetrics}
+     * @return this iterable
+     */
+    public ConcurrentProcessingIterable<Input, Output> withListener(PipelineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return the controller used in adaptive mode or null
+     */
+    AdaptiveController adaptiveController() {
+        return adaptive;
     }
 
     public void abort() {
         // force all the loops to break
         abort.set(true);
+        for (FutureTask<Void> task : tasks) {
+            task.cancel(true);
+        }
+        // wake up the consumer if it is waiting for output. If the queue is full, the consumer is not waiting and
+        // will see the abort flag. Clearing the queue is not an option because it only allows a single consumer.
+        completedWork.offer(endOfOutput);
+    }
+
+    private static class Block<T> {
+        final long sequence;
+        final List<T> items;
+
+        Block(long sequence, List<T> items) {
+            this.sequence = sequence;
+            this.items = items;
+        }
     }
 }
@@ -0,0 +1,226 @@
+package com.jillesvangurp.iterables;
+
+import java.util.Iterator;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * State machine for parsing csv records as described in RFC 4180. Fields may be quoted, quotes inside quoted fields are
+ * escaped by doubling them and quoted fields may span multiple lines. Unquoted fields and the whitespace around quoted
+ * fields are trimmed, using the same definition of whitespace as Guava's {@link CharMatcher#WHITESPACE}, which the
+ * Splitter used before this parser did. Text between a closing quote and the next delimiter is not valid csv; it is
+ * appended to the field as is, minus trailing whitespace, so {@code "a" b} becomes {@code a b}.
+ *
+ * Optionally, only some of the columns are parsed and filters are applied to fields while parsing. Columns that are not
+ * needed are skipped without copying them and parsing a record stops at the first field that does not pass a filter.
+ */
+class CsvParser {
+    private static final CharMatcher WHITESPACE = CharMatcher.WHITESPACE;
+
+    private final char delimiter;
+    private final char quote;
+    // slot in the record for each column, -1 for columns that are not needed; null to keep all columns
+    private final int[] slots;
+    private final int projectedSize;
+    // filter for each column or null
+    private final Filter<CharSequence>[] filters;
+    // columns after this column are not needed; -1 if all columns are needed
+    private final int lastColumn;
+    private final CharArraySequence view = new CharArraySequence();
+
+    // current line and position, a record may span multiple lines
+    private Iterator<String> lines;
+    private String line;
+    private int n;
+    private int pos;
+
+    CsvParser(char delimiter, char quote) {
+        this(delimiter, quote, null, null);
+    }
+
+    /**
+     * @param delimiter field delimiter
+     * @param quote quote character
+     * @param columns columns to keep, in the order they should appear in the record; null to keep all columns
+     * @param filters filter for each column, may contain nulls; null if there are no filters
+     */
+    CsvParser(char delimiter, char quote, int[] columns, Filter<CharSequence>[] filters) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.filters = filters;
+        if(columns == null) {
+            slots = null;
+            projectedSize = 0;
+            lastColumn = -1;
+        } else {
+            int max = filters == null ? -1 : filters.length - 1;
+            for(int column: columns) {
+                if(column < 0) {
+                    throw new IllegalArgumentException("negative column " + column);
+                }
+                max = Math.max(max, column);
+            }
+            slots = new int[max + 1];
+            for(int i = 0; i < slots.length; i++) {
+                slots[i] = -1;
+            }
+            for(int i = 0; i < columns.length; i++) {
+                if(slots[columns[i]] >= 0) {
+                    throw new IllegalArgumentException("duplicate column " + columns[i]);
+                }
+                slots[columns[i]] = i;
+            }
+            projectedSize = columns.length;
+            lastColumn = max;
+        }
+    }
+
+    /**
+     * Parses the next record that passes the filters into the record, reusing its buffers.
+     * @param lines the lines; more than one line is consumed if a quoted field contains line breaks
+     * @param record record to parse into
+     * @return false if there are no more lines
+     */
+    boolean parse(Iterator<String> lines, CsvRecord record) {
+        this.lines = lines;
+        while(lines.hasNext()) {
+            line = lines.next();
+            n = line.length();
+            pos = 0;
+            record.clear(projectedSize);
+            if(parseRecord(record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseRecord(CsvRecord record) {
+        int column = 0;
+        while(true) {
+            int slot = slots == null ? column : slots[column];
+            Filter<CharSequence> filter = filters != null && column < filters.length ? filters[column] : null;
+            if(slot < 0 && filter == null) {
+                skipField();
+            } else {
+                int start = record.length;
+                parseField(record);
+                int end = record.length;
+                if(filter != null) {
+                    view.set(record.buffer, start, end);
+                    if(!filter.passes(view)) {
+                        skipRemainingFields();
+                        return false;
+                    }
+                }
+                if(slot < 0) {
+                    // only parsed for the filter
+                    record.length = start;
+                } else if(slots == null) {
+                    record.addField(start, end);
+                } else {
+                    record.setField(slot, start, end);
+                }
+            }
+            if(pos == n) {
+                return true;
+            }
+            // skip the delimiter
+            pos++;
+            column++;
+            if(lastColumn >= 0 && column > lastColumn) {
+                skipRemainingFields();
+                return true;
+            }
+        }
+    }
+
+    private void parseField(CsvRecord record) {
+        char c;
+        while(pos < n && (c = line.charAt(pos)) != delimiter && WHITESPACE.matches(c)) {
+            pos++;
+        }
+        if(pos < n && line.charAt(pos) == quote) {
+            pos++;
+            while(true) {
+                if(pos == n) {
+                    nextLine();
+                    record.append('\n');
+                    continue;
+                }
+                c = line.charAt(pos++);
+                if(c == quote) {
+                    if(pos < n && line.charAt(pos) == quote) {
+                        record.append(quote);
+                        pos++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    record.append(c);
+                }
+            }
+        }
+        // an unquoted field, or whatever follows the closing quote
+        int start = pos;
+        while(pos < n && line.charAt(pos) != delimiter) {
+            pos++;
+        }
+        int end = pos;
+        while(end > start && WHITESPACE.matches(line.charAt(end - 1))) {
+            end--;
+        }
+        record.append(line, start, end);
+    }
+
+    /**
+     * Moves to the delimiter after the current field without copying it.
+     */
+    private void skipField() {
+        char c;
+        while(pos < n && (c = line.charAt(pos)) != delimiter && WHITESPACE.matches(c)) {
+            pos++;
+        }
+        if(pos < n && line.charAt(pos) == quote) {
+            pos++;
+            while(true) {
+                int q = line.indexOf(quote, pos);
+                if(q < 0) {
+                    nextLine();
+                } else if(q + 1 < n && line.charAt(q + 1) == quote) {
+                    pos = q + 2;
+                } else {
+                    pos = q + 1;
+                    break;
+                }
+            }
+        }
+        int d = line.indexOf(delimiter, pos);
+        pos = d < 0 ? n : d;
+    }
+
+    private void skipRemainingFields() {
+        while(true) {
+            if(line.indexOf(quote, pos) < 0) {
+                // no quoted fields that may continue on the next line
+                pos = n;
+                return;
+            }
+            skipField();
+            if(pos == n) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void nextLine() {
+        if(!lines.hasNext()) {
+            throw new IllegalStateException("unterminated quoted field in csv record");
+        }
+        // the line iterable strips the line break; a quoted field can only contain \n
+        line = lines.next();
+        n = line.length();
+        pos = 0;
+    }
+}
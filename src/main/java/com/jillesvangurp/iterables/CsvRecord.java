@@ -0,0 +1,328 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A parsed csv record. The fields are kept as ranges in a single char buffer and are only turned into Strings when you
+ * call {@link #get(int)}. The typed getters such as {@link #getLong(int)} parse the field directly from the char buffer
+ * without creating a String at all. For records parsed with a {@link CsvSchema}, the typed getters only work on columns
+ * of the matching type, e.g. {@link #getDouble(int)} on a DOUBLE column.
+ *
+ * Note. {@link CSVLineIterable#records()} reuses the same record for every line, so the content changes when the
+ * iterator moves on. Use {@link #toList()} if you need to keep the fields around.
+ */
+public class CsvRecord {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22 };
+    // doubles represent all integers up to 2^53 exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    char[] buffer = new char[256];
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    private String[] strings = new String[16];
+    int size;
+    // number of chars used in the buffer
+    int length;
+    // declared type of each field or null if there is no schema
+    CsvSchema.Type[] types;
+
+    /**
+     * @return number of fields in the record
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param field index of the field
+     * @return the field value; the String is created on the first call and cached until the record is reused.
+     */
+    public String get(int field) {
+        checkIndex(field);
+        String value = strings[field];
+        if(value == null) {
+            value = new String(buffer, starts[field], ends[field] - starts[field]);
+            strings[field] = value;
+        }
+        return value;
+    }
+
+    /**
+     * @param field index of the field
+     * @return the number of chars in the field
+     */
+    public int length(int field) {
+        checkIndex(field);
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * @param field index of the field
+     * @param index index of the char in the field
+     * @return the char at the index of the field, without creating a String for the field.
+     */
+    public char charAt(int field, int index) {
+        checkIndex(field);
+        if(index < 0 || index >= ends[field] - starts[field]) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for field " + field);
+        }
+        return buffer[starts[field] + index];
+    }
+
+    /**
+     * @param field index of the field
+     * @param value value to compare with
+     * @return true if the field is equal to the value, without creating a String for the field.
+     */
+    public boolean fieldEquals(int field, String value) {
+        checkIndex(field);
+        int start = starts[field];
+        int fieldLength = ends[field] - start;
+        if(fieldLength != value.length()) {
+            return false;
+        }
+        for(int i = 0; i < fieldLength; i++) {
+            if(buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param field index of the field
+     * @return true if the field is empty
+     */
+    public boolean isEmpty(int field) {
+        checkIndex(field);
+        return ends[field] == starts[field];
+    }
+
+    /**
+     * @param field index of the field
+     * @return the field as an int
+     * @throws NumberFormatException if the field is not an int
+     * @throws IllegalStateException if the schema declares another type for the field
+     */
+    public int getInt(int field) {
+        checkType(field, CsvSchema.Type.INT);
+        long value = parseLong(field);
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw numberFormatException(field, "int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param field index of the field
+     * @return the field as a long
+     * @throws NumberFormatException if the field is not a long
+     * @throws IllegalStateException if the schema declares another type for the field
+     */
+    public long getLong(int field) {
+        checkType(field, CsvSchema.Type.LONG);
+        return parseLong(field);
+    }
+
+    private long parseLong(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if(i == end) {
+            throw numberFormatException(field, "long");
+        }
+        // accumulate negatively so that Long.MIN_VALUE can be parsed
+        long result = 0;
+        for(; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw numberFormatException(field, "long");
+            }
+            result = result * 10 - digit;
+        }
+        if(negative) {
+            return result;
+        } else if(result == Long.MIN_VALUE) {
+            throw numberFormatException(field, "long");
+        } else {
+            return -result;
+        }
+    }
+
+    /**
+     * Plain decimals with up to 15 digits are parsed directly from the buffer, anything else (exponents, NaN, more
+     * digits) is parsed with {@link Double#parseDouble(String)}. The result is the same in both cases.
+     * @param field index of the field
+     * @return the field as a double
+     * @throws NumberFormatException if the field is not a double
+     * @throws IllegalStateException if the schema declares another type for the field
+     */
+    public double getDouble(int field) {
+        checkType(field, CsvSchema.Type.DOUBLE);
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for(; i < end; i++) {
+            char c = buffer[i];
+            if(c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if(decimals >= 0) {
+                    decimals++;
+                }
+                if(mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    break;
+                }
+            } else if(c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if(i == end && digits > 0 && decimals < POWERS_OF_TEN.length) {
+            // both the mantissa and the power of ten are exact doubles so the division is correctly rounded
+            double value = decimals <= 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(get(field));
+    }
+
+    /**
+     * @param field index of the field
+     * @return true for true and false for false, ignoring case
+     * @throws IllegalArgumentException if the field is something else
+     * @throws IllegalStateException if the schema declares another type for the field
+     */
+    public boolean getBoolean(int field) {
+        checkType(field, CsvSchema.Type.BOOLEAN);
+        if(matchesIgnoringCase(field, "true")) {
+            return true;
+        } else if(matchesIgnoringCase(field, "false")) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("field " + field + " is not a boolean: " + get(field));
+        }
+    }
+
+    /**
+     * @return a new list with all the fields as Strings
+     */
+    public List<String> toList() {
+        List<String> result = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * @param slots number of empty fields to start with; fields are set with {@link #setField(int, int, int)}
+     */
+    void clear(int slots) {
+        Arrays.fill(strings, 0, size, null);
+        if(slots > starts.length) {
+            starts = new int[slots];
+            ends = new int[slots];
+            strings = new String[slots];
+        } else {
+            Arrays.fill(starts, 0, slots, 0);
+            Arrays.fill(ends, 0, slots, 0);
+        }
+        size = slots;
+        length = 0;
+    }
+
+    void append(char c) {
+        if(length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    void append(String s, int start, int end) {
+        int needed = length + end - start;
+        if(needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+        }
+        s.getChars(start, end, buffer, length);
+        length = needed;
+    }
+
+    void addField(int start, int end) {
+        if(size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    void setField(int slot, int start, int end) {
+        starts[slot] = start;
+        ends[slot] = end;
+    }
+
+    /**
+     * @return the same hash code as {@link String#hashCode()} of the field
+     */
+    int hashCode(int field) {
+        checkIndex(field);
+        int hash = 0;
+        for(int i = starts[field]; i < ends[field]; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    private boolean matchesIgnoringCase(int field, String value) {
+        int start = starts[field];
+        if(ends[field] - start != value.length()) {
+            return false;
+        }
+        for(int i = 0; i < value.length(); i++) {
+            if(Character.toLowerCase(buffer[start + i]) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private NumberFormatException numberFormatException(int field, String type) {
+        return new NumberFormatException("field " + field + " is not a " + type + ": " + get(field));
+    }
+
+    private void checkType(int field, CsvSchema.Type type) {
+        checkIndex(field);
+        if(types != null && types[field] != type) {
+            throw new IllegalStateException("field " + field + " is declared as " + types[field] + ", not " + type);
+        }
+    }
+
+    private void checkIndex(int field) {
+        if(field < 0 || field >= size) {
+            throw new IndexOutOfBoundsException("field " + field + " out of bounds for record with " + size + " fields");
+        }
+    }
+}
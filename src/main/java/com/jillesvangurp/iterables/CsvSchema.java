@@ -0,0 +1,149 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Names and types of the columns you need from a csv file, see {@link CSVLineIterable#withSchema(CsvSchema, boolean)}.
+ * The records contain the fields in the order of the schema, so you can look up the index of a column once and then
+ * use the typed getters of {@link CsvRecord} for every record.
+ *
+ * The types are checked once per file: the non empty fields of the first record must parse as their declared type.
+ * After that, the typed getters of the records only work on columns of the matching type; fields of later records are
+ * only parsed when you call a getter on them.
+ *
+ * <pre>
+ * CsvSchema schema = new CsvSchema().column("id", CsvSchema.Type.LONG).column("price", CsvSchema.Type.DOUBLE);
+ * int price = schema.index("price");
+ * for(CsvRecord record: new CSVLineIterable(lines, ',').withSchema(schema, true).records()) {
+ *     double p = record.getDouble(price);
+ * }
+ * </pre>
+ */
+public class CsvSchema {
+    public enum Type {
+        STRING, INT, LONG, DOUBLE, BOOLEAN
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    /**
+     * @param name name of the column in the header
+     * @param type type of the column
+     * @return this schema
+     */
+    public CsvSchema column(String name, Type type) {
+        if(indices.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate column " + name);
+        }
+        indices.put(name, names.size());
+        names.add(name);
+        types.add(type);
+        return this;
+    }
+
+    /**
+     * @return number of columns in the schema
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param name column name
+     * @return index of the field in the records
+     */
+    public int index(String name) {
+        Integer index = indices.get(name);
+        if(index == null) {
+            throw new IllegalArgumentException("no such column " + name);
+        }
+        return index;
+    }
+
+    public String name(int index) {
+        return names.get(index);
+    }
+
+    public Type type(int index) {
+        return types.get(index);
+    }
+
+    /**
+     * Finds the schema columns in the header.
+     * @param header the header record
+     * @return the index of each schema column in the csv
+     * @throws IllegalStateException if a column is missing from the header
+     */
+    int[] resolve(CsvRecord header) {
+        int[] columns = new int[names.size()];
+        for(int i = 0; i < columns.length; i++) {
+            columns[i] = -1;
+            for(int j = 0; j < header.size(); j++) {
+                if(header.fieldEquals(j, names.get(i))) {
+                    columns[i] = j;
+                    break;
+                }
+            }
+            if(columns[i] < 0) {
+                throw new IllegalStateException("column " + names.get(i) + " not found in header " + header);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Checks the non empty fields of a record against the declared types.
+     * @param record the first record of a file, with the fields in the order of the schema
+     * @throws IllegalStateException if a field does not parse as its type
+     */
+    void validate(CsvRecord record) {
+        for(int i = 0; i < names.size(); i++) {
+            if(record.isEmpty(i)) {
+                continue;
+            }
+            try {
+                switch(types.get(i)) {
+                case INT:
+                    record.getInt(i);
+                    break;
+                case LONG:
+                    record.getLong(i);
+                    break;
+                case DOUBLE:
+                    record.getDouble(i);
+                    break;
+                case BOOLEAN:
+                    record.getBoolean(i);
+                    break;
+                default:
+                    break;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("column " + names.get(i) + " is declared as " + types.get(i) + " but the first record has " + record.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * @return the types of the columns in the order of the schema
+     */
+    Type[] types() {
+        return types.toArray(new Type[types.size()]);
+    }
+
+    /**
+     * @return the first columns of the csv, for files without a header
+     */
+    int[] positional() {
+        int[] columns = new int[names.size()];
+        for(int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,349 @@
+package com.jillesvangurp.iterables;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes gzip members (RFC 1952 / RFC 1951) without producing output, to find where deflate blocks start and what the
+ * 32KB window looks like at that point. This is the information needed to resume inflating in the middle of a gzip
+ * file, see {@link GzipIndex}. {@link java.util.zip.Inflater} does not expose block boundaries, hence this decoder.
+ */
+class DeflateScanner {
+    static final int WINDOW_SIZE = 32 * 1024;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int TABLE_BITS = 15;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final int[] FIXED_LITERALS;
+    private static final int[] FIXED_DISTANCES;
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERALS = new int[1 << TABLE_BITS];
+        buildTable(lengths, 288, FIXED_LITERALS);
+        int[] distances = new int[30];
+        Arrays.fill(distances, 5);
+        FIXED_DISTANCES = new int[1 << TABLE_BITS];
+        buildTable(distances, 30, FIXED_DISTANCES);
+    }
+
+    /**
+     * Called when the scanner gets to a point where inflating can be resumed.
+     */
+    interface Listener {
+        /**
+         * @param bitOffset offset of the gzip header (a multiple of 8) or of the first bit of the deflate block
+         * @param uncompressedOffset number of bytes inflated before this point
+         * @param memberStart true at the start of a gzip member, false at the start of a deflate block inside a member
+         */
+        void resumePoint(long bitOffset, long uncompressedOffset, boolean memberStart) throws IOException;
+    }
+
+    private final InputStream in;
+    private final byte[] input = new byte[64 * 1024];
+    private int inputPosition = 0;
+    private int inputLimit = 0;
+    private long bytesLoaded = 0;
+    private boolean endOfInput = false;
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPosition = 0;
+    private long memberOutput = 0;
+    private long output = 0;
+    private long lines = 0;
+
+    private final int[] literals = new int[1 << TABLE_BITS];
+    private final int[] distances = new int[1 << TABLE_BITS];
+    private final int[] codeLengthCodes = new int[1 << TABLE_BITS];
+
+    DeflateScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Scans all members until the end of the input or until something that is not a gzip member.
+     * @return the total number of inflated bytes
+     */
+    long scan(Listener listener) throws IOException {
+        while(true) {
+            long headerOffset = bitOffset();
+            if(!readHeader()) {
+                return output;
+            }
+            memberOutput = 0;
+            windowPosition = 0;
+            listener.resumePoint(headerOffset, output, true);
+            boolean last;
+            boolean first = true;
+            do {
+                if(!first) {
+                    listener.resumePoint(bitOffset(), output, false);
+                }
+                first = false;
+                last = bits(1) == 1;
+                int type = bits(2);
+                switch(type) {
+                case 0:
+                    stored();
+                    break;
+                case 1:
+                    codes(FIXED_LITERALS, FIXED_DISTANCES);
+                    break;
+                case 2:
+                    dynamic();
+                    break;
+                default:
+                    throw new IOException("invalid deflate block type at bit " + bitOffset());
+                }
+            } while(!last);
+            // the trailer starts at the next byte
+            bits(bitCount & 7);
+            bits(32);
+            bits(32);
+        }
+    }
+
+    /**
+     * @return offset of the next bit to be read
+     */
+    long bitOffset() {
+        return bytesLoaded * 8 - bitCount;
+    }
+
+    /**
+     * @return number of newlines inflated so far
+     */
+    long lines() {
+        return lines;
+    }
+
+    /**
+     * Copies the last 32KB, or less at the start of a member, of the inflated member.
+     * @return the number of bytes copied
+     */
+    int window(byte[] destination) {
+        int length = (int) Math.min(WINDOW_SIZE, memberOutput);
+        for(int i = 0; i < length; i++) {
+            destination[i] = window[(windowPosition - length + i) & WINDOW_MASK];
+        }
+        return length;
+    }
+
+    private boolean readHeader() throws IOException {
+        if(!ensure(8)) {
+            return false;
+        }
+        int id1 = (int) (bitBuffer & 0xff);
+        if(id1 != 0x1f || !ensure(32)) {
+            return false;
+        }
+        if(((bitBuffer >>> 8) & 0xff) != 0x8b || ((bitBuffer >>> 16) & 0xff) != 8) {
+            // trailing garbage
+            return false;
+        }
+        bits(24);
+        int flags = bits(8);
+        // mtime, xfl, os
+        bits(32);
+        bits(16);
+        if((flags & 4) != 0) {
+            int extraLength = bits(16);
+            for(int i = 0; i < extraLength; i++) {
+                bits(8);
+            }
+        }
+        if((flags & 8) != 0) {
+            while(bits(8) != 0) {
+            }
+        }
+        if((flags & 16) != 0) {
+            while(bits(8) != 0) {
+            }
+        }
+        if((flags & 2) != 0) {
+            bits(16);
+        }
+        return true;
+    }
+
+    private void stored() throws IOException {
+        bits(bitCount & 7);
+        int length = bits(16);
+        int complement = bits(16);
+        if(length != (~complement & 0xffff)) {
+            throw new IOException("invalid stored block length at bit " + bitOffset());
+        }
+        for(int i = 0; i < length; i++) {
+            emit((byte) bits(8));
+        }
+    }
+
+    private void dynamic() throws IOException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeLengthCount = bits(4) + 4;
+        int[] lengths = new int[19];
+        for(int i = 0; i < codeLengthCount; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        buildTable(lengths, 19, codeLengthCodes);
+        lengths = new int[literalCount + distanceCount];
+        int i = 0;
+        while(i < literalCount + distanceCount) {
+            int symbol = decode(codeLengthCodes);
+            if(symbol < 16) {
+                lengths[i++] = symbol;
+            } else {
+                int repeat;
+                int value = 0;
+                if(symbol == 16) {
+                    if(i == 0) {
+                        throw new IOException("repeat without previous length at bit " + bitOffset());
+                    }
+                    value = lengths[i - 1];
+                    repeat = 3 + bits(2);
+                } else if(symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if(i + repeat > lengths.length) {
+                    throw new IOException("too many code lengths at bit " + bitOffset());
+                }
+                Arrays.fill(lengths, i, i + repeat, value);
+                i += repeat;
+            }
+        }
+        buildTable(lengths, literalCount, literals);
+        buildTable(Arrays.copyOfRange(lengths, literalCount, lengths.length), distanceCount, distances);
+        codes(literals, distances);
+    }
+
+    private void codes(int[] literalTable, int[] distanceTable) throws IOException {
+        while(true) {
+            int symbol = decode(literalTable);
+            if(symbol < 256) {
+                emit((byte) symbol);
+            } else if(symbol == 256) {
+                return;
+            } else {
+                symbol -= 257;
+                if(symbol >= 29) {
+                    throw new IOException("invalid length code at bit " + bitOffset());
+                }
+                int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                int distanceSymbol = decode(distanceTable);
+                if(distanceSymbol >= 30) {
+                    throw new IOException("invalid distance code at bit " + bitOffset());
+                }
+                int distance = DISTANCE_BASE[distanceSymbol] + bits(DISTANCE_EXTRA[distanceSymbol]);
+                if(distance > memberOutput) {
+                    throw new IOException("distance too far back at bit " + bitOffset());
+                }
+                for(int i = 0; i < length; i++) {
+                    emit(window[(windowPosition - distance) & WINDOW_MASK]);
+                }
+            }
+        }
+    }
+
+    private void emit(byte b) {
+        window[windowPosition & WINDOW_MASK] = b;
+        windowPosition++;
+        memberOutput++;
+        output++;
+        if(b == '\n') {
+            lines++;
+        }
+    }
+
+    private int decode(int[] table) throws IOException {
+        ensure(TABLE_BITS);
+        int entry = table[(int) (bitBuffer & ((1 << TABLE_BITS) - 1))];
+        int length = entry & 15;
+        if(length == 0 || length > bitCount) {
+            throw new IOException("invalid huffman code at bit " + bitOffset());
+        }
+        bitBuffer >>>= length;
+        bitCount -= length;
+        return entry >>> 4;
+    }
+
+    private int bits(int n) throws IOException {
+        if(n == 0) {
+            return 0;
+        }
+        if(!ensure(n)) {
+            throw new EOFException("unexpected end of gzip data");
+        }
+        int value = (int) (bitBuffer & ((1l << n) - 1));
+        bitBuffer >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    /**
+     * @return true if at least n bits are available
+     */
+    private boolean ensure(int n) throws IOException {
+        while(bitCount < n && bitCount <= 56) {
+            if(inputPosition == inputLimit) {
+                if(endOfInput) {
+                    break;
+                }
+                int read = in.read(input);
+                if(read < 0) {
+                    endOfInput = true;
+                    break;
+                }
+                inputPosition = 0;
+                inputLimit = read;
+                continue;
+            }
+            bitBuffer |= (long) (input[inputPosition++] & 0xff) << bitCount;
+            bitCount += 8;
+            bytesLoaded++;
+        }
+        return bitCount >= n;
+    }
+
+    /**
+     * Builds a lookup table indexed by the next TABLE_BITS bits of input that contains symbol &lt;&lt; 4 | code length.
+     */
+    private static void buildTable(int[] lengths, int symbols, int[] table) {
+        Arrays.fill(table, 0);
+        int[] count = new int[16];
+        for(int i = 0; i < symbols; i++) {
+            count[lengths[i]]++;
+        }
+        count[0] = 0;
+        int[] nextCode = new int[16];
+        int code = 0;
+        for(int bits = 1; bits < 16; bits++) {
+            code = (code + count[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+        for(int symbol = 0; symbol < symbols; symbol++) {
+            int length = lengths[symbol];
+            if(length != 0) {
+                // huffman codes are packed starting with the most significant bit
+                int reversed = Integer.reverse(nextCode[length]++) >>> (32 - length);
+                for(int j = reversed; j < table.length; j += 1 << length) {
+                    table[j] = symbol << 4 | length;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.jillesvangurp.iterables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sorts an iterable that does not fit in memory. The input is read in runs of a fixed number of elements. The runs are
+ * sorted on a thread pool and written to temporary files with a {@link Serializer}, optionally compressed. The runs are
+ * then merged with a {@link MergingIterable}; if there are more runs than the merge width, consecutive groups of runs
+ * are merged into bigger runs first, in passes that each read and write all the data once. Input that fits in a
+ * single run is sorted in memory.
+ *
+ * At most threads + 1 runs are in memory at the same time. The input should not reuse its elements because they are
+ * kept until their run is written. The sort is stable. The sorting happens when {@link #iterator()} is called; the
+ * files of a run are deleted once the run is merged. Please close the iterable to close and delete the files of an
+ * iteration that was not finished.
+ *
+ * @param <T> type of the elements
+ */
+public class ExternalSortingIterable<T> implements Iterable<T>, Closeable {
+    public static final int DEFAULT_RUN_SIZE = 100000;
+    public static final int DEFAULT_MERGE_WIDTH = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Iterable<T> input;
+    private final Serializer<T> serializer;
+    private final Comparator<? super T> comparator;
+    private int runSize = DEFAULT_RUN_SIZE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int mergeWidth = DEFAULT_MERGE_WIDTH;
+    private File tempDirectory = null;
+    private boolean compressed = false;
+    private final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+    // runs that are being read
+    private final List<Closeable> openRuns = Collections.synchronizedList(new ArrayList<Closeable>());
+
+    /**
+     * @param input iterable to sort
+     * @param serializer serializer used for the runs
+     * @param comparator comparator
+     */
+    public ExternalSortingIterable(Iterable<T> input, Serializer<T> serializer, Comparator<? super T> comparator) {
+        this.input = input;
+        this.serializer = serializer;
+        this.comparator = comparator;
+    }
+
+    /**
+     * @param runSize number of elements that are sorted in memory, default {@link #DEFAULT_RUN_SIZE}
+     * @return this iterable
+     */
+    public ExternalSortingIterable<T> withRunSize(int runSize) {
+        if(runSize < 1) {
+            throw new IllegalArgumentException("runSize should be at least 1");
+        }
+        this.runSize = runSize;
+        return this;
+    }
+
+    /**
+     * @param threads number of threads that sort and write runs, defaults to the number of processors
+     * @return this iterable
+     */
+    public ExternalSortingIterable<T> withThreads(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads should be at least 1");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param mergeWidth maximum number of runs (and open files) that are merged at once, default {@link #DEFAULT_MERGE_WIDTH}
+     * @return this iterable
+     */
+    public ExternalSortingIterable<T> withMergeWidth(int mergeWidth) {
+        if(mergeWidth < 2) {
+            throw new IllegalArgumentException("mergeWidth should be at least 2");
+        }
+        this.mergeWidth = mergeWidth;
+        return this;
+    }
+
+    /**
+     * @param tempDirectory directory for the runs, defaults to java.io.tmpdir
+     * @return this iterable
+     */
+    public ExternalSortingIterable<T> withTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * @param compressed if true, runs are deflated; this trades some cpu for less disk io
+     * @return this iterable
+     */
+    public ExternalSortingIterable<T> withCompression(boolean compressed) {
+        this.compressed = compressed;
+        return this;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        List<Run> runs = new ArrayList<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            int number=0;
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "externalSortThread_"+number++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Run>> pending = new ArrayList<>();
+            List<T> buffer = new ArrayList<>();
+            for(T element: input) {
+                buffer.add(element);
+                if(buffer.size() == runSize) {
+                    if(pending.size() == threads) {
+                        // wait for a thread, so no more than threads + 1 runs are in memory
+                        runs.add(await(pending.remove(0)));
+                    }
+                    pending.add(executorService.submit(sortAndWrite(buffer)));
+                    buffer = new ArrayList<>();
+                }
+            }
+            if(pending.isEmpty() && runs.isEmpty()) {
+                Collections.sort(buffer, comparator);
+                return Collections.unmodifiableList(buffer).iterator();
+            }
+            if(!buffer.isEmpty()) {
+                pending.add(executorService.submit(sortAndWrite(buffer)));
+            }
+            for(Future<Run> future: pending) {
+                runs.add(await(future));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        while(runs.size() > mergeWidth) {
+            // merging consecutive runs keeps equal elements in input order
+            List<Run> merged = new ArrayList<>();
+            for(int i = 0; i < runs.size(); i += mergeWidth) {
+                List<Run> group = runs.subList(i, Math.min(runs.size(), i + mergeWidth));
+                merged.add(group.size() == 1 ? group.get(0) : write(new MergingIterable<T>(new ArrayList<Run>(group), comparator)));
+            }
+            runs = merged;
+        }
+        return new MergingIterable<T>(runs, comparator).iterator();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(openRuns) {
+            for(Closeable run: openRuns) {
+                run.close();
+            }
+            openRuns.clear();
+        }
+        synchronized(files) {
+            for(File file: files) {
+                file.delete();
+            }
+            files.clear();
+        }
+    }
+
+    private Callable<Run> sortAndWrite(final List<T> elements) {
+        return new Callable<Run>() {
+            @Override
+            public Run call() throws Exception {
+                Collections.sort(elements, comparator);
+                return write(elements);
+            }
+        };
+    }
+
+    private Run await(Future<Run> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while sorting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("cannot sort run", e.getCause());
+        }
+    }
+
+    private Run write(Iterable<T> sorted) {
+        File file;
+        try {
+            file = File.createTempFile("sort-run", ".bin", tempDirectory);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot create run in " + tempDirectory, e);
+        }
+        files.add(file);
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+        long count = 0;
+        try {
+            OutputStream os = new FileOutputStream(file);
+            if(deflater != null) {
+                os = new DeflaterOutputStream(os, deflater, BUFFER_SIZE);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE))) {
+                for(T element: sorted) {
+                    serializer.write(element, out);
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write run " + file, e);
+        } finally {
+            if(deflater != null) {
+                deflater.end();
+            }
+        }
+        return new Run(file, count);
+    }
+
+    /**
+     * A sorted run in a file. The file is deleted after it has been read.
+     */
+    private class Run implements Iterable<T> {
+        private final File file;
+        private final long count;
+
+        Run(File file, long count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final DataInputStream in;
+            try {
+                InputStream is = new FileInputStream(file);
+                if(compressed) {
+                    is = new InflaterInputStream(is);
+                }
+                in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot open run " + file, e);
+            }
+            openRuns.add(in);
+            return new Iterator<T>() {
+                long read = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return read < count;
+                }
+
+                @Override
+                public T next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        T element = serializer.read(in);
+                        if(++read == count) {
+                            openRuns.remove(in);
+                            in.close();
+                            file.delete();
+                            files.remove(file);
+                        }
+                        return element;
+                    } catch (IOException e) {
+                        throw new IllegalStateException("cannot read run " + file, e);
+                    }
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("cannot remove sorted elements");
+                }
+            };
+        }
+    }
+}
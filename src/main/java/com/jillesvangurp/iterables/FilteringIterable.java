@@ -9,19 +9,36 @@ import java.util.NoSuchElementException;
  * @param <T> the type that is filtered
  */
 public class FilteringIterable<T> implements Iterable<T> {
+    private static final int BATCH_SIZE = 1024;
     private final Iterable<T> iterable;
     private final Filter<T> filter;
+    private PipelineListener listener;
 
     public FilteringIterable(Iterable<T> iterable, Filter<T> filter) {
         this.iterable = iterable;
         this.filter = filter;
     }
 
+    /**
+     * Report the number of items that are filtered (items in) and that pass the filter (items out) to a listener. Must be called before iterating.
+     * The counts are reported in batches and when the end of the input is reached.
+     * @param listener a listener, e.g. {@link PipelineMetrics}
+     * @return this iterable
+     */
+    public FilteringIterable<T> withListener(PipelineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
     @Override
     public Iterator<T> iterator() {
         final Iterator<T> iterator = iterable.iterator();
+        final PipelineListener listener = this.listener;
         return new Iterator<T>() {
             T next = null;
+            // counts are reported in batches to keep the overhead low
+            int itemsIn = 0;
+            int itemsOut = 0;
 
             @Override
             public boolean hasNext() {
@@ -31,14 +48,38 @@ public class FilteringIterable<T> implements Iterable<T> {
                         if (filter.passes(candidate)) {
                             next = candidate;
                         }
+                        if(listener != null) {
+                            itemsIn++;
+                            if(next != null) {
+                                itemsOut++;
+                            }
+                            if(itemsIn == BATCH_SIZE) {
+                                flush();
+                            }
+                        }
                     } catch (PermanentlyFailToPassException e) {
                         // special poison pill to force the iterator to abort
+                        if(listener != null) {
+                            flush();
+                        }
                         return false;
                     }
                 }
+                if(next == null && listener != null) {
+                    flush();
+                }
                 return next != null;
             }
 
+            private void flush() {
+                if(itemsIn > 0) {
+                    listener.itemsIn(itemsIn);
+                    listener.itemsOut(itemsOut);
+                    itemsIn = 0;
+                    itemsOut = 0;
+                }
+            }
+
             @Override
             public T next() {
                 if (hasNext()) {
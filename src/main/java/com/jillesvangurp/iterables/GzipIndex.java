@@ -0,0 +1,356 @@
+package com.jillesvangurp.iterables;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoint index for a gzip file, similar to zlib's zran example. Every span bytes of inflated output, the index
+ * records the position of the next deflate block in the compressed file together with the 32KB of output preceding
+ * it, which is all that is needed to resume inflating at that point, and the number of lines before it. Unlike zran,
+ * checkpoints are only placed at blocks that start on a byte boundary, because java.util.zip.Inflater has no
+ * equivalent of zlib's inflatePrime to start in the middle of a byte. Such blocks are common, so checkpoints are
+ * usually only a few blocks past the span. Use {@link IndexedGzipFile} to read a gzip file from any offset or line,
+ * or in parallel ranges, using an index.
+ *
+ * Building an index requires decoding the whole file once. Indexes can be stored in a sidecar file so that this only
+ * has to happen once, see {@link #sidecarFile(File)}. The windows are stored compressed.
+ */
+public class GzipIndex {
+    /**
+     * 8MB
+     */
+    public static final long DEFAULT_SPAN = 8 * 1024 * 1024;
+
+    private static final int MAGIC = 0x475a4958; // GZIX
+    private static final int VERSION = 2;
+
+    private final long compressedSize;
+    private final long uncompressedSize;
+    private final long span;
+    private final List<Checkpoint> checkpoints;
+    private final long[] memberStarts;
+
+    GzipIndex(long compressedSize, long uncompressedSize, long span, List<Checkpoint> checkpoints, long[] memberStarts) {
+        this.compressedSize = compressedSize;
+        this.uncompressedSize = uncompressedSize;
+        this.span = span;
+        this.checkpoints = Collections.unmodifiableList(checkpoints);
+        this.memberStarts = memberStarts;
+    }
+
+    /**
+     * Decodes the gzip file once to build an index.
+     * @param gzipFile a gzip file, possibly with multiple members
+     * @param span minimum number of inflated bytes between checkpoints
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid gzip file
+     */
+    public static GzipIndex build(File gzipFile, final long span) throws IOException {
+        if(span < 1) {
+            throw new IllegalArgumentException("span should be at least 1");
+        }
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+        final List<Long> members = new ArrayList<>();
+        long uncompressedSize;
+        try(InputStream in = new FileInputStream(gzipFile)) {
+            final DeflateScanner scanner = new DeflateScanner(in);
+            final byte[] window = new byte[DeflateScanner.WINDOW_SIZE];
+            uncompressedSize = scanner.scan(new DeflateScanner.Listener() {
+                long last = -1;
+
+                @Override
+                public void resumePoint(long bitOffset, long uncompressedOffset, boolean memberStart) throws IOException {
+                    if(memberStart) {
+                        members.add(bitOffset / 8);
+                    }
+                    if(last < 0 || (uncompressedOffset - last >= span && bitOffset % 8 == 0)) {
+                        byte[] checkpointWindow = new byte[0];
+                        if(!memberStart) {
+                            int length = scanner.window(window);
+                            checkpointWindow = new byte[length];
+                            System.arraycopy(window, 0, checkpointWindow, 0, length);
+                        }
+                        checkpoints.add(new Checkpoint(uncompressedOffset, scanner.lines(), bitOffset / 8, memberStart, checkpointWindow));
+                        last = uncompressedOffset;
+                    }
+                }
+            });
+        }
+        if(members.isEmpty()) {
+            throw new IOException("not a gzip file: " + gzipFile);
+        }
+        long[] memberStarts = new long[members.size()];
+        for(int i = 0; i < memberStarts.length; i++) {
+            memberStarts[i] = members.get(i);
+        }
+        return new GzipIndex(gzipFile.length(), uncompressedSize, span, checkpoints, memberStarts);
+    }
+
+    /**
+     * @param gzipFile a gzip file
+     * @return the file the index for gzipFile is stored in by {@link #load(File)}: the name of the gzip file with .gzidx appended
+     */
+    public static File sidecarFile(File gzipFile) {
+        return new File(gzipFile.getPath() + ".gzidx");
+    }
+
+    /**
+     * Reads the index from the sidecar file if it exists and matches the size of the gzip file. Otherwise, builds the
+     * index with the {@link #DEFAULT_SPAN} and tries to write the sidecar file.
+     * @param gzipFile a gzip file
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid gzip file
+     */
+    public static GzipIndex load(File gzipFile) throws IOException {
+        File sidecar = sidecarFile(gzipFile);
+        if(sidecar.exists() && sidecar.lastModified() >= gzipFile.lastModified()) {
+            try {
+                GzipIndex index = read(sidecar);
+                if(index.compressedSize == gzipFile.length()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // rebuild it
+            }
+        }
+        GzipIndex index = build(gzipFile, DEFAULT_SPAN);
+        try {
+            index.write(sidecar);
+        } catch (IOException e) {
+            // e.g. a read only directory; the index still works
+        }
+        return index;
+    }
+
+    /**
+     * @param indexFile a file written with {@link #write(File)}
+     * @return the index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static GzipIndex read(File indexFile) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a gzip index: " + indexFile);
+            }
+            long compressedSize = in.readLong();
+            long uncompressedSize = in.readLong();
+            long span = in.readLong();
+            long[] memberStarts = new long[in.readInt()];
+            for(int i = 0; i < memberStarts.length; i++) {
+                memberStarts[i] = in.readLong();
+            }
+            int count = in.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            Inflater inflater = new Inflater();
+            try {
+                for(int i = 0; i < count; i++) {
+                    long uncompressedOffset = in.readLong();
+                    long lineNumber = in.readLong();
+                    long compressedOffset = in.readLong();
+                    boolean memberStart = in.readBoolean();
+                    byte[] window = new byte[in.readInt()];
+                    byte[] compressed = new byte[in.readInt()];
+                    in.readFully(compressed);
+                    if(window.length > 0) {
+                        inflater.reset();
+                        inflater.setInput(compressed);
+                        if(inflater.inflate(window) != window.length) {
+                            throw new IOException("corrupt window in gzip index: " + indexFile);
+                        }
+                    }
+                    checkpoints.add(new Checkpoint(uncompressedOffset, lineNumber, compressedOffset, memberStart, window));
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt window in gzip index: " + indexFile, e);
+            } finally {
+                inflater.end();
+            }
+            return new GzipIndex(compressedSize, uncompressedSize, span, checkpoints, memberStarts);
+        }
+    }
+
+    /**
+     * @param indexFile file to write the index to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File indexFile) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(compressedSize);
+            out.writeLong(uncompressedSize);
+            out.writeLong(span);
+            out.writeInt(memberStarts.length);
+            for(long memberStart : memberStarts) {
+                out.writeLong(memberStart);
+            }
+            out.writeInt(checkpoints.size());
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            byte[] compressed = new byte[DeflateScanner.WINDOW_SIZE + 1024];
+            try {
+                for(Checkpoint checkpoint : checkpoints) {
+                    out.writeLong(checkpoint.uncompressedOffset);
+                    out.writeLong(checkpoint.lineNumber);
+                    out.writeLong(checkpoint.compressedOffset);
+                    out.writeBoolean(checkpoint.memberStart);
+                    out.writeInt(checkpoint.window.length);
+                    deflater.reset();
+                    deflater.setInput(checkpoint.window);
+                    deflater.finish();
+                    int length = 0;
+                    while(!deflater.finished()) {
+                        length += deflater.deflate(compressed, length, compressed.length - length);
+                    }
+                    out.writeInt(length);
+                    out.write(compressed, 0, length);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return size of the gzip file
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return total number of inflated bytes
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public long getSpan() {
+        return span;
+    }
+
+    /**
+     * @return the checkpoints, ordered by offset. The first checkpoint is at offset 0.
+     */
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * @param uncompressedOffset offset in the inflated output
+     * @return the last checkpoint at or before the offset
+     */
+    public Checkpoint checkpointFor(long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(checkpoints.get(middle).uncompressedOffset <= uncompressedOffset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    /**
+     * @param line number of a line, 0 for the first line
+     * @return the last checkpoint before the start of the line, which is the first checkpoint for line 0
+     */
+    public Checkpoint checkpointForLine(long line) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            // a checkpoint may be in the middle of the line with the same number
+            if(checkpoints.get(middle).lineNumber < line) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    /**
+     * @return the offset of the first member that starts after the byte offset or -1 if there is none
+     */
+    long nextMemberStart(long byteOffset) {
+        int low = 0;
+        int high = memberStarts.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(memberStarts[middle] <= byteOffset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < memberStarts.length ? memberStarts[low] : -1;
+    }
+
+    /**
+     * A point in the gzip file where inflating can be resumed.
+     */
+    public static class Checkpoint {
+        private final long uncompressedOffset;
+        private final long lineNumber;
+        private final long compressedOffset;
+        private final boolean memberStart;
+        private final byte[] window;
+
+        Checkpoint(long uncompressedOffset, long lineNumber, long compressedOffset, boolean memberStart, byte[] window) {
+            this.uncompressedOffset = uncompressedOffset;
+            this.lineNumber = lineNumber;
+            this.compressedOffset = compressedOffset;
+            this.memberStart = memberStart;
+            this.window = window;
+        }
+
+        /**
+         * @return offset in the inflated output
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * @return number of newlines in the inflated output before the checkpoint, which is the number of the line
+         *         the checkpoint is in
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return offset in the gzip file of the gzip header or the deflate block
+         */
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        /**
+         * @return true if this is the start of a gzip member, false if this is the start of a deflate block in a member
+         */
+        public boolean isMemberStart() {
+            return memberStart;
+        }
+
+        byte[] window() {
+            return window;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.jillesvangurp.iterables;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a single gzip member (RFC 1952) that starts at a given offset in a file, verifies its trailer and reports
+ * where it ends. Reads the file with positional reads so several members of the same file can be inflated
+ * concurrently.
+ */
+class GzipMemberInflater {
+    private static final int FTEXT_RESERVED = 0xe0;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final FileChannel channel;
+    private final long start;
+    private final byte[] input;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private long inputPosition;
+    private long inflated = 0;
+    private long end = -1;
+
+    /**
+     * @param channel the file
+     * @param start offset of the gzip header of the member
+     * @param bufferSize size of the compressed input buffer
+     */
+    GzipMemberInflater(FileChannel channel, long start, int bufferSize) {
+        this.channel = channel;
+        this.start = start;
+        input = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the header.
+     * @return false if there is no valid gzip header at the start offset
+     * @throws IOException if the file cannot be read
+     */
+    boolean readHeader() throws IOException {
+        int read = read(start);
+        int headerLength = headerLength(input, 0, read);
+        if(headerLength < 0) {
+            return false;
+        }
+        inflater.setInput(input, headerLength, read - headerLength);
+        inputPosition = start + read;
+        return true;
+    }
+
+    /**
+     * @return the number of inflated bytes or -1 at the end of the member, after the trailer has been verified.
+     * @throws IOException if the data is corrupt, truncated or does not match the trailer
+     */
+    int inflate(byte[] b, int off, int len) throws IOException {
+        if(end >= 0) {
+            return -1;
+        }
+        try {
+            while(true) {
+                int n = inflater.inflate(b, off, len);
+                if(n > 0) {
+                    crc.update(b, off, n);
+                    inflated += n;
+                    return n;
+                }
+                if(inflater.finished()) {
+                    verifyTrailer(inputPosition - inflater.getRemaining());
+                    return -1;
+                }
+                if(inflater.needsDictionary()) {
+                    throw new IOException("gzip member at " + start + " needs a dictionary");
+                }
+                if(inflater.needsInput()) {
+                    int read = read(inputPosition);
+                    if(read <= 0) {
+                        throw new EOFException("unexpected end of gzip member at " + start);
+                    }
+                    inflater.setInput(input, 0, read);
+                    inputPosition += read;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt gzip member at " + start, e);
+        }
+    }
+
+    private void verifyTrailer(long trailerPosition) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        while(trailer.hasRemaining()) {
+            if(channel.read(trailer, trailerPosition + trailer.position()) < 0) {
+                throw new EOFException("missing trailer for gzip member at " + start);
+            }
+        }
+        long expectedCrc = littleEndianInt(trailer.array(), 0) & 0xffffffffl;
+        long expectedSize = littleEndianInt(trailer.array(), 4) & 0xffffffffl;
+        if(expectedCrc != crc.getValue() || expectedSize != (inflated & 0xffffffffl)) {
+            throw new IOException("trailer of gzip member at " + start + " does not match its content");
+        }
+        end = trailerPosition + 8;
+        inflater.end();
+    }
+
+    /**
+     * @return offset of the first byte after the member; only known after inflate returned -1
+     */
+    long end() {
+        return end;
+    }
+
+    long start() {
+        return start;
+    }
+
+    void close() {
+        inflater.end();
+    }
+
+    private int read(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(input);
+        int total = 0;
+        int read;
+        while(buffer.hasRemaining() && (read = channel.read(buffer, position + total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * @return true if the bytes could be the start of a gzip member: the magic number, deflate and no reserved flags
+     */
+    static boolean isCandidate(byte id1, byte id2, byte cm, byte flags) {
+        return id1 == (byte) 0x1f && id2 == (byte) 0x8b && cm == 8 && (flags & FTEXT_RESERVED) == 0;
+    }
+
+    /**
+     * @return the length of the gzip header in the bytes or -1 if it is not a valid header or not complete
+     */
+    static int headerLength(byte[] bytes, int offset, int length) {
+        if(length < 10 || !isCandidate(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3])) {
+            return -1;
+        }
+        int flags = bytes[offset + 3];
+        int position = 10;
+        if((flags & FEXTRA) != 0) {
+            if(position + 2 > length) {
+                return -1;
+            }
+            position += 2 + littleEndianShort(bytes, offset + position);
+        }
+        if((flags & FNAME) != 0) {
+            position = skipZeroTerminated(bytes, offset, length, position);
+        }
+        if((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(bytes, offset, length, position);
+        }
+        if((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position <= length ? position : -1;
+    }
+
+    /**
+     * @return BSIZE + 1, i.e. the total size of the BGZF block starting at the offset, or -1 if the header is not a BGZF header
+     */
+    static int bgzfBlockSize(byte[] bytes, int offset, int length) {
+        if(length < 12 || !isCandidate(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3]) || (bytes[offset + 3] & FEXTRA) == 0) {
+            return -1;
+        }
+        int extraLength = littleEndianShort(bytes, offset + 10);
+        int position = 12;
+        int extraEnd = Math.min(length, 12 + extraLength);
+        // subfields: SI1, SI2, SLEN, data
+        while(position + 4 <= extraEnd) {
+            int subfieldLength = littleEndianShort(bytes, offset + position + 2);
+            if(bytes[offset + position] == 'B' && bytes[offset + position + 1] == 'C' && subfieldLength == 2 && position + 6 <= extraEnd) {
+                return littleEndianShort(bytes, offset + position + 4) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int offset, int length, int position) {
+        while(position < length && bytes[offset + position] != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static int littleEndianShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int littleEndianInt(byte[] bytes, int offset) {
+        return littleEndianShort(bytes, offset) | littleEndianShort(bytes, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,256 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.jillesvangurp.iterables.SortMergeJoin.Group;
+import com.jillesvangurp.iterables.SortMergeJoin.JoinType;
+
+/**
+ * Joins two unsorted iterables on a long key, for when the right side fits in memory. The right side is read into an
+ * open addressing index of primitive arrays, so there is no map entry or boxed key per element. The left side
+ * is then streamed past the index; looking up a key does not allocate anything.
+ *
+ * Iterating gives you a {@link Group} for every left element with the right elements that have the same key. With
+ * {@link JoinType#FULL}, the right elements whose key did not occur on the left come last, in a group per key and in no
+ * particular order. Use {@link #cursor()} to avoid creating the groups; the left side may reuse its elements (like
+ * {@link CSVLineIterable#records()}) but the right side is kept in memory and should not.
+ *
+ * <pre>
+ * HashJoin&lt;Order, Customer&gt; join = HashJoin.joinOnLongKeys(orders, orderCustomerId, customers, customerId, JoinType.LEFT);
+ * </pre>
+ *
+ * @param <L> type of the left input
+ * @param <R> type of the right input
+ */
+public class HashJoin<L, R> implements Iterable<Group<L, R>> {
+    private final Iterable<L> left;
+    private final LongKeyExtractor<L> leftKey;
+    private final Iterable<R> right;
+    private final LongKeyExtractor<R> rightKey;
+    private final JoinType type;
+
+    private HashJoin(Iterable<L> left, LongKeyExtractor<L> leftKey, Iterable<R> right, LongKeyExtractor<R> rightKey, JoinType type) {
+        this.left = left;
+        this.leftKey = leftKey;
+        this.right = right;
+        this.rightKey = rightKey;
+        this.type = type;
+    }
+
+    /**
+     * @param left left input, streamed
+     * @param leftKey extracts the key of the left elements
+     * @param right right input, kept in memory
+     * @param rightKey extracts the key of the right elements
+     * @param type join type
+     * @param <L> type of the left input
+     * @param <R> type of the right input
+     * @return the join
+     */
+    public static <L, R> HashJoin<L, R> joinOnLongKeys(Iterable<L> left, LongKeyExtractor<L> leftKey, Iterable<R> right, LongKeyExtractor<R> rightKey, JoinType type) {
+        return new HashJoin<>(left, leftKey, right, rightKey, type);
+    }
+
+    /**
+     * Reads the right side into memory.
+     * @return cursor over the groups of the join
+     */
+    public Cursor<L, R> cursor() {
+        LongIndex index = new LongIndex();
+        Object[] elements = new Object[16];
+        for(R element: right) {
+            int entry = index.add(rightKey.key(element));
+            if(entry == elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+            }
+            elements[entry] = element;
+        }
+        return new Cursor<L, R>(left.iterator(), leftKey, index, elements, type);
+    }
+
+    @Override
+    public Iterator<Group<L, R>> iterator() {
+        final Cursor<L, R> cursor = cursor();
+        return new Iterator<Group<L, R>>() {
+            Boolean hasNext = null;
+
+            @Override
+            public boolean hasNext() {
+                if(hasNext == null) {
+                    hasNext = cursor.next();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Group<L, R> next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                List<L> leftElements = cursor.hasLeft() ? Collections.singletonList(cursor.left().next()) : Collections.<L>emptyList();
+                List<R> rightElements = new ArrayList<>();
+                Iterator<R> it = cursor.right();
+                while(it.hasNext()) {
+                    rightElements.add(it.next());
+                }
+                return new Group<>(leftElements, rightElements);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("cannot remove groups");
+            }
+        };
+    }
+
+    /**
+     * Moves through the groups of a join. Reuses its iterators, so moving through the join only allocates what the left
+     * input allocates.
+     */
+    public static class Cursor<L, R> {
+        private final Iterator<L> leftIterator;
+        private final LongKeyExtractor<L> leftKey;
+        private final LongIndex index;
+        private final Object[] elements;
+        private final JoinType type;
+        // slots of keys that occurred on the left, only for full joins
+        private final boolean[] matched;
+
+        private L leftElement;
+        private boolean groupHasLeft;
+        private boolean groupHasRight;
+        private boolean leftReturned;
+        // next right entry of the current group
+        private int entry = LongIndex.NONE;
+        // next slot to look at for unmatched keys once the left side is done
+        private int unmatchedSlot = -1;
+        private final Iterator<L> leftGroup;
+        private final Iterator<R> rightGroup;
+
+        Cursor(Iterator<L> leftIterator, LongKeyExtractor<L> leftKey, LongIndex index, Object[] elements, JoinType type) {
+            this.leftIterator = leftIterator;
+            this.leftKey = leftKey;
+            this.index = index;
+            this.elements = elements;
+            this.type = type;
+            matched = type == JoinType.FULL ? new boolean[index.slots()] : null;
+            leftGroup = new Iterator<L>() {
+                @Override
+                public boolean hasNext() {
+                    return groupHasLeft && !leftReturned;
+                }
+
+                @Override
+                public L next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    leftReturned = true;
+                    return leftElement;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("cannot remove elements");
+                }
+            };
+            rightGroup = new Iterator<R>() {
+                @Override
+                public boolean hasNext() {
+                    return entry != LongIndex.NONE;
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public R next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    R element = (R) Cursor.this.elements[entry];
+                    entry = Cursor.this.index.next(entry);
+                    return element;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("cannot remove elements");
+                }
+            };
+        }
+
+        /**
+         * Moves to the next group.
+         * @return false if there are no more groups
+         */
+        public boolean next() {
+            leftElement = null;
+            while(unmatchedSlot < 0 && leftIterator.hasNext()) {
+                L element = leftIterator.next();
+                int slot = index.slot(leftKey.key(element));
+                if(slot == LongIndex.NONE && type == JoinType.INNER) {
+                    continue;
+                }
+                leftElement = element;
+                groupHasLeft = true;
+                leftReturned = false;
+                groupHasRight = slot != LongIndex.NONE;
+                if(slot == LongIndex.NONE) {
+                    entry = LongIndex.NONE;
+                } else {
+                    entry = index.first(slot);
+                    if(matched != null) {
+                        matched[slot] = true;
+                    }
+                }
+                return true;
+            }
+            groupHasLeft = false;
+            groupHasRight = false;
+            entry = LongIndex.NONE;
+            if(matched != null) {
+                while(++unmatchedSlot < matched.length) {
+                    if(!matched[unmatchedSlot] && index.first(unmatchedSlot) != LongIndex.NONE) {
+                        groupHasRight = true;
+                        entry = index.first(unmatchedSlot);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the current group has a left element
+         */
+        public boolean hasLeft() {
+            return groupHasLeft;
+        }
+
+        /**
+         * @return true if the current group has elements on the right side
+         */
+        public boolean hasRight() {
+            return groupHasRight;
+        }
+
+        /**
+         * @return iterator over the left element of the current group; valid until {@link #next()} is called
+         */
+        public Iterator<L> left() {
+            return leftGroup;
+        }
+
+        /**
+         * @return iterator over the right elements of the current group; valid until {@link #next()} is called
+         */
+        public Iterator<R> right() {
+            return rightGroup;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.jillesvangurp.iterables;
+
+import java.nio.charset.Charset;
+
+/**
+ * Finds the first occurrence of any of a set of patterns in a char array with the Boyer-Moore-Horspool algorithm. The
+ * skip table is computed over the first minLength chars of every pattern, so with several patterns the skips are
+ * limited by the shortest one; candidates are then verified against every pattern. The table is indexed by the low
+ * byte of a char, which can only make skips shorter, so it stays small for any alphabet.
+ *
+ * Use {@link #forBytes(Charset, String...)} to search encoded bytes instead of chars.
+ *
+ * Immutable, so it can be shared between threads.
+ */
+class Horspool {
+    private final char[][] patterns;
+    private final int minLength;
+    private final int maxLength;
+    private final int[] shifts = new int[256];
+
+    Horspool(String... patterns) {
+        if(patterns.length == 0) {
+            throw new IllegalArgumentException("at least one pattern is needed");
+        }
+        this.patterns = new char[patterns.length][];
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for(int i = 0; i < patterns.length; i++) {
+            if(patterns[i].isEmpty()) {
+                throw new IllegalArgumentException("patterns should not be empty");
+            }
+            this.patterns[i] = patterns[i].toCharArray();
+            min = Math.min(min, patterns[i].length());
+            max = Math.max(max, patterns[i].length());
+        }
+        minLength = min;
+        maxLength = max;
+        for(int c = 0; c < shifts.length; c++) {
+            shifts[c] = minLength;
+        }
+        for(char[] pattern: this.patterns) {
+            for(int j = 0; j < minLength - 1; j++) {
+                int c = pattern[j] & 0xFF;
+                shifts[c] = Math.min(shifts[c], minLength - 1 - j);
+            }
+        }
+    }
+
+    /**
+     * @param charset charset of the bytes that are searched
+     * @param patterns patterns
+     * @return a matcher for {@link #search(byte[], int, int, boolean)}, the patterns are encoded with the charset
+     */
+    static Horspool forBytes(Charset charset, String... patterns) {
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        String[] bytePatterns = new String[patterns.length];
+        for(int i = 0; i < patterns.length; i++) {
+            // one char per byte
+            bytePatterns[i] = new String(patterns[i].getBytes(charset), latin1);
+        }
+        return new Horspool(bytePatterns);
+    }
+
+    /**
+     * @return length of the longest pattern
+     */
+    int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @param pattern index of a pattern
+     * @return length of the pattern
+     */
+    int length(int pattern) {
+        return patterns[pattern].length;
+    }
+
+    /**
+     * @param buffer chars to search
+     * @param from index of the first char to search
+     * @param limit index after the last char to search
+     * @param endOfInput if false, the search stops where a match might continue after limit; a later search that
+     *        starts at limit - {@link #maxLength()} + 1 or earlier will find it
+     * @return start of the first match or -1
+     */
+    int search(char[] buffer, int from, int limit, boolean endOfInput) {
+        int last = minLength - 1;
+        int i = from;
+        while(i + minLength <= limit) {
+            char c = buffer[i + last];
+            for(char[] pattern: patterns) {
+                if(pattern[last] == c) {
+                    if(i + pattern.length > limit) {
+                        if(!endOfInput) {
+                            return -1;
+                        }
+                    } else if(matches(pattern, buffer, i)) {
+                        return i;
+                    }
+                }
+            }
+            i += shifts[c & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * @param buffer chars
+     * @param start start of a match found with {@link #search(char[], int, int, boolean)}
+     * @param limit index after the last char in the buffer
+     * @return index of the first pattern that matches at start or -1
+     */
+    int patternAt(char[] buffer, int start, int limit) {
+        for(int i = 0; i < patterns.length; i++) {
+            if(start + patterns[i].length <= limit && matches(patterns[i], buffer, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Like {@link #search(char[], int, int, boolean)}, for matchers created with {@link #forBytes(Charset, String...)}.
+     */
+    int search(byte[] buffer, int from, int limit, boolean endOfInput) {
+        int last = minLength - 1;
+        int i = from;
+        while(i + minLength <= limit) {
+            int c = buffer[i + last] & 0xFF;
+            for(char[] pattern: patterns) {
+                if(pattern[last] == c) {
+                    if(i + pattern.length > limit) {
+                        if(!endOfInput) {
+                            return -1;
+                        }
+                    } else if(matches(pattern, buffer, i)) {
+                        return i;
+                    }
+                }
+            }
+            i += shifts[c];
+        }
+        return -1;
+    }
+
+    /**
+     * Like {@link #patternAt(char[], int, int)}, for matchers created with {@link #forBytes(Charset, String...)}.
+     */
+    int patternAt(byte[] buffer, int start, int limit) {
+        for(int i = 0; i < patterns.length; i++) {
+            if(start + patterns[i].length <= limit && matches(patterns[i], buffer, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(char[] pattern, char[] buffer, int start) {
+        for(int j = 0; j < pattern.length; j++) {
+            if(buffer[start + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(char[] pattern, byte[] buffer, int start) {
+        for(int j = 0; j < pattern.length; j++) {
+            if((buffer[start + j] & 0xFF) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,426 @@
+package com.jillesvangurp.iterables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the inflated content of a gzip file using a {@link GzipIndex}. Inflating starts at the checkpoint
+ * closest to the requested offset instead of at the start of the file. Because the streams only use positional reads,
+ * several of them can be used concurrently, e.g. to read the ranges from {@link #split(int)} with
+ * {@link Iterables#processPartitionsConcurrently(List, Processor, int, int)}. Ranges that are not read to the end,
+ * e.g. because the caller stops early, are closed when the file is closed.
+ */
+public class IndexedGzipFile implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final GzipIndex index;
+    // streams of line iterators that are being read
+    private final List<Closeable> openStreams = Collections.synchronizedList(new ArrayList<Closeable>());
+
+    /**
+     * @param gzipFile a gzip file
+     * @param index index for the gzip file
+     * @throws IOException if the file cannot be opened
+     */
+    public IndexedGzipFile(File gzipFile, GzipIndex index) throws IOException {
+        if(gzipFile.length() != index.getCompressedSize()) {
+            throw new IllegalArgumentException("the index does not match " + gzipFile);
+        }
+        file = new RandomAccessFile(gzipFile, "r");
+        channel = file.getChannel();
+        this.index = index;
+    }
+
+    /**
+     * Opens the gzip file with the index from its sidecar file, see {@link GzipIndex#load(File)}.
+     * @param gzipFile a gzip file
+     * @return the indexed file
+     * @throws IOException if the file cannot be read
+     */
+    public static IndexedGzipFile open(File gzipFile) throws IOException {
+        return new IndexedGzipFile(gzipFile, GzipIndex.load(gzipFile));
+    }
+
+    public GzipIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param uncompressedOffset offset in the inflated content
+     * @return a stream with the inflated content from the offset
+     * @throws IOException if the file cannot be read
+     */
+    public InputStream open(long uncompressedOffset) throws IOException {
+        GzipIndex.Checkpoint checkpoint = index.checkpointFor(uncompressedOffset);
+        IndexedInputStream in = new IndexedInputStream(checkpoint);
+        long skip = uncompressedOffset - checkpoint.getUncompressedOffset();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while(skip > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, skip));
+                if(read < 0) {
+                    break;
+                }
+                skip -= read;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * @param start offset of the first line; if it is in the middle of a line, the range starts at the next line
+     * @param end lines that start at or after this offset are not part of the range; use -1 for the end of the file
+     * @return the UTF-8 encoded lines that start in the range. A trailing '\r' is stripped.
+     */
+    public Iterable<String> lines(final long start, final long end) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                try {
+                    return new LineIterator(start, end);
+                } catch (IOException e) {
+                    throw new IllegalStateException("could not open " + start, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Like {@link Iterables#from(Iterable, long)} on the lines of the file, but inflating starts at the last checkpoint
+     * before the line instead of at the start of the file.
+     * @param from number of the first line, 0 for the first line of the file
+     * @return the UTF-8 encoded lines from line number from. A trailing '\r' is stripped.
+     */
+    public Iterable<String> fromLine(long from) {
+        return lineRange(from, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link Iterables#filterRange(Iterable, long, long)} on the lines of the file, but inflating starts at the
+     * last checkpoint before line from and stops after line to.
+     * @param from number of the first line, 0 for the first line of the file
+     * @param to number of the last line
+     * @return the UTF-8 encoded lines from line number from up to and including line number to. A trailing '\r' is
+     *         stripped.
+     */
+    public Iterable<String> lineRange(final long from, final long to) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                long first = Math.max(0, from);
+                try {
+                    return new LineIterator(index.checkpointForLine(first), first, to);
+                } catch (IOException e) {
+                    throw new IllegalStateException("could not open line " + from, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Divides the lines into ranges that start at checkpoints, so each range can be read without inflating anything
+     * that is not part of it.
+     * @param partitions maximum number of ranges
+     * @return ranges of lines; fewer than partitions if there are not enough checkpoints
+     */
+    public List<Iterable<String>> split(int partitions) {
+        if(partitions < 1) {
+            throw new IllegalArgumentException("partitions should be at least 1");
+        }
+        List<GzipIndex.Checkpoint> checkpoints = index.getCheckpoints();
+        List<Long> starts = new ArrayList<>();
+        for(int i = 0; i < partitions; i++) {
+            long start = checkpoints.get((int) ((long) checkpoints.size() * i / partitions)).getUncompressedOffset();
+            if(starts.isEmpty() || start > starts.get(starts.size() - 1)) {
+                starts.add(start);
+            }
+        }
+        List<Iterable<String>> ranges = new ArrayList<>(starts.size());
+        for(int i = 0; i < starts.size(); i++) {
+            ranges.add(lines(starts.get(i), i + 1 < starts.size() ? starts.get(i + 1) : -1));
+        }
+        return ranges;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(openStreams) {
+            for(Closeable stream: openStreams) {
+                stream.close();
+            }
+            openStreams.clear();
+        }
+        file.close();
+    }
+
+    private class LineIterator implements Iterator<String> {
+        private final InputStream in;
+        private final long end;
+        private final long lastLine;
+        // number of the next line in ranges of line numbers
+        private long lineNumber;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private int position = 0;
+        private int limit = 0;
+        // offset of the next byte in buffer
+        private long offset;
+        private String next = null;
+        private boolean endOfInput = false;
+
+        LineIterator(long start, long end) throws IOException {
+            this.end = end;
+            lastLine = Long.MAX_VALUE;
+            offset = Math.max(0, start - 1);
+            in = open(offset);
+            openStreams.add(in);
+            try {
+                if(start > 0) {
+                    // the range starts at a line unless the previous byte is not a newline
+                    int previous = readByte();
+                    if(previous >= 0 && previous != '\n') {
+                        // skip the rest of the line, which belongs to the previous range
+                        int b;
+                        while((b = readByte()) >= 0 && b != '\n') {
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                finish();
+                throw e;
+            }
+        }
+
+        LineIterator(GzipIndex.Checkpoint checkpoint, long firstLine, long lastLine) throws IOException {
+            end = -1;
+            this.lastLine = lastLine;
+            lineNumber = firstLine;
+            offset = checkpoint.getUncompressedOffset();
+            in = new IndexedInputStream(checkpoint);
+            openStreams.add(in);
+            try {
+                // the checkpoint is in line number getLineNumber(), so skip to the start of the first line
+                int b = 0;
+                for(long skip = firstLine - checkpoint.getLineNumber(); skip > 0 && b >= 0; skip--) {
+                    while((b = readByte()) >= 0 && b != '\n') {
+                    }
+                }
+            } catch (IOException e) {
+                finish();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next == null && !endOfInput) {
+                try {
+                    next = readLine();
+                } catch (IOException e) {
+                    try {
+                        finish();
+                    } catch (IOException closeFailure) {
+                        e.addSuppressed(closeFailure);
+                    }
+                    throw new IllegalStateException("could not read line", e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        private String readLine() throws IOException {
+            long lineStart = offset - limit + position;
+            if((end >= 0 && lineStart >= end) || lineNumber > lastLine) {
+                finish();
+                return null;
+            }
+            lineNumber++;
+            line.reset();
+            while(true) {
+                if(position == limit && !fill()) {
+                    finish();
+                    return line.size() > 0 ? decode() : null;
+                }
+                int from = position;
+                while(position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.write(buffer, from, position - from);
+                if(position < limit) {
+                    // skip the newline
+                    position++;
+                    return decode();
+                }
+            }
+        }
+
+        private String decode() {
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length;
+            if(length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return new String(bytes, 0, length, UTF8);
+        }
+
+        private int readByte() throws IOException {
+            if(position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer);
+            if(read <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            offset += read;
+            return true;
+        }
+
+        private void finish() throws IOException {
+            endOfInput = true;
+            openStreams.remove(in);
+            in.close();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("cannot remove lines");
+        }
+    }
+
+    /**
+     * Inflates from a checkpoint until the end of the file, continuing with the next members.
+     */
+    private class IndexedInputStream extends InputStream {
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private Inflater inflater;
+        // position of the next compressed byte to read
+        private long position;
+        private boolean endOfInput = false;
+        private volatile boolean closed = false;
+        // an offset inside the current member, used to find the next member
+        private long memberOffset;
+
+        IndexedInputStream(GzipIndex.Checkpoint checkpoint) throws IOException {
+            if(checkpoint.isMemberStart()) {
+                startMember(checkpoint.getCompressedOffset());
+            } else {
+                inflater = new Inflater(true);
+                byte[] window = checkpoint.window();
+                if(window.length > 0) {
+                    inflater.setDictionary(window);
+                }
+                position = checkpoint.getCompressedOffset();
+                memberOffset = position;
+            }
+        }
+
+        private void startMember(long headerOffset) throws IOException {
+            int read = channel.read(ByteBuffer.wrap(input), headerOffset);
+            int headerLength = GzipMemberInflater.headerLength(input, 0, Math.max(0, read));
+            if(headerLength < 0) {
+                throw new IOException("no gzip header at " + headerOffset);
+            }
+            if(inflater != null) {
+                inflater.end();
+            }
+            inflater = new Inflater(true);
+            memberOffset = headerOffset;
+            position = headerOffset + headerLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read;
+            while((read = read(b, 0, 1)) == 0) {
+            }
+            return read < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(closed) {
+                throw new IOException("stream closed");
+            }
+            if(len == 0) {
+                return 0;
+            }
+            if(endOfInput) {
+                return -1;
+            }
+            try {
+                while(true) {
+                    int n = inflater.inflate(b, off, len);
+                    if(n > 0) {
+                        return n;
+                    }
+                    if(inflater.finished()) {
+                        long next = index.nextMemberStart(memberOffset);
+                        if(next < 0) {
+                            endOfInput = true;
+                            return -1;
+                        }
+                        startMember(next);
+                    } else if(inflater.needsDictionary()) {
+                        throw new IOException("unexpected dictionary in gzip file");
+                    } else if(inflater.needsInput()) {
+                        int read = channel.read(ByteBuffer.wrap(input), position);
+                        if(read <= 0) {
+                            throw new EOFException("unexpected end of gzip file");
+                        }
+                        position += read;
+                        inflater.setInput(input, 0, read);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt gzip file", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if(inflater != null) {
+                // releases the native zlib memory
+                inflater.end();
+            }
+        }
+    }
+}
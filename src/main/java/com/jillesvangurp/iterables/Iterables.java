@@ -1,9 +1,10 @@
 package com.jillesvangurp.iterables;
 
-import java.io.IOException;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Collection of static methods for working with iterators and iterables that allow you to filter, process, etc.
@@ -93,6 +94,17 @@ public class Iterables {
         });
     }
 
+    /**
+     * @param file an indexed gzip file
+     * @param from number of the first line
+     * @param to number of the last line
+     * @return the lines between from and to, inflated from the last checkpoint before line from instead of from the
+     *         start of the file.
+     */
+    public static Iterable<String> filterRange(IndexedGzipFile file, long from, long to) {
+        return file.lineRange(from, to);
+    }
+
     /**
      * @param it an iterable
      * @param to start position
@@ -132,6 +144,16 @@ public class Iterables {
         });
     }
 
+    /**
+     * @param file an indexed gzip file
+     * @param from number of the first line
+     * @return the lines from line number from, inflated from the last checkpoint before it instead of from the start
+     *         of the file.
+     */
+    public static Iterable<String> from(IndexedGzipFile file, long from) {
+        return file.fromLine(from);
+    }
+
     /**
      * Implement a map operation that applies a processor to each element in the wrapped iterator and iterates over the resulting output.
      * @param it an iterable of I
@@ -207,32 +229,139 @@ public class Iterables {
     }
 
     /**
+     * Process iterable concurrently using the processor and hand the blocks between the threads using lock free ring buffers rather than
+     * LinkedBlockingQueues. IMPORTANT, you must close the iterable (it implements Closeable) after use otherwise, the process may never exit.
      * @param input input iterable
-     * @param mapper processor that transforms I into O
-     * @param reducer reducer that reduces iterables of O into a single O value
+     * @param processor a processor that transforms I into O
      * @param blockSize number of items that is processed in one go by each consumer thread
      * @param threadPoolSize number of threads (including the producer threads). CPU count +1 is typically what you want for CPU constrained tasks.
      * @param queueCapacity number of items that get queued. Tune this to ensure the consumer threads don't run out of work.
+     * @param waitStrategy what the threads do while waiting, see {@link WaitStrategy}
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the input iterable concurrently and offer the output as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processConcurrently(Iterable<I> input, Processor<I,O> processor, int blockSize, int threadPoolSize, int queueCapacity, WaitStrategy waitStrategy) {
+        return new ConcurrentProcessingIterable<I,O>(input, processor, blockSize, threadPoolSize, queueCapacity, waitStrategy);
+    }
+
+    /**
+     * Process an input that is divided into partitions concurrently, e.g. the ranges of a file from {@link MappedLineIterable#split(int)}. Each partition is
+     * read and processed on its own thread, so reading the input is not limited to a single producer thread. The output is in no particular order.
+     * IMPORTANT, you must close the iterable (it implements Closeable) after use otherwise, the process may never exit.
+     * @param partitions the input, divided into partitions that can be read independently. One thread is started for each partition.
+     * @param processor a processor that transforms I into O
+     * @param blockSize number of items that is processed before the output is handed over
+     * @param queueCapacity number of processed blocks that get queued.
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the partitions concurrently and offer the output as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processPartitionsConcurrently(List<? extends Iterable<I>> partitions, Processor<I,O> processor, int blockSize, int queueCapacity) {
+        return new ConcurrentProcessingIterable<I,O>(partitions, processor, blockSize, queueCapacity);
+    }
+
+    /**
+     * Process iterable concurrently using the processor on an externally managed executor. The executor is not shut down when the returned iterable is closed but
+     * you must still close the iterable.
+     * @param input input iterable
+     * @param processor a processor that transforms I into O
+     * @param blockSize number of items that is processed in one go by each consumer thread
+     * @param threadPoolSize number of tasks (including the producer task). The executor must be able to run all of these at the same time.
+     * @param queueCapacity number of items that get queued. Tune this to ensure the consumer threads don't run out of work.
+     * @param executorService executor that runs the producer and the workers
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the input iterable concurrently and offer the output as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processConcurrently(Iterable<I> input, Processor<I,O> processor, int blockSize, int threadPoolSize, int queueCapacity, ExecutorService executorService) {
+        return new ConcurrentProcessingIterable<I,O>(input, processor, blockSize, threadPoolSize, queueCapacity, false, 0, executorService, false);
+    }
+
+    /**
+     * Process iterable concurrently by running each block on its own virtual thread, with at most maxConcurrency blocks in flight. Intended for IO bound
+     * processors. Virtual threads require Java 21, see {@link ConcurrentProcessingIterable#newVirtualThreadPerTaskExecutor()} for what happens on older versions.
+     * IMPORTANT, you must close the iterable (it implements Closeable) after use.
+     * @param input input iterable
+     * @param processor a processor that transforms I into O
+     * @param blockSize number of items that is processed in one task, use 1 to run each item on its own thread.
+     * @param maxConcurrency maximum number of blocks that are processed at the same time.
+     * @param queueCapacity number of processed blocks that get queued before the tasks block.
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the input iterable concurrently and offer the output as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processConcurrentlyOnVirtualThreads(Iterable<I> input, Processor<I,O> processor, int blockSize, int maxConcurrency, int queueCapacity) {
+        return new ConcurrentProcessingIterable<I,O>(input, processor, blockSize, maxConcurrency, queueCapacity, false, 0, ConcurrentProcessingIterable.newVirtualThreadPerTaskExecutor(), true, true);
+    }
+
+    /**
+     * Process iterable concurrently using the processor with a block size and number of active worker threads that are tuned at runtime. Useful when
+     * you don't know in advance how expensive the processor is going to be. IMPORTANT, you must close the iterable (it implements Closeable) after use otherwise, the process
+     * may never exit.
+     * @param input input iterable
+     * @param processor a processor that transforms I into O
+     * @param tuning bounds for the block size and the number of worker threads, see {@link AdaptiveTuning#defaults()}
+     * @param queueCapacity number of blocks that get queued.
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the input iterable concurrently and offer the output as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processConcurrentlyAdaptive(Iterable<I> input, Processor<I,O> processor, AdaptiveTuning tuning, int queueCapacity) {
+        return new ConcurrentProcessingIterable<I,O>(input, processor, tuning, queueCapacity, false, 0);
+    }
+
+    /**
+     * Process iterable concurrently using the processor while preserving the order of the input. IMPORTANT, you must close the iterable (it implements Closeable) after use otherwise, the process
+     * may never exit.
+     * @param input input iterable
+     * @param processor a processor that transforms I into O
+     * @param blockSize number of items that is processed in one go by each consumer thread
+     * @param threadPoolSize number of threads (including the producer threads). CPU count +1 is typically what you want for CPU constrained tasks.
+     * @param queueCapacity number of items that get queued. Tune this to ensure the consumer threads don't run out of work.
+     * @param reorderBufferSize maximum number of blocks that may be processed ahead of the oldest block that has not been consumed yet. Limits the memory used for reordering.
+     * @param <I> input type
+     * @param <O> output type
+     * @return a concurrent processing iterable that will process the input iterable concurrently and offer the output, in the same order as the input, as another iterable.
+     */
+    public static <I,O> ConcurrentProcessingIterable<I, O> processConcurrentlyOrdered(Iterable<I> input, Processor<I,O> processor, int blockSize, int threadPoolSize, int queueCapacity, int reorderBufferSize) {
+        return new ConcurrentProcessingIterable<I,O>(input, processor, blockSize, threadPoolSize, queueCapacity, true, reorderBufferSize);
+    }
+
+    /**
+     * Concurrent map reduce. The calling thread reads the input and hands blocks of it to the worker threads. Each worker maps and reduces the items it
+     * gets into its own running result and the results of the workers are combined pairwise in parallel at the end.
+     * The reducer should be associative and commutative since there are no guarantees on the order in which items are combined.
+     * Items that the mapper maps to null are skipped.
+     * @param input input iterable
+     * @param mapper processor that transforms I into O
+     * @param reducer reducer that reduces iterables of O into a single O value
+     * @param blockSize number of items that is processed in one go by each consumer thread
+     * @param threadPoolSize number of threads (including the calling thread, which reads the input). CPU count +1 is typically what you want for CPU constrained tasks.
+     * @param queueCapacity number of blocks that get queued. Tune this to ensure the consumer threads don't run out of work.
      * @param <I> input type
      * @param <O> output type
      * @return a value of the Output type
+     * @throws NoSuchElementException if there was nothing to reduce
      */
     public static <I,O> O mapReduce(Iterable<I> input, final Processor<I,O> mapper, final Reducer<O> reducer, int blockSize, int threadPoolSize, int queueCapacity) {
-        Processor<List<I>, O> pageProcessor = new Processor<List<I>, O> () {
-            @Override
-            public O process(List<I> input) {
-                return reduce(map(input, mapper), reducer);
-            }
-
-        };
+        return new ConcurrentMapReduce<I,O>(mapper, reducer, blockSize, threadPoolSize, queueCapacity).mapReduce(input);
+    }
 
-        O result = null;
-        try(ConcurrentProcessingIterable<List<I>, O> processor = processConcurrently(page(input, blockSize), pageProcessor, blockSize, threadPoolSize, queueCapacity)) {
-            result = reduce(processor, reducer);
-        } catch (IOException e) {
-            throw new IllegalStateException("error during map reduce", e);
-        }
-        return result;
+    /**
+     * Concurrent map reduce over an input that is divided into partitions, e.g. the ranges of a file from {@link MappedLineIterable#split(int)}.
+     * Each partition is read, mapped and reduced on its own thread, so reading the input is not limited to a single thread.
+     * The reducer should be associative and commutative. Items that the mapper maps to null are skipped.
+     * @param partitions the input, divided into partitions that can be read independently. One thread is started for each partition.
+     * @param mapper processor that transforms I into O
+     * @param reducer reducer that reduces iterables of O into a single O value
+     * @param <I> input type
+     * @param <O> output type
+     * @return a value of the Output type
+     * @throws NoSuchElementException if there was nothing to reduce
+     */
+    public static <I,O> O mapReducePartitions(List<? extends Iterable<I>> partitions, final Processor<I,O> mapper, final Reducer<O> reducer) {
+        return new ConcurrentMapReduce<I,O>(mapper, reducer).mapReducePartitions(partitions);
     }
 
     /**
@@ -286,6 +415,17 @@ public class Iterables {
         });
     }
 
+    /**
+     * Merges sorted iterables into one sorted iterable, unlike {@link #compose(Iterable)} which concatenates them.
+     * @param iterables iterables that are sorted according to the comparator
+     * @param comparator comparator
+     * @param <T> type
+     * @return a sorted iterable with the elements of all the iterables, see {@link MergingIterable}
+     */
+    public static <T> MergingIterable<T> merge(List<? extends Iterable<? extends T>> iterables, Comparator<? super T> comparator) {
+        return new MergingIterable<>(iterables, comparator);
+    }
+
     /**
      * Allows you to iterate over objects and cast them to the appropriate type on the fly.
      * @param it iterable of I
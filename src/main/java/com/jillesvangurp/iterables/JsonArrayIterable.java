@@ -0,0 +1,125 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Iterates over the elements of a json array in a Reader, e.g. a multi GB export, without parsing the whole document.
+ * Each element (an object, array, string, number or literal) is returned as a String with its json source, which you
+ * can then parse with your favourite json parser, possibly concurrently with a {@link ConcurrentProcessingIterable}.
+ *
+ * The scanner only tracks the nesting of objects and arrays and whether it is inside a string, so brackets and commas
+ * in strings and nested arrays are handled correctly. It does not validate the json. An element that is cut off by the
+ * end of the input is ignored.
+ *
+ * Note. make sure to close the reader after iterating. This class does not attempt to close the reader.
+ */
+public class JsonArrayIterable implements Iterable<String> {
+    private final Reader r;
+    private final int bufferSize;
+
+    /**
+     * @param r reader with a json array
+     */
+    public JsonArrayIterable(Reader r) {
+        this(r, BlobIterable.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param r reader with a json array
+     * @param bufferSize initial size of the buffer in chars; it grows for elements that are larger
+     */
+    public JsonArrayIterable(Reader r, int bufferSize) {
+        this.r = r;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new JsonArraySplitter(r, bufferSize);
+    }
+
+    private static class JsonArraySplitter extends StructuralSplitter {
+        private boolean inArray = false;
+        private boolean done = false;
+
+        JsonArraySplitter(Reader reader, int bufferSize) {
+            super(reader, bufferSize);
+        }
+
+        @Override
+        String readNext() {
+            if(done) {
+                return null;
+            }
+            if(!inArray) {
+                // skip whitespace and a byte order mark
+                while(ensure(1) && (isWhitespace(buffer[position]) || buffer[position] == '\uFEFF')) {
+                    position++;
+                }
+                if(!ensure(1)) {
+                    done = true;
+                    return null;
+                }
+                if(buffer[position] != '[') {
+                    throw new IllegalStateException("expected a json array but found '" + buffer[position] + "'");
+                }
+                position++;
+                inArray = true;
+            }
+            while(true) {
+                if(!ensure(1)) {
+                    done = true;
+                    return null;
+                }
+                char c = buffer[position];
+                if(c == ']') {
+                    done = true;
+                    return null;
+                } else if(c == ',' || isWhitespace(c)) {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            blobStart = position;
+            int nesting = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            while(ensure(1)) {
+                char c = buffer[position];
+                if(inString) {
+                    if(escaped) {
+                        escaped = false;
+                    } else if(c == '\\') {
+                        escaped = true;
+                    } else if(c == '"') {
+                        inString = false;
+                        if(nesting == 0) {
+                            // a string element
+                            return blob(++position);
+                        }
+                    }
+                } else if(c == '"') {
+                    inString = true;
+                } else if(c == '{' || c == '[') {
+                    nesting++;
+                } else if(c == '}' || c == ']') {
+                    if(nesting == 0) {
+                        // the end of the array after a number or literal
+                        return blob(position);
+                    }
+                    if(--nesting == 0) {
+                        return blob(++position);
+                    }
+                } else if(nesting == 0 && (c == ',' || isWhitespace(c))) {
+                    return blob(position);
+                }
+                position++;
+            }
+            blobStart = -1;
+            done = true;
+            return null;
+        }
+    }
+}
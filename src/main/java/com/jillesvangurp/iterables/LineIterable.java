@@ -2,8 +2,10 @@ package com.jillesvangurp.iterables;
 
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.Charset;
@@ -23,11 +25,55 @@ public class LineIterable implements Iterable<String>, Closeable{
     public LineIterable(Reader r) {
         bufferedReader = new BufferedReader(r);
     }
-    
+
+    /**
+     * @param r any reader. Note. this class creates its own buffered reader so there is no need to create one in advance.
+     * @param bufferSize size of the buffer of the buffered reader in chars
+     */
+    public LineIterable(Reader r, int bufferSize) {
+        bufferedReader = new BufferedReader(r, bufferSize);
+    }
+
     public static LineIterable openGzipFile(String fileName) throws IOException {
         return new LineIterable(new InputStreamReader(new GZIPInputStream(new FileInputStream(fileName)), Charset.forName("UTF-8")));
     }
 
+    /**
+     * Like {@link #openGzipFile(String)} but the file is inflated on a background thread into a few 1MB buffers, see
+     * {@link ReadAheadInputStream}. Decoding and splitting the lines happens on the iterating thread, in parallel with the inflating.
+     * @param fileName gzipped, UTF-8 encoded file
+     * @return a line iterable
+     * @throws IOException if the file cannot be opened
+     */
+    public static LineIterable openGzipFileWithReadAhead(String fileName) throws IOException {
+        return openGzipFileWithReadAhead(fileName, 1024 * 1024, 4);
+    }
+
+    /**
+     * Like {@link #openGzipFile(String)} but for files with multiple gzip members, such as concatenated gzip files or
+     * BGZF files, the members are inflated on several threads, see {@link ParallelGzipInputStream}. Ordinary single member
+     * gzip files are inflated sequentially.
+     * @param fileName gzipped, UTF-8 encoded file
+     * @param threads number of threads used for inflating
+     * @return a line iterable
+     * @throws IOException if the file cannot be opened
+     */
+    public static LineIterable openGzipFileInParallel(String fileName, int threads) throws IOException {
+        return new LineIterable(new InputStreamReader(new ParallelGzipInputStream(new File(fileName), threads), Charset.forName("UTF-8")), 64 * 1024);
+    }
+
+    /**
+     * @param fileName gzipped, UTF-8 encoded file
+     * @param bufferSize size of the inflated buffers
+     * @param buffers number of inflated buffers that may be queued ahead of the iterating thread
+     * @return a line iterable
+     * @throws IOException if the file cannot be opened
+     */
+    public static LineIterable openGzipFileWithReadAhead(String fileName, int bufferSize, int buffers) throws IOException {
+        InputStream inflated = new ReadAheadInputStream(new GZIPInputStream(new FileInputStream(fileName), 64 * 1024), bufferSize, buffers);
+        return new LineIterable(new InputStreamReader(inflated, Charset.forName("UTF-8")), 64 * 1024);
+    }
+
     @Override
     public Iterator<String> iterator() {
         return new Iterator<String>() {
@@ -0,0 +1,130 @@
+package com.jillesvangurp.iterables;
+
+import java.util.Arrays;
+
+/**
+ * Maps long keys to the numbers of the entries that were added with that key, using open addressing on primitive
+ * arrays. Entries with the same key form a linked list in insertion order. Lookups don't allocate anything.
+ */
+class LongIndex {
+    static final int NONE = -1;
+
+    private long[] keys;
+    // first and last entry per slot, NONE for empty slots
+    private int[] firsts;
+    private int[] lasts;
+    // next entry with the same key per entry
+    private int[] nexts = new int[16];
+    private int shift;
+    private int keyCount = 0;
+    private int size = 0;
+
+    LongIndex() {
+        allocate(16);
+    }
+
+    /**
+     * @return number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of distinct keys
+     */
+    int keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return number of slots, see {@link #first(int)}
+     */
+    int slots() {
+        return keys.length;
+    }
+
+    /**
+     * Adds an entry.
+     * @param key key
+     * @return number of the entry, entries are numbered from 0 in the order they are added
+     */
+    int add(long key) {
+        int entry = size++;
+        if(entry == nexts.length) {
+            nexts = Arrays.copyOf(nexts, nexts.length * 2);
+        }
+        nexts[entry] = NONE;
+        int slot = find(key);
+        if(firsts[slot] == NONE) {
+            keys[slot] = key;
+            firsts[slot] = entry;
+            lasts[slot] = entry;
+            if(++keyCount * 2 > keys.length) {
+                grow();
+            }
+        } else {
+            nexts[lasts[slot]] = entry;
+            lasts[slot] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * @param key key
+     * @return slot of the key or NONE if the key was not added
+     */
+    int slot(long key) {
+        int slot = find(key);
+        return firsts[slot] == NONE ? NONE : slot;
+    }
+
+    /**
+     * @param slot a slot
+     * @return first entry in the slot or NONE if the slot is empty
+     */
+    int first(int slot) {
+        return firsts[slot];
+    }
+
+    /**
+     * @param entry an entry
+     * @return next entry with the same key or NONE
+     */
+    int next(int entry) {
+        return nexts[entry];
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        // fibonacci hashing, the high bits are the best mixed
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        while(firsts[slot] != NONE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldFirsts = firsts;
+        int[] oldLasts = lasts;
+        allocate(oldKeys.length * 2);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldFirsts[i] != NONE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                firsts[slot] = oldFirsts[i];
+                lasts[slot] = oldLasts[i];
+            }
+        }
+    }
+
+    private void allocate(int slots) {
+        keys = new long[slots];
+        firsts = new int[slots];
+        lasts = new int[slots];
+        Arrays.fill(firsts, NONE);
+        shift = 64 - Integer.numberOfTrailingZeros(slots);
+    }
+}
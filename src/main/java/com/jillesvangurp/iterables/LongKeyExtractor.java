@@ -0,0 +1,15 @@
+package com.jillesvangurp.iterables;
+
+/**
+ * Extracts a primitive long key, e.g. for {@link SortMergeJoin}. Avoids boxing the key and comparing it with a
+ * {@link java.util.Comparator}.
+ *
+ * @param <T> type of the values
+ */
+public interface LongKeyExtractor<T> {
+    /**
+     * @param value the value
+     * @return the key of the value
+     */
+    long key(T value);
+}
@@ -0,0 +1,262 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterate over the lines in an uncompressed file without a Reader. The file is memory mapped in windows, so files
+ * larger than 2GB are fine, and the newlines are found by scanning the mapped bytes directly. Each line is returned as
+ * a {@link ByteLine} view on the mapped bytes that is only decoded when you ask for it. Compared to
+ * {@link LineIterable}, this avoids decoding every byte and allocating a String for every line, which makes a big
+ * difference if you only need some of the lines or fields.
+ *
+ * Lines are separated by '\n'; a trailing '\r' is stripped. The charset must be ASCII compatible (e.g. UTF-8).
+ *
+ * Unlike {@link LineIterable}, you can iterate more than once. Please close the iterable when done to close the file.
+ *
+ * Use {@link #split(int)} to divide the file into ranges that can be read by separate threads, e.g. with
+ * {@link Iterables#processPartitionsConcurrently(List, Processor, int, int)}.
+ */
+public class MappedLineIterable implements Iterable<ByteLine>, Closeable {
+    /**
+     * 64MB
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final int windowSize;
+    private final long start;
+    // -1 for the end of the file
+    private final long end;
+    private final boolean ownsFile;
+
+    /**
+     * @param file an uncompressed, UTF-8 encoded file
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedLineIterable(File file) throws IOException {
+        this(file, Charset.forName("UTF-8"), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file an uncompressed file
+     * @param charset an ASCII compatible charset
+     * @param windowSize number of bytes mapped at a time. Windows grow automatically for lines that are longer than this.
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedLineIterable(File file, Charset charset, int windowSize) throws IOException {
+        if(windowSize < 1) {
+            throw new IllegalArgumentException("windowSize should be at least 1");
+        }
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+        this.charset = charset;
+        this.windowSize = windowSize;
+        start = 0;
+        end = -1;
+        ownsFile = true;
+    }
+
+    private MappedLineIterable(MappedLineIterable parent, long start, long end) {
+        file = parent.file;
+        channel = parent.channel;
+        charset = parent.charset;
+        windowSize = parent.windowSize;
+        this.start = start;
+        this.end = end;
+        ownsFile = false;
+    }
+
+    /**
+     * Divides the lines in this iterable into ranges of roughly equal size in bytes. The boundaries of the ranges are
+     * moved to the start of the next line, so each line is in exactly one range. The ranges share the file of this
+     * iterable and can be iterated concurrently. Closing a range does nothing; close this iterable when done with all of them.
+     *
+     * @param partitions number of ranges
+     * @return up to partitions non empty ranges, fewer if there are not enough lines
+     * @throws IOException if the file cannot be read
+     */
+    public List<MappedLineIterable> split(int partitions) throws IOException {
+        if(partitions < 1) {
+            throw new IllegalArgumentException("partitions should be at least 1");
+        }
+        long rangeEnd = end < 0 ? channel.size() : end;
+        long size = rangeEnd - start;
+        List<MappedLineIterable> ranges = new ArrayList<>(partitions);
+        long rangeStart = start;
+        for(int i = 1; i <= partitions && rangeStart < rangeEnd; i++) {
+            long boundary = i == partitions ? rangeEnd : Math.min(rangeEnd, lineStartAtOrAfter(start + size * i / partitions));
+            if(boundary > rangeStart) {
+                ranges.add(new MappedLineIterable(this, rangeStart, boundary));
+                rangeStart = boundary;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @param start position of the first byte of a line
+     * @param end position after the last newline of the range
+     * @return a range of this iterable, like the ranges from {@link #split(int)}
+     */
+    MappedLineIterable range(long start, long end) {
+        return new MappedLineIterable(this, start, end);
+    }
+
+    /**
+     * @return the position of the first line that starts at or after the position, or the file size if there is none
+     */
+    private long lineStartAtOrAfter(long position) throws IOException {
+        if(position == 0) {
+            return 0;
+        }
+        // the line starts at position if the previous byte is a newline
+        long offset = position - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        int read;
+        while((read = channel.read(buffer, offset)) > 0) {
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+            buffer.clear();
+        }
+        return channel.size();
+    }
+
+    @Override
+    public Iterator<ByteLine> iterator() {
+        final long end;
+        try {
+            end = this.end < 0 ? channel.size() : this.end;
+        } catch (IOException e) {
+            throw new IllegalStateException("could not determine the file size", e);
+        }
+        return new Iterator<ByteLine>() {
+            MappedByteBuffer window = null;
+            long windowStart = start;
+            int position = 0;
+            ByteLine next = null;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null && windowStart + position < end) {
+                    try {
+                        next = readNextLine();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("could not read line", e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public ByteLine next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ByteLine result = next;
+                next = null;
+                return result;
+            }
+
+            private ByteLine readNextLine() throws IOException {
+                if(window == null) {
+                    map(start, windowSize);
+                }
+                int lineStart = position;
+                // number of bytes after lineStart that are known not to contain a newline
+                int scanned = 0;
+                while(true) {
+                    int newline = indexOfNewline(lineStart + scanned);
+                    if(newline >= 0) {
+                        position = newline + 1;
+                        return line(lineStart, newline);
+                    }
+                    int limit = window.limit();
+                    if(windowStart + limit >= channel.size()) {
+                        // last line without a newline
+                        position = limit;
+                        return line(lineStart, limit);
+                    }
+                    // the line continues beyond the window; map a new window starting at the line that is large enough for a longer line
+                    scanned = limit - lineStart;
+                    map(windowStart + lineStart, (int) Math.min(Integer.MAX_VALUE, Math.max(windowSize, 2l * scanned)));
+                    lineStart = 0;
+                    if(scanned >= window.limit()) {
+                        throw new IllegalStateException("line at offset " + windowStart + " is too long to map");
+                    }
+                }
+            }
+
+            private ByteLine line(int start, int newline) {
+                int lineEnd = newline;
+                if(lineEnd > start && window.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                return new ByteLine(window, start, lineEnd - start, charset);
+            }
+
+            private void map(long start, int size) throws IOException {
+                long mapped = Math.min(size, channel.size() - start);
+                window = channel.map(MapMode.READ_ONLY, start, mapped);
+                window.order(ByteOrder.BIG_ENDIAN);
+                windowStart = start;
+                position = 0;
+            }
+
+            /**
+             * Finds the next newline eight bytes at a time.
+             */
+            private int indexOfNewline(int from) {
+                int limit = window.limit();
+                int i = from;
+                for(; i + 8 <= limit; i += 8) {
+                    long word = window.getLong(i) ^ NEWLINES;
+                    // sets the high bit of every byte that is zero, i.e. that was a newline, without false positives
+                    long zeros = ~(((word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | word | LOW_SEVEN_BITS);
+                    if(zeros != 0) {
+                        return i + (Long.numberOfLeadingZeros(zeros) >>> 3);
+                    }
+                }
+                for(; i < limit; i++) {
+                    if(window.get(i) == '\n') {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("cannot remove lines");
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(ownsFile) {
+            file.close();
+        }
+    }
+}
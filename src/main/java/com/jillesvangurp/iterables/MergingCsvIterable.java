@@ -3,9 +3,11 @@ package com.jillesvangurp.iterables;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * Merge two sorted csv files on primary and foreign key fields and iterate over the groups of records.
+ * Merge two sorted csv files on primary and foreign key fields and iterate over the groups of records. The keys must be
+ * integers; they are parsed once per record. For other keys or join types, use {@link SortMergeJoin} directly.
  */
 public class MergingCsvIterable implements Iterable<List<List<String>>>{
 
@@ -27,51 +29,59 @@ public class MergingCsvIterable implements Iterable<List<List<String>>>{
         this.foreignKeyIndex = foreignKeyIndex;
     }
 
+    /**
+     * @return for every primary record, a list with the primary record followed by the secondary records with the same key
+     */
     @Override
     public Iterator<List<List<String>>> iterator() {
-        final Iterator<List<String>> primaryIterator = primary.iterator();
-        final PeekableIterator<List<String>> secondaryIterator = new PeekableIterator<>(secondary.iterator());
+        final SortMergeJoin.Cursor<CsvRecord, CsvRecord> cursor = SortMergeJoin.joinOnLongKeys(primary.records(), key(primaryKeyIndex),
+                secondary.records(), key(foreignKeyIndex), SortMergeJoin.JoinType.LEFT).cursor();
 
         return new Iterator<List<List<String>>>() {
+            List<List<String>> secondaryRecords;
+            boolean inGroup = false;
 
             @Override
             public boolean hasNext() {
-                return primaryIterator.hasNext();
+                while(!inGroup || !cursor.left().hasNext()) {
+                    if(!cursor.next()) {
+                        return false;
+                    }
+                    inGroup = true;
+                    // the records of both sides are reused, so copy the secondary records before reading the primary ones
+                    secondaryRecords = new ArrayList<>();
+                    Iterator<CsvRecord> right = cursor.right();
+                    while(right.hasNext()) {
+                        secondaryRecords.add(right.next().toList());
+                    }
+                }
+                return true;
             }
 
             @Override
             public List<List<String>> next() {
-                List<List<String>> records = new ArrayList<>();
-                List<String> primaryRecord = primaryIterator.next();
-                String pk = primaryRecord.get(primaryKeyIndex);
-                records.add(primaryRecord);
-                List<String> secondaryRecord;
-                while(secondaryIterator.hasNext()) {
-                    secondaryRecord = secondaryIterator.peek();
-                    String fk = secondaryRecord.get(foreignKeyIndex);
-
-//                    int compareTo = fk.compareTo(pk);
-                    // assume the ids are integers
-                    // TODO make comparator configurable
-                    int compareTo = Integer.valueOf(fk) - Integer.valueOf(pk);
-                    if(compareTo == 0) {
-                        records.add(secondaryRecord);
-                    } else if(compareTo > 0) {
-                        // don't move secondary iterator forward to ensure we see the secondary record again for the next primary record.
-                        break;
-                    }
-                    // we've peeked, now move it forward
-                    secondaryIterator.next();
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
                 }
-
+                List<List<String>> records = new ArrayList<>(secondaryRecords.size() + 1);
+                records.add(cursor.left().next().toList());
+                records.addAll(secondaryRecords);
                 return records;
             }
 
             @Override
             public void remove() {
-                primaryIterator.remove();
+                throw new UnsupportedOperationException("cannot remove records");
             }
         };
     }
 
+    private static LongKeyExtractor<CsvRecord> key(final int index) {
+        return new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(index);
+            }
+        };
+    }
 }
@@ -0,0 +1,340 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges any number of sorted iterables into one sorted iterable. The inputs are merged with a loser tree, so each
+ * element costs about log2(k) comparisons for k inputs. Elements with equal keys are returned in the order of the
+ * inputs. An IllegalStateException is thrown if an input turns out not to be sorted.
+ *
+ * Use {@link #onLongKeys(List, LongKeyExtractor)} if the elements have a long key: the key of each element is extracted
+ * once and comparisons don't use a {@link Comparator}. Optionally, only the first element of each key is returned
+ * ({@link #withoutDuplicates()}) or elements are grouped by key ({@link #groups()}).
+ *
+ * @param <T> type of the elements
+ */
+public class MergingIterable<T> implements Iterable<T> {
+    private final List<? extends Iterable<? extends T>> inputs;
+    private final Comparator<? super T> comparator;
+    private final LongKeyExtractor<? super T> keyExtractor;
+    private boolean withoutDuplicates = false;
+
+    /**
+     * @param inputs iterables that are sorted according to the comparator
+     * @param comparator comparator
+     */
+    public MergingIterable(List<? extends Iterable<? extends T>> inputs, Comparator<? super T> comparator) {
+        this(inputs, comparator, null);
+    }
+
+    private MergingIterable(List<? extends Iterable<? extends T>> inputs, Comparator<? super T> comparator, LongKeyExtractor<? super T> keyExtractor) {
+        this.inputs = inputs;
+        this.comparator = comparator;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * @param inputs iterables that are sorted on the key
+     * @param keyExtractor extracts the key
+     * @param <T> type of the elements
+     * @return iterable that merges the inputs
+     */
+    public static <T> MergingIterable<T> onLongKeys(List<? extends Iterable<? extends T>> inputs, LongKeyExtractor<? super T> keyExtractor) {
+        return new MergingIterable<T>(inputs, null, keyExtractor);
+    }
+
+    /**
+     * Only return the first element (in the order of the inputs) for each key. Without long keys, the previous element
+     * is compared to the next one so the inputs should not reuse their elements.
+     * @return this iterable
+     */
+    public MergingIterable<T> withoutDuplicates() {
+        withoutDuplicates = true;
+        return this;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final Merger<T> merger = merger();
+        return new Iterator<T>() {
+            boolean advanced = false;
+            boolean hasNext = false;
+
+            @Override
+            public boolean hasNext() {
+                if(!advanced) {
+                    hasNext = merger.advance();
+                    while(hasNext && withoutDuplicates && merger.sameKeyAsPrevious()) {
+                        hasNext = merger.advance();
+                    }
+                    advanced = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                advanced = false;
+                return merger.current();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("cannot remove merged elements");
+            }
+        };
+    }
+
+    /**
+     * Groups consecutive elements with the same key. The groups are collected in lists, so the inputs should not reuse
+     * their elements.
+     * @return iterable of groups of elements with the same key
+     */
+    public Iterable<List<T>> groups() {
+        return new Iterable<List<T>>() {
+            @Override
+            public Iterator<List<T>> iterator() {
+                final Merger<T> merger = merger();
+                return new Iterator<List<T>>() {
+                    // true if the merger is positioned at the first element of the next group
+                    boolean pending = merger.advance();
+
+                    @Override
+                    public boolean hasNext() {
+                        return pending;
+                    }
+
+                    @Override
+                    public List<T> next() {
+                        if(!pending) {
+                            throw new NoSuchElementException();
+                        }
+                        List<T> group = new ArrayList<>();
+                        group.add(merger.current());
+                        while((pending = merger.advance()) && merger.sameKeyAsPrevious()) {
+                            group.add(merger.current());
+                        }
+                        return group;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("cannot remove merged elements");
+                    }
+                };
+            }
+        };
+    }
+
+    private Merger<T> merger() {
+        List<Iterator<? extends T>> iterators = new ArrayList<>(inputs.size());
+        for(Iterable<? extends T> input: inputs) {
+            iterators.add(input.iterator());
+        }
+        if(keyExtractor != null) {
+            return new LongKeyMerger<T>(iterators, keyExtractor);
+        } else {
+            return new ComparatorMerger<T>(iterators, comparator);
+        }
+    }
+
+    /**
+     * Loser tree over the heads of the inputs. tree[0] is the input with the smallest head, the other nodes contain the
+     * input that lost the match at that node.
+     */
+    private abstract static class Merger<T> {
+        private final List<Iterator<? extends T>> iterators;
+        final int size;
+        final Object[] heads;
+        final boolean[] exhausted;
+        private final int[] tree;
+        // input of the current element, -1 before the first advance
+        private int winner = -1;
+        private boolean hasPrevious = false;
+
+        Merger(List<Iterator<? extends T>> iterators) {
+            this.iterators = iterators;
+            size = iterators.size();
+            heads = new Object[size];
+            exhausted = new boolean[size];
+            tree = new int[Math.max(1, size)];
+        }
+
+        /**
+         * Moves to the next element in the merged order.
+         * @return false if all inputs are exhausted
+         */
+        boolean advance() {
+            if(size == 0) {
+                return false;
+            }
+            if(winner < 0) {
+                for(int i = 0; i < size; i++) {
+                    read(i);
+                }
+                // the virtual input size is smaller than everything so real inputs are pushed down as losers
+                for(int i = 0; i < size; i++) {
+                    tree[i] = size;
+                }
+                for(int i = size - 1; i >= 0; i--) {
+                    replay(i);
+                }
+            } else {
+                rememberKey(winner);
+                hasPrevious = true;
+                read(winner);
+                replay(winner);
+            }
+            winner = tree[0];
+            return !exhausted[winner];
+        }
+
+        @SuppressWarnings("unchecked")
+        T current() {
+            return (T) heads[winner];
+        }
+
+        /**
+         * @return true if the key of the current element is the same as that of the previous element
+         */
+        boolean sameKeyAsPrevious() {
+            return hasPrevious && equalsRememberedKey(winner);
+        }
+
+        private void read(int input) {
+            Iterator<? extends T> it = iterators.get(input);
+            if(it.hasNext()) {
+                Object previous = heads[input];
+                heads[input] = it.next();
+                readKey(input, previous);
+            } else {
+                heads[input] = null;
+                exhausted[input] = true;
+            }
+        }
+
+        /**
+         * Plays the matches from the leaf of the input to the root.
+         */
+        private void replay(int input) {
+            int winner = input;
+            for(int node = (input + size) >> 1; node > 0; node >>= 1) {
+                if(less(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        private boolean less(int a, int b) {
+            if(a == size || b == size) {
+                // the virtual input used while building the tree
+                return a == size;
+            }
+            if(exhausted[a] || exhausted[b]) {
+                return !exhausted[a] || (exhausted[b] && a < b);
+            }
+            int compared = compareHeads(a, b);
+            return compared < 0 || (compared == 0 && a < b);
+        }
+
+        /**
+         * Called after a new head was read.
+         * @param previous the previous head of the input or null if this is the first
+         */
+        abstract void readKey(int input, Object previous);
+
+        IllegalStateException notSorted(int input) {
+            return new IllegalStateException("input " + input + " is not sorted");
+        }
+
+        abstract int compareHeads(int a, int b);
+
+        abstract void rememberKey(int input);
+
+        abstract boolean equalsRememberedKey(int input);
+    }
+
+    private static class LongKeyMerger<T> extends Merger<T> {
+        private final LongKeyExtractor<? super T> keyExtractor;
+        private final long[] keys;
+        private long rememberedKey;
+
+        LongKeyMerger(List<Iterator<? extends T>> iterators, LongKeyExtractor<? super T> keyExtractor) {
+            super(iterators);
+            this.keyExtractor = keyExtractor;
+            keys = new long[size];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void readKey(int input, Object previous) {
+            long key = keyExtractor.key((T) heads[input]);
+            if(previous != null && key < keys[input]) {
+                throw notSorted(input);
+            }
+            keys[input] = key;
+        }
+
+        @Override
+        int compareHeads(int a, int b) {
+            return Long.compare(keys[a], keys[b]);
+        }
+
+        @Override
+        void rememberKey(int input) {
+            rememberedKey = keys[input];
+        }
+
+        @Override
+        boolean equalsRememberedKey(int input) {
+            return keys[input] == rememberedKey;
+        }
+    }
+
+    private static class ComparatorMerger<T> extends Merger<T> {
+        private final Comparator<? super T> comparator;
+        private T remembered;
+
+        ComparatorMerger(List<Iterator<? extends T>> iterators, Comparator<? super T> comparator) {
+            super(iterators);
+            this.comparator = comparator;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void readKey(int input, Object previous) {
+            // a reused element is compared with itself, which is fine
+            if(previous != null && comparator.compare((T) previous, (T) heads[input]) > 0) {
+                throw notSorted(input);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        int compareHeads(int a, int b) {
+            return comparator.compare((T) heads[a], (T) heads[b]);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void rememberKey(int input) {
+            remembered = (T) heads[input];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        boolean equalsRememberedKey(int input) {
+            return comparator.compare((T) heads[input], remembered) == 0;
+        }
+    }
+}
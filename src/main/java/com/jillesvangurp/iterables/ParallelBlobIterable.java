@@ -0,0 +1,221 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extracts blobs from a large file on multiple threads, like {@link BlobIterable} does for a Reader. The file is
+ * divided into chunks of a few MB that are memory mapped and searched concurrently. A blob belongs to the chunk in
+ * which its open tag starts and may continue into the next chunks. This assumes the open tags do not occur inside a
+ * blob, which is true for e.g. the nodes, ways and relations in an openstreetmap file or the pages in a wikipedia
+ * dump.
+ *
+ * Use {@link #process(Processor)} to also parse the blobs on the threads that extract them. The blobs are returned in
+ * the order of the file or, if the order does not matter, in the order in which the chunks are finished. If a chunk
+ * cannot be read or a blob cannot be processed, the iteration stops and the exception is rethrown from the iterator.
+ * Please close the iterable when done to stop the threads and close the file.
+ */
+public class ParallelBlobIterable implements Iterable<String>, Closeable {
+    /**
+     * 4MB
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_MAPPED_SIZE = 64 * 1024;
+    private static final int MIN_READ_SIZE = 8 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final Horspool openTags;
+    private final Horspool[] closeTags;
+    private final int threads;
+    private final int chunkSize;
+    private final boolean ordered;
+    private final Set<PipelineGroup> running = Collections.newSetFromMap(new ConcurrentHashMap<PipelineGroup, Boolean>());
+
+    /**
+     * @param file a UTF-8 encoded file
+     * @param openTag tag that starts a blob
+     * @param closeTag tag that ends a blob
+     * @param threads number of threads used for extracting the blobs
+     * @param ordered if true, blobs are returned in the order of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelBlobIterable(File file, String openTag, String closeTag, int threads, boolean ordered) throws IOException {
+        this(file, Charset.forName("UTF-8"), new String[] {openTag}, new String[] {closeTag}, threads, DEFAULT_CHUNK_SIZE, ordered);
+    }
+
+    /**
+     * @param file a file
+     * @param charset an ASCII compatible charset
+     * @param openTags tags that start a blob; if several match at the same position, the first one wins
+     * @param closeTags the tag that ends a blob for each of the open tags
+     * @param threads number of threads used for extracting the blobs
+     * @param chunkSize size of the chunks in bytes
+     * @param ordered if true, blobs are returned in the order of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelBlobIterable(File file, Charset charset, String[] openTags, String[] closeTags, int threads, int chunkSize, boolean ordered) throws IOException {
+        if(openTags.length != closeTags.length) {
+            throw new IllegalArgumentException("there should be a close tag for every open tag");
+        }
+        if(threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize should be at least 1");
+        }
+        this.charset = charset;
+        this.openTags = Horspool.forBytes(charset, openTags);
+        this.closeTags = new Horspool[closeTags.length];
+        for(int i = 0; i < closeTags.length; i++) {
+            this.closeTags[i] = Horspool.forBytes(charset, closeTags[i]);
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.ordered = ordered;
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return process(new Processor<String, String>() {
+            @Override
+            public String process(String blob) {
+                return blob;
+            }
+        }).iterator();
+    }
+
+    /**
+     * @param processor processes the blobs on the threads that extract them, so it should be thread safe
+     * @param <O> output type
+     * @return iterable of the processed blobs
+     */
+    public <O> Iterable<O> process(final Processor<String, O> processor) {
+        return new Iterable<O>() {
+            @Override
+            public Iterator<O> iterator() {
+                final long size;
+                try {
+                    size = channel.size();
+                } catch (IOException e) {
+                    throw new IllegalStateException("cannot read file size", e);
+                }
+                List<Long> chunks = new ArrayList<>();
+                for(long start = 0; start < size; start += chunkSize) {
+                    chunks.add(start);
+                }
+                final PipelineGroup group = new PipelineGroup(running);
+                Processor<Long, Iterable<O>> extractor = new Processor<Long, Iterable<O>>() {
+                    @Override
+                    public Iterable<O> process(Long start) {
+                        try {
+                            return extract(start, size, processor);
+                        } catch (IOException | RuntimeException e) {
+                            // the processor would log and drop the whole chunk
+                            group.fail(new IllegalStateException("cannot extract chunk at " + start, e));
+                            return null;
+                        }
+                    }
+                };
+                ConcurrentProcessingIterable<Long, Iterable<O>> extracted = group.add(new ConcurrentProcessingIterable<>(chunks, extractor, 1, threads + 1, threads * 2, ordered, threads * 2));
+                return group.iterator(Iterables.compose(extracted).iterator());
+            }
+        };
+    }
+
+    /**
+     * Extracts the blobs whose open tag starts in the chunk.
+     */
+    private <O> List<O> extract(long chunkStart, long size, Processor<String, O> processor) throws IOException {
+        int chunkLimit = (int) Math.min(chunkSize, size - chunkStart);
+        // enough for every open tag that starts in the chunk; each byte of the file is read once
+        byte[] bytes = read(new byte[0], chunkStart, (int) Math.min(size - chunkStart, chunkLimit + openTags.maxLength() - 1));
+        boolean endOfFile = chunkStart + bytes.length == size;
+        List<O> results = new ArrayList<>();
+        int position = 0;
+        while(true) {
+            int start = openTags.search(bytes, position, bytes.length, true);
+            if(start < 0 || start >= chunkLimit) {
+                return results;
+            }
+            int tag = openTags.patternAt(bytes, start, bytes.length);
+            Horspool closeTag = closeTags[tag];
+            int end = closeTag.search(bytes, start + openTags.length(tag), bytes.length, endOfFile);
+            if(end < 0) {
+                // blobs without a close tag are ignored
+                if(!endOfFile) {
+                    // the last blob continues after the chunk
+                    String blob = readBlob(Arrays.copyOfRange(bytes, start, bytes.length), chunkStart + start, openTags.length(tag), closeTag, size);
+                    if(blob != null) {
+                        results.add(processor.process(blob));
+                    }
+                }
+                return results;
+            }
+            position = end + closeTag.length(0);
+            results.add(processor.process(new String(bytes, start, position - start, charset)));
+        }
+    }
+
+    /**
+     * Reads the rest of a blob that continues after its chunk in increasingly large parts.
+     * @param bytes the start of the blob
+     * @return the blob or null if there is no close tag
+     */
+    private String readBlob(byte[] bytes, long blobStart, int openTagLength, Horspool closeTag, long size) throws IOException {
+        int position = openTagLength;
+        while(true) {
+            position = Math.max(position, bytes.length - closeTag.maxLength() + 1);
+            bytes = read(bytes, blobStart, (int) Math.min(size - blobStart, Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_READ_SIZE, 2L * bytes.length))));
+            boolean endOfFile = blobStart + bytes.length == size;
+            int end = closeTag.search(bytes, position, bytes.length, endOfFile);
+            if(end >= 0) {
+                return new String(bytes, 0, end + closeTag.length(0), charset);
+            }
+            if(endOfFile) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return bytes extended with the mapped bytes of the file up to chunkStart + length
+     */
+    private byte[] read(byte[] bytes, long chunkStart, int length) throws IOException {
+        int read = bytes.length;
+        byte[] result = Arrays.copyOf(bytes, length);
+        if(length - read >= MIN_MAPPED_SIZE) {
+            channel.map(MapMode.READ_ONLY, chunkStart + read, length - read).get(result, read, length - read);
+        } else {
+            // small reads are not worth a mapping
+            ByteBuffer buffer = ByteBuffer.wrap(result, read, length - read);
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, chunkStart + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of file");
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(PipelineGroup group: running) {
+            group.close();
+        }
+        file.close();
+    }
+}
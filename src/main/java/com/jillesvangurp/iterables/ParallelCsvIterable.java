@@ -0,0 +1,276 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses a large csv file on multiple threads. The file is divided into chunks of a few MB that are parsed
+ * concurrently, in the same way as {@link CSVLineIterable}.
+ *
+ * A quoted field may contain line breaks, so the start of a chunk is not necessarily the start of a record. Before a
+ * chunk is parsed, it is scanned (also concurrently) for quotes and newlines. A newline ends a record if the number of
+ * quotes before it in the file is even, which follows from the quote parity of the preceding chunks. This assumes quotes
+ * only occur in quoted fields, as RFC 4180 requires. The scanning runs a few chunks ahead of the parsing, so the second
+ * read of each chunk usually comes from the page cache.
+ *
+ * The records are returned in the order of the file or, if the order does not matter, in the order in which the chunks
+ * are finished. If a chunk cannot be read or parsed, e.g. because a filter throws, the iteration stops and the
+ * exception is rethrown from the iterator. Please close the iterable when done to stop the threads and close the file.
+ */
+public class ParallelCsvIterable implements Iterable<List<String>>, Closeable {
+    /**
+     * 4MB
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedLineIterable lines;
+    private final CSVLineIterable options;
+    private final byte quote;
+    private final int threads;
+    private final int chunkSize;
+    private final boolean ordered;
+    private final Set<PipelineGroup> running = Collections.newSetFromMap(new ConcurrentHashMap<PipelineGroup, Boolean>());
+
+    /**
+     * @param file a UTF-8 encoded csv file
+     * @param delimiter field delimiter
+     * @param threads number of threads used for parsing
+     * @param ordered if true, records are returned in the order of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelCsvIterable(File file, char delimiter, int threads, boolean ordered) throws IOException {
+        this(file, Charset.forName("UTF-8"), delimiter, '"', threads, DEFAULT_CHUNK_SIZE, ordered);
+    }
+
+    /**
+     * @param file a csv file
+     * @param charset an ASCII compatible charset
+     * @param delimiter field delimiter
+     * @param quote quote character, must be ASCII
+     * @param threads number of threads used for parsing
+     * @param chunkSize size of the chunks in bytes
+     * @param ordered if true, records are returned in the order of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelCsvIterable(File file, Charset charset, char delimiter, char quote, int threads, int chunkSize, boolean ordered) throws IOException {
+        if(quote > 127) {
+            throw new IllegalArgumentException("quote should be an ASCII character");
+        }
+        if(threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize should be at least 1");
+        }
+        this.quote = (byte) quote;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.ordered = ordered;
+        options = new CSVLineIterable(Collections.<String>emptyList(), delimiter, quote);
+        // ranges are a bit larger than a chunk
+        lines = new MappedLineIterable(file, charset, (int) Math.min(Integer.MAX_VALUE, 2L * Math.max(chunkSize, 64 * 1024)));
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+    }
+
+    /**
+     * @see CSVLineIterable#withColumns(int...)
+     * @param columns indices of the columns in the csv
+     * @return this iterable
+     */
+    public ParallelCsvIterable withColumns(int... columns) {
+        options.withColumns(columns);
+        return this;
+    }
+
+    /**
+     * @see CSVLineIterable#withFilter(int, Filter)
+     * @param column index of the column in the csv
+     * @param filter filter for the field; called concurrently so it should be thread safe
+     * @return this iterable
+     */
+    public ParallelCsvIterable withFilter(int column, Filter<CharSequence> filter) {
+        options.withFilter(column, filter);
+        return this;
+    }
+
+    @Override
+    public Iterator<List<String>> iterator() {
+        final long size;
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read file size", e);
+        }
+        List<Long> chunks = new ArrayList<>();
+        for(long start = 0; start < size; start += chunkSize) {
+            chunks.add(start);
+        }
+        final PipelineGroup group = new PipelineGroup(running);
+        Processor<Long, ChunkScan> scanner = new Processor<Long, ChunkScan>() {
+            @Override
+            public ChunkScan process(Long start) {
+                try {
+                    return scan(start, Math.min(size, start + chunkSize));
+                } catch (IOException | RuntimeException e) {
+                    // a missing scan would throw off the quote parity of every chunk after it
+                    group.fail(new IllegalStateException("cannot read chunk at " + start, e));
+                    return null;
+                }
+            }
+        };
+        Processor<long[], Iterable<List<String>>> parser = new Processor<long[], Iterable<List<String>>>() {
+            @Override
+            public Iterable<List<String>> process(long[] range) {
+                try {
+                    return parse(range);
+                } catch (RuntimeException e) {
+                    group.fail(new IllegalStateException("cannot parse range " + range[0] + "-" + range[1], e));
+                    return null;
+                }
+            }
+
+            private Iterable<List<String>> parse(long[] range) {
+                Iterable<String> rangeLines = Iterables.map(lines.range(range[0], range[1]), new Processor<ByteLine, String>() {
+                    @Override
+                    public String process(ByteLine line) {
+                        return line.toString();
+                    }
+                });
+                List<List<String>> records = new ArrayList<>();
+                for(List<String> record: options.withLines(rangeLines)) {
+                    records.add(record);
+                }
+                return records;
+            }
+        };
+        // scan results are needed in order to find the record boundaries
+        ConcurrentProcessingIterable<Long, ChunkScan> scans = group.add(new ConcurrentProcessingIterable<>(chunks, scanner, 1, threads + 1, threads * 2, true, threads * 2));
+        Iterable<long[]> ranges = recordRanges(scans, size, group);
+        ConcurrentProcessingIterable<long[], Iterable<List<String>>> parsed = group.add(new ConcurrentProcessingIterable<>(ranges, parser, 1, threads + 1, threads * 2, ordered, threads * 2));
+        return group.iterator(Iterables.compose(parsed).iterator());
+    }
+
+    /**
+     * Turns the scans of the chunks, in order, into ranges that start and end at record boundaries.
+     */
+    private Iterable<long[]> recordRanges(final Iterable<ChunkScan> scans, final long size, final PipelineGroup group) {
+        return new Iterable<long[]>() {
+            @Override
+            public Iterator<long[]> iterator() {
+                final Iterator<ChunkScan> it = scans.iterator();
+                return new Iterator<long[]>() {
+                    long rangeStart = 0;
+                    // true if the current position is inside a quoted field
+                    boolean quoted = false;
+                    long[] next;
+
+                    @Override
+                    public boolean hasNext() {
+                        while(next == null && rangeStart < size && !group.failed()) {
+                            if(it.hasNext()) {
+                                ChunkScan scan = it.next();
+                                if(scan.start > 0) {
+                                    long newline = quoted ? scan.firstNewlineOdd : scan.firstNewlineEven;
+                                    // otherwise the chunk is part of a record that started in an earlier chunk
+                                    if(newline >= 0 && newline + 1 > rangeStart) {
+                                        next = new long[] {rangeStart, newline + 1};
+                                        rangeStart = newline + 1;
+                                    }
+                                }
+                                quoted ^= scan.oddQuotes;
+                            } else if(!group.failed()) {
+                                next = new long[] {rangeStart, size};
+                                rangeStart = size;
+                            }
+                        }
+                        return next != null;
+                    }
+
+                    @Override
+                    public long[] next() {
+                        if(!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        long[] result = next;
+                        next = null;
+                        return result;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("cannot remove ranges");
+                    }
+                };
+            }
+        };
+    }
+
+    private ChunkScan scan(long start, long end) throws IOException {
+        ChunkScan scan = new ChunkScan(start);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, end - start));
+        byte[] bytes = buffer.array();
+        boolean odd = false;
+        long position = start;
+        while(position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if(read <= 0) {
+                break;
+            }
+            for(int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if(b == quote) {
+                    odd = !odd;
+                } else if(b == '\n') {
+                    if(odd) {
+                        if(scan.firstNewlineOdd < 0) {
+                            scan.firstNewlineOdd = position + i;
+                        }
+                    } else if(scan.firstNewlineEven < 0) {
+                        scan.firstNewlineEven = position + i;
+                    }
+                }
+            }
+            position += read;
+        }
+        scan.oddQuotes = odd;
+        return scan;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(PipelineGroup group: running) {
+            group.close();
+        }
+        lines.close();
+        file.close();
+    }
+
+    /**
+     * Quotes and newlines in a chunk.
+     */
+    private static class ChunkScan {
+        final long start;
+        boolean oddQuotes;
+        // first newline that is preceded by an even or odd number of quotes in the chunk
+        long firstNewlineEven = -1;
+        long firstNewlineOdd = -1;
+
+        ChunkScan(long start) {
+            this.start = start;
+        }
+    }
+}
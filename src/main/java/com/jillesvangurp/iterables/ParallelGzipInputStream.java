@@ -0,0 +1,358 @@
+package com.jillesvangurp.iterables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Inflates gzip files that consist of multiple members, such as concatenated gzip files or BGZF (block gzip) files,
+ * using several threads. The members are inflated concurrently and reassembled in order, so reading this stream
+ * produces the same bytes as a {@link GZIPInputStream} would.
+ *
+ * For BGZF files, the member boundaries are read from the BSIZE field in the headers. For other files, and for
+ * anything after the BGZF blocks, the file is scanned for bytes that look like a gzip header. Each of these candidates
+ * is inflated speculatively and only accepted if its trailer checksum matches and it starts exactly where the previous
+ * member ended. The scan runs while reading, a bounded number of members ahead of the reader, so it reads bytes that
+ * are about to be inflated anyway. Members that inflate to more than {@link #MAX_MEMBER_SIZE} bytes are not buffered
+ * but inflated while reading instead.
+ *
+ * If there is no second member in the first {@link #MAX_MEMBER_SIZE} bytes, the file is read with a plain
+ * {@link GZIPInputStream}.
+ */
+public class ParallelGzipInputStream extends InputStream {
+    /**
+     * Members that inflate to more than this are inflated on the reading thread, which limits the memory used for
+     * buffering inflated members. 8MB.
+     */
+    public static final int MAX_MEMBER_SIZE = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final InputStream sequential;
+    private final ConcurrentProcessingIterable<Long, Member> inflatedMembers;
+    private final Iterator<Member> members;
+    private long expectedStart = 0;
+    private byte[] current = null;
+    private int currentPosition = 0;
+    private GzipMemberInflater largeMember = null;
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * @param gzipFile a gzip file
+     * @param threads number of threads used to inflate members
+     * @throws IOException if the file cannot be read
+     */
+    public ParallelGzipInputStream(File gzipFile, int threads) throws IOException {
+        file = new RandomAccessFile(gzipFile, "r");
+        channel = file.getChannel();
+        try {
+            boolean bgzf = isBgzf();
+            final CandidateScanner candidates = new CandidateScanner(bgzf);
+            if(!candidates.scan(2, MAX_MEMBER_SIZE)) {
+                sequential = new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+                inflatedMembers = null;
+                members = null;
+            } else {
+                sequential = null;
+                Processor<Long, Member> inflate = new Processor<Long, Member>() {
+                    @Override
+                    public Member process(Long start) {
+                        return inflateMember(start);
+                    }
+                };
+                // BGZF members are at most 64KB, so hand them to the threads in batches
+                Iterable<Long> input = new Iterable<Long>() {
+                    @Override
+                    public Iterator<Long> iterator() {
+                        return candidates;
+                    }
+                };
+                inflatedMembers = new ConcurrentProcessingIterable<>(input, inflate, bgzf ? 16 : 1, threads + 1, threads * 2, true, threads * 2);
+                members = inflatedMembers.iterator();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private boolean isBgzf() throws IOException {
+        byte[] header = new byte[BUFFER_SIZE];
+        int read = channel.read(ByteBuffer.wrap(header), 0);
+        return read > 0 && GzipMemberInflater.bgzfBlockSize(header, 0, read) > 0;
+    }
+
+    /**
+     * Runs on the worker threads.
+     */
+    private Member inflateMember(long start) {
+        GzipMemberInflater inflater = new GzipMemberInflater(channel, start, BUFFER_SIZE);
+        try {
+            if(!inflater.readHeader()) {
+                return new Member(start, -1, null, false);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while((read = inflater.inflate(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, read);
+                if(out.size() > MAX_MEMBER_SIZE) {
+                    // valid as far as we know; inflate it again while reading
+                    return new Member(start, -1, null, true);
+                }
+            }
+            return new Member(start, inflater.end(), out.toByteArray(), true);
+        } catch (IOException e) {
+            // not a member, or a corrupt one
+            return new Member(start, -1, null, false, e);
+        } catch (RuntimeException e) {
+            // returned rather than thrown, the iterable would drop the member and the reader would stop there
+            return new Member(start, -1, null, false, e);
+        } finally {
+            inflater.close();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read;
+        while((read = read(singleByte, 0, 1)) == 0) {
+        }
+        return read < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(sequential != null) {
+            return sequential.read(b, off, len);
+        }
+        if(len == 0) {
+            return 0;
+        }
+        while(true) {
+            if(current != null && currentPosition < current.length) {
+                int read = Math.min(len, current.length - currentPosition);
+                System.arraycopy(current, currentPosition, b, off, read);
+                currentPosition += read;
+                return read;
+            }
+            if(largeMember != null) {
+                int read = largeMember.inflate(b, off, len);
+                if(read >= 0) {
+                    return read;
+                }
+                expectedStart = largeMember.end();
+                largeMember.close();
+                largeMember = null;
+            }
+            if(!nextMember()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return false if there are no more members
+     */
+    private boolean nextMember() throws IOException {
+        while(hasNextMember()) {
+            Member member = members.next();
+            if(member.start < expectedStart) {
+                // a false candidate inside a member we already read
+                continue;
+            }
+            if(member.start > expectedStart) {
+                // like GZIPInputStream, ignore trailing garbage
+                checkGarbage();
+                return false;
+            }
+            if(!member.valid) {
+                throw new IOException("corrupt gzip member at offset " + member.start, member.failure);
+            }
+            if(member.bytes == null) {
+                largeMember = new GzipMemberInflater(channel, member.start, BUFFER_SIZE);
+                largeMember.readHeader();
+            } else {
+                current = member.bytes;
+                currentPosition = 0;
+                expectedStart = member.end;
+            }
+            return true;
+        }
+        checkGarbage();
+        return false;
+    }
+
+    private boolean hasNextMember() throws IOException {
+        try {
+            return members.hasNext();
+        } catch (IllegalStateException e) {
+            // the scan for members failed
+            throw new IOException("cannot read gzip members", e);
+        }
+    }
+
+    /**
+     * Fails if there is a gzip header where the next member should start, which means the member got lost.
+     */
+    private void checkGarbage() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while(header.hasRemaining() && channel.read(header, expectedStart + header.position()) > 0) {
+        }
+        byte[] bytes = header.array();
+        if(!header.hasRemaining() && GzipMemberInflater.isCandidate(bytes[0], bytes[1], bytes[2], bytes[3])) {
+            throw new IOException("gzip member at offset " + expectedStart + " was not inflated");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(inflatedMembers != null) {
+                inflatedMembers.close();
+            }
+            if(sequential != null) {
+                sequential.close();
+            }
+            if(largeMember != null) {
+                largeMember.close();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static class Member {
+        final long start;
+        final long end;
+        // null for members that are too large to buffer
+        final byte[] bytes;
+        final boolean valid;
+        // why an invalid member could not be inflated or null
+        final Exception failure;
+
+        Member(long start, long end, byte[] bytes, boolean valid) {
+            this(start, end, bytes, valid, null);
+        }
+
+        Member(long start, long end, byte[] bytes, boolean valid, Exception failure) {
+            this.start = start;
+            this.end = end;
+            this.bytes = bytes;
+            this.valid = valid;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Finds the offsets where members might start: first by walking the BGZF block headers, if any, and then by
+     * scanning for anything that looks like a gzip header. Runs on the producer thread of the iterable.
+     */
+    private class CandidateScanner implements Iterator<Long> {
+        private final ArrayDeque<Long> found = new ArrayDeque<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        private boolean bgzf;
+        // offset of the next BGZF block
+        private long position = 0;
+        // offset in the file of the first byte in buffer
+        private long bufferStart = 0;
+        private int scanned = 0;
+        private int scanLimit = 0;
+        private boolean endOfFile = false;
+
+        CandidateScanner(boolean bgzf) {
+            this.bgzf = bgzf;
+        }
+
+        /**
+         * Scans until count candidates are found, the scan reaches limit or the end of the file.
+         * @return true if count candidates were found
+         */
+        boolean scan(int count, long limit) throws IOException {
+            while(found.size() < count) {
+                if(bgzf) {
+                    if(position >= limit) {
+                        return false;
+                    }
+                    walkBgzfBlock();
+                } else if(scanned < scanLimit) {
+                    int end = (int) Math.min(scanLimit, limit - bufferStart);
+                    if(scanned >= end) {
+                        return false;
+                    }
+                    byte[] bytes = buffer.array();
+                    while(scanned < end) {
+                        int i = scanned++;
+                        if(bytes[i] == (byte) 0x1f && GzipMemberInflater.isCandidate(bytes[i], bytes[i + 1], bytes[i + 2], bytes[i + 3])) {
+                            found.add(bufferStart + i);
+                            break;
+                        }
+                    }
+                } else if(endOfFile) {
+                    return false;
+                } else {
+                    fill();
+                }
+            }
+            return true;
+        }
+
+        private void walkBgzfBlock() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(18);
+            int read = channel.read(header, position);
+            int blockSize = GzipMemberInflater.bgzfBlockSize(header.array(), 0, Math.max(0, read));
+            if(blockSize < 0) {
+                // the end of the file or something other than a BGZF block, e.g. an ordinary gzip member
+                bgzf = false;
+                bufferStart = position;
+            } else {
+                found.add(position);
+                position += blockSize;
+            }
+        }
+
+        private void fill() throws IOException {
+            // the last 3 bytes of each buffer are scanned again at the start of the next buffer
+            bufferStart += scanLimit;
+            buffer.clear();
+            while(buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+            }
+            endOfFile = buffer.hasRemaining();
+            scanned = 0;
+            scanLimit = Math.max(0, buffer.position() - 3);
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return scan(1, Long.MAX_VALUE);
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot scan for gzip members", e);
+            }
+        }
+
+        @Override
+        public Long next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return found.poll();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported");
+        }
+    }
+}
@@ -22,7 +22,7 @@ public class PeekableIterator<T> implements Iterator<T> {
 
     @Override
     public boolean hasNext() {
-        return iterator.hasNext() || buffered != null;
+        return buffered != null || iterator.hasNext();
     }
 
     @Override
@@ -0,0 +1,125 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The pipelines of a single iteration over e.g. a {@link ParallelCsvIterable} or {@link ParallelBlobIterable}.
+ * {@link ConcurrentProcessingIterable} logs and drops items that fail to process, which is fine for independent items
+ * but loses whole chunks of a file here. Processors call {@link #fail(Throwable)} instead, which aborts all the
+ * pipelines of the group; the iterator returned by {@link #iterator(Iterator)} then throws the first failure at the
+ * consumer. The pipelines are closed and the group removes itself from the running groups when the output is
+ * exhausted or fails.
+ */
+class PipelineGroup implements Closeable {
+    private final Collection<PipelineGroup> running;
+    private final List<ConcurrentProcessingIterable<?, ?>> pipelines = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param running groups that are closed when their owner is closed; this group adds itself
+     */
+    PipelineGroup(Collection<PipelineGroup> running) {
+        this.running = running;
+        running.add(this);
+    }
+
+    /**
+     * @param pipeline a pipeline that is part of this group
+     * @return the pipeline
+     */
+    <I, O> ConcurrentProcessingIterable<I, O> add(ConcurrentProcessingIterable<I, O> pipeline) {
+        pipelines.add(pipeline);
+        if(failed()) {
+            // failed before this pipeline was added
+            pipeline.abort();
+        }
+        return pipeline;
+    }
+
+    /**
+     * Aborts the pipelines; the first failure is rethrown to the consumer.
+     * @param t what went wrong
+     */
+    void fail(Throwable t) {
+        if(failure.compareAndSet(null, t)) {
+            for(ConcurrentProcessingIterable<?, ?> pipeline: pipelines) {
+                pipeline.abort();
+            }
+        }
+    }
+
+    boolean failed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * @param output the output of the last pipeline
+     * @return iterator that throws the first failure and closes the group when the output is exhausted
+     */
+    <T> Iterator<T> iterator(final Iterator<T> output) {
+        return new Iterator<T>() {
+            boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                if(done) {
+                    return false;
+                }
+                boolean hasNext;
+                try {
+                    hasNext = output.hasNext();
+                    Throwable t = failure.get();
+                    if(t != null) {
+                        throw new IllegalStateException("failed to process all of the input", t);
+                    }
+                } catch (RuntimeException e) {
+                    done = true;
+                    closePipelines();
+                    throw e;
+                }
+                if(!hasNext) {
+                    done = true;
+                    closePipelines();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return output.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove is not supported");
+            }
+        };
+    }
+
+    private void closePipelines() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot close pipelines", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running.remove(this);
+        for(ConcurrentProcessingIterable<?, ?> pipeline: pipelines) {
+            pipeline.close();
+        }
+        pipelines.clear();
+    }
+}
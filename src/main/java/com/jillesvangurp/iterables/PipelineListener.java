@@ -0,0 +1,63 @@
+package com.jillesvangurp.iterables;
+
+/**
+ * Receives events from {@link ConcurrentProcessingIterable}, {@link ProcessingIterable} and {@link FilteringIterable}
+ * so you can see where a pipeline spends its time. {@link PipelineMetrics} is an implementation that aggregates these
+ * events into counters and a latency histogram.
+ *
+ * Implementations must be thread safe and fast since most of these methods are called from the hot path of the
+ * pipeline, potentially from many threads at the same time. To keep the number of calls down, item counts are
+ * reported per block or in batches rather than per item.
+ */
+public interface PipelineListener {
+    /**
+     * The pipelines measure the processing time of one in every this many items.
+     */
+    int LATENCY_SAMPLE_RATE = 16;
+
+    /**
+     * @param count number of items read from the input
+     */
+    void itemsIn(int count);
+
+    /**
+     * @param count number of items handed to the consumer of the pipeline
+     */
+    void itemsOut(int count);
+
+    /**
+     * A block of input was handed to the workers.
+     * @param queueDepth number of blocks waiting for a worker after scheduling this one
+     */
+    void blockScheduled(int queueDepth);
+
+    /**
+     * A worker finished a block and handed the output to the consumer.
+     * @param queueDepth number of completed blocks waiting for the consumer after adding this one
+     */
+    void blockCompleted(int queueDepth);
+
+    /**
+     * To keep the overhead of calling {@link System#nanoTime()} low, the pipelines only report the processing time of
+     * one in every {@link #LATENCY_SAMPLE_RATE} items.
+     * @param nanos time it took to process a single item
+     */
+    void itemProcessed(long nanos);
+
+    /**
+     * @param e exception thrown by a {@link Processor}
+     */
+    void processorFailed(Exception e);
+
+    /**
+     * The producer had to wait for the workers because the queue with scheduled work was full.
+     * @param nanos time spent waiting
+     */
+    void producerBlocked(long nanos);
+
+    /**
+     * The consumer had to wait for the workers because there was no completed work.
+     * @param nanos time spent waiting
+     */
+    void consumerBlocked(long nanos);
+}
@@ -0,0 +1,219 @@
+package com.jillesvangurp.iterables;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PipelineListener} that keeps counters, queue depths and a processing latency histogram. Use
+ * {@link #snapshot()} to get a consistent enough view of the current values, e.g. for periodic logging. The same
+ * instance may be shared by several pipelines to get aggregated numbers.
+ *
+ * All updates are a few atomic operations, so this is cheap enough to leave enabled. The latency histogram has power
+ * of two buckets, so percentiles are accurate to within a factor of two. It is filled with a sample of the items, see
+ * {@link PipelineListener#LATENCY_SAMPLE_RATE}.
+ */
+public class PipelineMetrics implements PipelineListener {
+    // bucket i counts latencies in [2^(i-1), 2^i) nanoseconds
+    private static final int BUCKETS = 64;
+
+    private final AtomicLong itemsIn = new AtomicLong();
+    private final AtomicLong itemsOut = new AtomicLong();
+    private final AtomicLong blocksScheduled = new AtomicLong();
+    private final AtomicLong blocksCompleted = new AtomicLong();
+    private final AtomicInteger scheduledQueueDepth = new AtomicInteger();
+    private final AtomicInteger completedQueueDepth = new AtomicInteger();
+    private final AtomicLong processorExceptions = new AtomicLong();
+    private final AtomicLong producerBlockedNanos = new AtomicLong();
+    private final AtomicLong consumerBlockedNanos = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS);
+
+    @Override
+    public void itemsIn(int count) {
+        itemsIn.addAndGet(count);
+    }
+
+    @Override
+    public void itemsOut(int count) {
+        itemsOut.addAndGet(count);
+    }
+
+    @Override
+    public void blockScheduled(int queueDepth) {
+        blocksScheduled.incrementAndGet();
+        scheduledQueueDepth.set(queueDepth);
+    }
+
+    @Override
+    public void blockCompleted(int queueDepth) {
+        blocksCompleted.incrementAndGet();
+        completedQueueDepth.set(queueDepth);
+    }
+
+    @Override
+    public void itemProcessed(long nanos) {
+        processingNanos.addAndGet(nanos);
+        latencyHistogram.incrementAndGet(bucket(nanos));
+    }
+
+    @Override
+    public void processorFailed(Exception e) {
+        processorExceptions.incrementAndGet();
+    }
+
+    @Override
+    public void producerBlocked(long nanos) {
+        producerBlockedNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void consumerBlocked(long nanos) {
+        consumerBlockedNanos.addAndGet(nanos);
+    }
+
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    /**
+     * @return a copy of the current values
+     */
+    public Snapshot snapshot() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return new Snapshot(itemsIn.get(), itemsOut.get(), blocksScheduled.get(), blocksCompleted.get(), scheduledQueueDepth.get(),
+                completedQueueDepth.get(), processorExceptions.get(), producerBlockedNanos.get(), consumerBlockedNanos.get(), processingNanos.get(), histogram);
+    }
+
+    /**
+     * Immutable copy of the values of a {@link PipelineMetrics} at some point in time.
+     */
+    public static class Snapshot {
+        private final long itemsIn;
+        private final long itemsOut;
+        private final long blocksScheduled;
+        private final long blocksCompleted;
+        private final int scheduledQueueDepth;
+        private final int completedQueueDepth;
+        private final long processorExceptions;
+        private final long producerBlockedNanos;
+        private final long consumerBlockedNanos;
+        private final long processingNanos;
+        private final long[] latencyHistogram;
+        private final long latencySamples;
+
+        Snapshot(long itemsIn, long itemsOut, long blocksScheduled, long blocksCompleted, int scheduledQueueDepth, int completedQueueDepth,
+                long processorExceptions, long producerBlockedNanos, long consumerBlockedNanos, long processingNanos, long[] latencyHistogram) {
+            this.itemsIn = itemsIn;
+            this.itemsOut = itemsOut;
+            this.blocksScheduled = blocksScheduled;
+            this.blocksCompleted = blocksCompleted;
+            this.scheduledQueueDepth = scheduledQueueDepth;
+            this.completedQueueDepth = completedQueueDepth;
+            this.processorExceptions = processorExceptions;
+            this.producerBlockedNanos = producerBlockedNanos;
+            this.consumerBlockedNanos = consumerBlockedNanos;
+            this.processingNanos = processingNanos;
+            this.latencyHistogram = latencyHistogram;
+            long processed = 0;
+            for (long count : latencyHistogram) {
+                processed += count;
+            }
+            latencySamples = processed;
+        }
+
+        public long getItemsIn() {
+            return itemsIn;
+        }
+
+        public long getItemsOut() {
+            return itemsOut;
+        }
+
+        public long getBlocksScheduled() {
+            return blocksScheduled;
+        }
+
+        public long getBlocksCompleted() {
+            return blocksCompleted;
+        }
+
+        /**
+         * @return number of blocks waiting for a worker, as last observed by the producer
+         */
+        public int getScheduledQueueDepth() {
+            return scheduledQueueDepth;
+        }
+
+        /**
+         * @return number of completed blocks waiting for the consumer, as last observed by a worker
+         */
+        public int getCompletedQueueDepth() {
+            return completedQueueDepth;
+        }
+
+        public long getProcessorExceptions() {
+            return processorExceptions;
+        }
+
+        public long getProducerBlockedNanos() {
+            return producerBlockedNanos;
+        }
+
+        public long getConsumerBlockedNanos() {
+            return consumerBlockedNanos;
+        }
+
+        /**
+         * @return number of items for which the processing time was recorded
+         */
+        public long getLatencySamples() {
+            return latencySamples;
+        }
+
+        /**
+         * @return average processing time per sampled item in nanoseconds
+         */
+        public double getMeanLatencyNanos() {
+            return latencySamples == 0 ? 0 : (double) processingNanos / latencySamples;
+        }
+
+        /**
+         * @param percentile a value between 0 and 100
+         * @return upper bound of the histogram bucket that contains the percentile, in nanoseconds
+         */
+        public long getLatencyPercentileNanos(double percentile) {
+            if(percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile should be between 0 and 100");
+            }
+            long threshold = (long) Math.ceil(latencySamples * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                seen += latencyHistogram[i];
+                if(seen >= threshold && seen > 0) {
+                    return i == 0 ? 0 : (1l << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return copy of the latency histogram; bucket i counts the items that took between 2^(i-1) and 2^i - 1 nanoseconds.
+         */
+        public long[] getLatencyHistogram() {
+            return latencyHistogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "items in: " + itemsIn + ", items out: " + itemsOut + ", blocks scheduled: " + blocksScheduled + ", blocks completed: " + blocksCompleted
+                    + ", scheduled queue depth: " + scheduledQueueDepth + ", completed queue depth: " + completedQueueDepth
+                    + ", processor exceptions: " + processorExceptions + ", producer blocked ms: " + producerBlockedNanos / 1000000
+                    + ", consumer blocked ms: " + consumerBlockedNanos / 1000000 + ", mean latency ns: " + Math.round(getMeanLatencyNanos())
+                    + ", p99 latency ns: " + getLatencyPercentileNanos(99);
+        }
+    }
+}
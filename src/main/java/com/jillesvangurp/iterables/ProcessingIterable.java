@@ -9,27 +9,77 @@ import java.util.Iterator;
  * @param <Output> output type
  */
 public class ProcessingIterable <Input,Output> implements Iterable<Output> {
+    private static final int BATCH_SIZE = 1024;
 
     private final Iterator<Input> it;
     private final Processor<Input, Output> processor;
+    private PipelineListener listener;
 
     public ProcessingIterable(Iterator<Input> it, Processor<Input, Output> processor) {
         this.it = it;
         this.processor = processor;
     }
 
+    /**
+     * Report the items in and out, the processing time and processor exceptions to a listener. Must be called before iterating.
+     * The item counts are reported in batches and when the end of the input is reached.
+     * @param listener a listener, e.g. {@link PipelineMetrics}
+     * @return this iterable
+     */
+    public ProcessingIterable<Input, Output> withListener(PipelineListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
     @Override
     public Iterator<Output> iterator() {
+        final PipelineListener listener = this.listener;
         return new Iterator<Output>() {
+            // counts are reported in batches to keep the overhead low
+            int itemsIn = 0;
+            int itemsOut = 0;
 
             @Override
             public boolean hasNext() {
-                return it.hasNext();
+                boolean hasNext = it.hasNext();
+                if(!hasNext && listener != null) {
+                    flush();
+                }
+                return hasNext;
             }
 
             @Override
             public Output next() {
-                return processor.process(it.next());
+                if(listener == null) {
+                    return processor.process(it.next());
+                }
+                Input input = it.next();
+                boolean sample = itemsIn++ % PipelineListener.LATENCY_SAMPLE_RATE == 0;
+                long start = sample ? System.nanoTime() : 0;
+                Output output;
+                try {
+                    output = processor.process(input);
+                } catch (RuntimeException e) {
+                    listener.processorFailed(e);
+                    throw e;
+                } finally {
+                    if(sample) {
+                        listener.itemProcessed(System.nanoTime() - start);
+                    }
+                }
+                if(++itemsOut == BATCH_SIZE) {
+                    flush();
+                }
+                return output;
+            }
+
+            private void flush() {
+                if(itemsIn > 0) {
+                    listener.itemsIn(itemsIn);
+                    listener.itemsOut(itemsOut);
+                    itemsIn = 0;
+                    itemsOut = 0;
+                }
             }
 
             @Override
@@ -0,0 +1,187 @@
+package com.jillesvangurp.iterables;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InputStream that reads its input on a background thread into a bounded number of large buffers. This pipelines
+ * reading, e.g. inflating a {@link java.util.zip.GZIPInputStream}, with whatever the reading thread does with the
+ * bytes, e.g. decoding and splitting lines. The buffers are recycled, so after the first few reads no garbage is created.
+ *
+ * Exceptions on the background thread are rethrown from read when the reader catches up. Closing the stream stops the
+ * background thread and closes the underlying stream; if the background thread is still inside a read of the
+ * underlying stream, it closes the stream itself when that read returns.
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final InputStream in;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> filled;
+    // marks the end of the input, compared by reference
+    private final ByteBuffer endOfInput = ByteBuffer.allocate(0);
+    private final Thread thread;
+    private volatile Throwable failure;
+    private volatile boolean closed = false;
+    // guarded by this
+    private boolean finished = false;
+    private ByteBuffer current = null;
+
+    /**
+     * @param in the stream to read from on the background thread
+     * @param bufferSize size of each buffer; use something large, e.g. 1MB
+     * @param buffers number of buffers; the background thread blocks when they are all full. Should be at least 2.
+     */
+    public ReadAheadInputStream(InputStream in, int bufferSize, int buffers) {
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize should be at least 1");
+        }
+        if(buffers < 2) {
+            throw new IllegalArgumentException("buffers should be at least 2");
+        }
+        this.in = in;
+        free = new ArrayBlockingQueue<>(buffers);
+        for(int i = 0; i < buffers; i++) {
+            free.add(ByteBuffer.allocate(bufferSize));
+        }
+        // room for all the buffers and the end of input marker so the background thread never blocks on it
+        filled = new ArrayBlockingQueue<>(buffers + 1);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "readAheadThread_" + THREAD_NUMBER.getAndIncrement());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readAhead() {
+        try {
+            boolean endOfStream = false;
+            while(!endOfStream && !closed) {
+                ByteBuffer buffer = free.take();
+                buffer.clear();
+                byte[] bytes = buffer.array();
+                int position = 0;
+                while(position < bytes.length) {
+                    int read = in.read(bytes, position, bytes.length - position);
+                    if(read < 0) {
+                        endOfStream = true;
+                        break;
+                    }
+                    position += read;
+                }
+                buffer.limit(position);
+                if(position > 0) {
+                    filled.put(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            if(!closed) {
+                failure = e;
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            filled.offer(endOfInput);
+            synchronized(this) {
+                finished = true;
+                if(closed) {
+                    // close was called while we were reading, so nobody else closes the stream
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // there is nobody left to report this to
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!nextBuffer()) {
+            return -1;
+        }
+        return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(!nextBuffer()) {
+            return -1;
+        }
+        int read = Math.min(len, current.remaining());
+        current.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null || current == endOfInput ? 0 : current.remaining();
+    }
+
+    /**
+     * @return true if current has bytes remaining, false at the end of the input
+     */
+    private boolean nextBuffer() throws IOException {
+        if(closed) {
+            throw new IOException("stream is closed");
+        }
+        if(current != null && current.hasRemaining()) {
+            return true;
+        }
+        if(current == endOfInput) {
+            // a failure is thrown on every read, so a caller that retries does not see a truncated stream
+            return endOfStream();
+        }
+        if(current != null) {
+            // hand the buffer back to the background thread
+            free.offer(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while waiting for input", e);
+        }
+        if(current == endOfInput) {
+            return endOfStream();
+        }
+        return true;
+    }
+
+    /**
+     * @return false, unless reading the input failed
+     */
+    private boolean endOfStream() throws IOException {
+        if(failure != null) {
+            throw new IOException("failed to read input", failure);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean closeInput;
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            // otherwise the background thread closes the stream when it is done with it
+            closeInput = finished;
+        }
+        thread.interrupt();
+        if(closeInput) {
+            in.close();
+        }
+    }
+}
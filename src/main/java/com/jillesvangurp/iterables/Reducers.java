@@ -39,4 +39,32 @@ public class Reducers {
         return new AddingReducer<>();
     }
 
+    public static <T extends Comparable<T>> Reducer<T> min(Class<T> clazz) {
+        return new Reducer<T>() {
+            @Override
+            public T reduce(T input) {
+                return input;
+            }
+
+            @Override
+            public T reduce(T cumulative, T input) {
+                return input.compareTo(cumulative) < 0 ? input : cumulative;
+            }
+        };
+    }
+
+    public static <T extends Comparable<T>> Reducer<T> max(Class<T> clazz) {
+        return new Reducer<T>() {
+            @Override
+            public T reduce(T input) {
+                return input;
+            }
+
+            @Override
+            public T reduce(T cumulative, T input) {
+                return input.compareTo(cumulative) > 0 ? input : cumulative;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,236 @@
+package com.jillesvangurp.iterables;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock free {@link BlockingQueue} on top of a preallocated ring buffer. Unlike a LinkedBlockingQueue, adding an
+ * element does not allocate a node and neither side takes a lock. Each slot has a sequence number that tells the
+ * producers and consumers whether it is free or filled (see Dmitry Vyukov's bounded queue). The side that has a single
+ * thread advances its position with a plain ordered write; the side with multiple threads uses compare and set.
+ *
+ * Blocking methods wait using a {@link WaitStrategy} rather than a lock and a condition.
+ *
+ * Use {@link #singleProducerMultiConsumer(int, WaitStrategy)} or {@link #multiProducerSingleConsumer(int, WaitStrategy)}
+ * and make sure to respect the threading constraints: it is the responsibility of the caller to ensure there is only
+ * one producer or consumer thread on the single side. Iterating over the queue is not supported.
+ *
+ * @param <T> element type
+ */
+public class RingBufferQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    private final boolean multiProducer;
+    private final boolean multiConsumer;
+    private final WaitStrategy waitStrategy;
+
+    RingBufferQueue(int capacity, boolean multiProducer, boolean multiConsumer, WaitStrategy waitStrategy) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity should be at least 1");
+        }
+        // round up to a power of two so we can use a mask instead of a modulo
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size = size << 1;
+        }
+        this.capacity = capacity;
+        mask = size - 1;
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.multiProducer = multiProducer;
+        this.multiConsumer = multiConsumer;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @param capacity capacity, rounded up to a power of two internally
+     * @param waitStrategy what to do while waiting in put and take
+     * @param <T> element type
+     * @return a queue for one producer thread and many consumer threads
+     */
+    public static <T> RingBufferQueue<T> singleProducerMultiConsumer(int capacity, WaitStrategy waitStrategy) {
+        return new RingBufferQueue<>(capacity, false, true, waitStrategy);
+    }
+
+    /**
+     * @param capacity capacity, rounded up to a power of two internally
+     * @param waitStrategy what to do while waiting in put and take
+     * @param <T> element type
+     * @return a queue for many producer threads and one consumer thread
+     */
+    public static <T> RingBufferQueue<T> multiProducerSingleConsumer(int capacity, WaitStrategy waitStrategy) {
+        return new RingBufferQueue<>(capacity, true, false, waitStrategy);
+    }
+
+    @Override
+    public boolean offer(T e) {
+        if(e == null) {
+            throw new NullPointerException();
+        }
+        long position;
+        int index;
+        while(true) {
+            position = tail.get();
+            if(position - head.get() >= capacity) {
+                return false;
+            }
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if(difference == 0) {
+                if(!multiProducer) {
+                    tail.lazySet(position + 1);
+                    break;
+                } else if(tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if(difference < 0) {
+                // the consumer has not released the slot yet
+                return false;
+            }
+            // another producer claimed this position, try again
+        }
+        buffer.set(index, e);
+        // publish
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        long position;
+        int index;
+        while(true) {
+            position = head.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if(difference == 0) {
+                if(!multiConsumer) {
+                    head.lazySet(position + 1);
+                    break;
+                } else if(head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if(difference < 0) {
+                // empty
+                return null;
+            }
+            // another consumer took this position, try again
+        }
+        T e = buffer.get(index);
+        buffer.set(index, null);
+        // release the slot for the next round
+        sequences.lazySet(index, position + mask + 1);
+        return e;
+    }
+
+    @Override
+    public T peek() {
+        int index = (int) head.get() & mask;
+        return buffer.get(index);
+    }
+
+    @Override
+    public void put(T e) throws InterruptedException {
+        int attempt = 0;
+        while(!offer(e)) {
+            waitStrategy.await(attempt++);
+        }
+    }
+
+    @Override
+    public boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while(!offer(e)) {
+            if(System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.await(attempt++);
+        }
+        return true;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        int attempt = 0;
+        T e;
+        while((e = poll()) == null) {
+            waitStrategy.await(attempt++);
+        }
+        return e;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        T e;
+        while((e = poll()) == null) {
+            if(System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            waitStrategy.await(attempt++);
+        }
+        return e;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * @return approximate number of elements; exact only if there are no concurrent modifications
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        int drained = 0;
+        T e;
+        while(drained < maxElements && (e = poll()) != null) {
+            c.add(e);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        throw new UnsupportedOperationException("iterating over a ring buffer queue is not supported");
+    }
+
+    /**
+     * Pads the value to its own cache line so the producer and consumer positions don't cause false sharing.
+     */
+    @SuppressWarnings("unused")
+    private static class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7 = 7l;
+    }
+}
@@ -0,0 +1,27 @@
+package com.jillesvangurp.iterables;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes values to and reads them from a binary stream, e.g. for the runs of an {@link ExternalSortingIterable}. See
+ * {@link Serializers} for some implementations.
+ *
+ * @param <T> type of the values
+ */
+public interface Serializer<T> {
+    /**
+     * @param value the value
+     * @param out output
+     * @throws IOException if the value cannot be written
+     */
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     * @param in input, positioned at a value written with {@link #write(Object, DataOutput)}
+     * @return the value
+     * @throws IOException if the value cannot be read
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,116 @@
+package com.jillesvangurp.iterables;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializers for common types. Lengths and longs are written as variable length integers, so small values take a
+ * single byte.
+ */
+public class Serializers {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Serializer<String> STRINGS = new Serializer<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            writeString(value, out);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return readString(in);
+        }
+    };
+
+    private static final Serializer<Long> LONGS = new Serializer<Long>() {
+        @Override
+        public void write(Long value, DataOutput out) throws IOException {
+            // zigzag, so small negative values are short as well
+            writeVarLong((value << 1) ^ (value >> 63), out);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            long zigzag = readVarLong(in);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    };
+
+    private static final Serializer<List<String>> STRING_LISTS = new Serializer<List<String>>() {
+        @Override
+        public void write(List<String> value, DataOutput out) throws IOException {
+            writeVarLong(value.size(), out);
+            for(String s: value) {
+                writeString(s, out);
+            }
+        }
+
+        @Override
+        public List<String> read(DataInput in) throws IOException {
+            int size = (int) readVarLong(in);
+            List<String> list = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) {
+                list.add(readString(in));
+            }
+            return list;
+        }
+    };
+
+    /**
+     * @return serializer for UTF-8 strings of any length
+     */
+    public static Serializer<String> strings() {
+        return STRINGS;
+    }
+
+    /**
+     * @return serializer for longs
+     */
+    public static Serializer<Long> longs() {
+        return LONGS;
+    }
+
+    /**
+     * @return serializer for lists of strings, like the records of {@link CSVLineIterable}
+     */
+    public static Serializer<List<String>> stringLists() {
+        return STRING_LISTS;
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        // unlike writeUTF, not limited to 64KB
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarLong(bytes.length, out);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    static void writeVarLong(long value, DataOutput out) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable length integer");
+    }
+}
@@ -0,0 +1,487 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Joins two iterables that are sorted on a key by merging them. Each element of each input is read once and its key
+ * is extracted once, so joining is linear in the size of the inputs.
+ *
+ * Iterating gives you a {@link Group} with the elements of both sides for every key. Use {@link #cursor()} instead if
+ * the groups can be large or if the inputs reuse their elements (like {@link CSVLineIterable#records()}); the cursor
+ * streams the elements of each group from the inputs without collecting them.
+ *
+ * <pre>
+ * SortMergeJoin&lt;Order, Customer&gt; join = SortMergeJoin.joinOnLongKeys(orders, orderCustomerId, customers, customerId, JoinType.LEFT);
+ * </pre>
+ *
+ * @param <L> type of the left input
+ * @param <R> type of the right input
+ */
+public class SortMergeJoin<L, R> implements Iterable<SortMergeJoin.Group<L, R>> {
+    public enum JoinType {
+        /**
+         * Only keys that occur on both sides.
+         */
+        INNER,
+        /**
+         * All keys of the left side.
+         */
+        LEFT,
+        /**
+         * All keys of both sides.
+         */
+        FULL
+    }
+
+    private final Iterable<L> left;
+    private final Iterable<R> right;
+    private final KeyFactory<L, R> keys;
+    private final JoinType type;
+
+    private SortMergeJoin(Iterable<L> left, Iterable<R> right, KeyFactory<L, R> keys, JoinType type) {
+        this.left = left;
+        this.right = right;
+        this.keys = keys;
+        this.type = type;
+    }
+
+    /**
+     * @param left left input, sorted on its key
+     * @param leftKey extracts the key of the left elements
+     * @param right right input, sorted on its key
+     * @param rightKey extracts the key of the right elements
+     * @param comparator order of the keys
+     * @param type join type
+     * @param <L> type of the left input
+     * @param <R> type of the right input
+     * @param <K> type of the key
+     * @return the join
+     */
+    public static <L, R, K> SortMergeJoin<L, R> join(Iterable<L> left, final Processor<L, K> leftKey, Iterable<R> right, final Processor<R, K> rightKey, final Comparator<? super K> comparator, JoinType type) {
+        return new SortMergeJoin<>(left, right, new KeyFactory<L, R>() {
+            @Override
+            public Keys<L, R> create() {
+                return new ObjectKeys<>(leftKey, rightKey, comparator);
+            }
+        }, type);
+    }
+
+    /**
+     * @param left left input, sorted on its key
+     * @param leftKey extracts the key of the left elements
+     * @param right right input, sorted on its key
+     * @param rightKey extracts the key of the right elements
+     * @param type join type
+     * @param <L> type of the left input
+     * @param <R> type of the right input
+     * @return the join
+     */
+    public static <L, R> SortMergeJoin<L, R> joinOnLongKeys(Iterable<L> left, final LongKeyExtractor<L> leftKey, Iterable<R> right, final LongKeyExtractor<R> rightKey, JoinType type) {
+        return new SortMergeJoin<>(left, right, new KeyFactory<L, R>() {
+            @Override
+            public Keys<L, R> create() {
+                return new LongKeys<>(leftKey, rightKey);
+            }
+        }, type);
+    }
+
+    /**
+     * @return a cursor that streams the groups of this join
+     */
+    public Cursor<L, R> cursor() {
+        return new Cursor<>(left.iterator(), right.iterator(), keys.create(), type);
+    }
+
+    /**
+     * Collects the elements of each group in lists. Don't use this if the inputs reuse their elements.
+     */
+    @Override
+    public Iterator<Group<L, R>> iterator() {
+        final Cursor<L, R> cursor = cursor();
+        return new Iterator<Group<L, R>>() {
+            Group<L, R> next;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null && cursor.next()) {
+                    next = new Group<>(collect(cursor.left()), collect(cursor.right()));
+                }
+                return next != null;
+            }
+
+            @Override
+            public Group<L, R> next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Group<L, R> result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("cannot remove groups");
+            }
+        };
+    }
+
+    private static <T> List<T> collect(Iterator<T> it) {
+        if(!it.hasNext()) {
+            return Collections.emptyList();
+        }
+        List<T> result = new ArrayList<>();
+        while(it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    /**
+     * The elements of both sides that have the same key.
+     */
+    public static class Group<L, R> {
+        private final List<L> left;
+        private final List<R> right;
+
+        Group(List<L> left, List<R> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return the elements of the left side, empty if the key only occurs on the right side
+         */
+        public List<L> getLeft() {
+            return left;
+        }
+
+        /**
+         * @return the elements of the right side, empty if the key only occurs on the left side
+         */
+        public List<R> getRight() {
+            return right;
+        }
+    }
+
+    /**
+     * Moves through the groups of a join. After {@link #next()}, {@link #left()} and {@link #right()} stream the elements
+     * of the group directly from the inputs; elements of the group that you don't read are skipped when you move to the
+     * next group.
+     */
+    public static class Cursor<L, R> {
+        private final Iterator<L> leftIterator;
+        private final Iterator<R> rightIterator;
+        private final Keys<L, R> keys;
+        private final JoinType type;
+
+        private L leftHead;
+        private R rightHead;
+        private boolean hasLeftHead;
+        private boolean hasRightHead;
+        // the head was returned by the group iterator and the input should move on before it is used again
+        private boolean leftReturned;
+        private boolean rightReturned;
+        private boolean groupHasLeft;
+        private boolean groupHasRight;
+        private final Iterator<L> leftGroup;
+        private final Iterator<R> rightGroup;
+
+        Cursor(Iterator<L> leftIterator, Iterator<R> rightIterator, Keys<L, R> keys, JoinType type) {
+            this.leftIterator = leftIterator;
+            this.rightIterator = rightIterator;
+            this.keys = keys;
+            this.type = type;
+            advanceLeft();
+            advanceRight();
+            leftGroup = new Iterator<L>() {
+                @Override
+                public boolean hasNext() {
+                    if(leftReturned) {
+                        advanceLeft();
+                    }
+                    return groupHasLeft && hasLeftHead && Cursor.this.keys.leftInGroup();
+                }
+
+                @Override
+                public L next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    leftReturned = true;
+                    return leftHead;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("cannot remove elements");
+                }
+            };
+            rightGroup = new Iterator<R>() {
+                @Override
+                public boolean hasNext() {
+                    if(rightReturned) {
+                        advanceRight();
+                    }
+                    return groupHasRight && hasRightHead && Cursor.this.keys.rightInGroup();
+                }
+
+                @Override
+                public R next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    rightReturned = true;
+                    return rightHead;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("cannot remove elements");
+                }
+            };
+        }
+
+        /**
+         * Moves to the next group, skipping the unread elements of the current group.
+         * @return false if there are no more groups
+         */
+        public boolean next() {
+            while(true) {
+                skip(leftGroup);
+                skip(rightGroup);
+                if(!hasLeftHead && !hasRightHead) {
+                    groupHasLeft = false;
+                    groupHasRight = false;
+                    return false;
+                }
+                int compared;
+                if(hasLeftHead && hasRightHead) {
+                    compared = keys.compareLeftToRight();
+                } else {
+                    compared = hasLeftHead ? -1 : 1;
+                }
+                groupHasLeft = compared <= 0;
+                groupHasRight = compared >= 0;
+                if(groupHasLeft) {
+                    keys.groupFromLeft();
+                } else {
+                    keys.groupFromRight();
+                }
+                if(type == JoinType.INNER && !(groupHasLeft && groupHasRight)) {
+                    continue;
+                }
+                if(type == JoinType.LEFT && !groupHasLeft) {
+                    continue;
+                }
+                return true;
+            }
+        }
+
+        /**
+         * @return true if the current group has elements on the left side
+         */
+        public boolean hasLeft() {
+            return groupHasLeft;
+        }
+
+        /**
+         * @return true if the current group has elements on the right side
+         */
+        public boolean hasRight() {
+            return groupHasRight;
+        }
+
+        /**
+         * @return iterator over the left elements of the current group; valid until {@link #next()} is called
+         */
+        public Iterator<L> left() {
+            return leftGroup;
+        }
+
+        /**
+         * @return iterator over the right elements of the current group; valid until {@link #next()} is called
+         */
+        public Iterator<R> right() {
+            return rightGroup;
+        }
+
+        private void skip(Iterator<?> it) {
+            while(it.hasNext()) {
+                it.next();
+            }
+        }
+
+        private void advanceLeft() {
+            leftReturned = false;
+            hasLeftHead = leftIterator.hasNext();
+            if(hasLeftHead) {
+                leftHead = leftIterator.next();
+                keys.leftKey(leftHead);
+            } else {
+                leftHead = null;
+            }
+        }
+
+        private void advanceRight() {
+            rightReturned = false;
+            hasRightHead = rightIterator.hasNext();
+            if(hasRightHead) {
+                rightHead = rightIterator.next();
+                keys.rightKey(rightHead);
+            } else {
+                rightHead = null;
+            }
+        }
+    }
+
+    private interface KeyFactory<L, R> {
+        Keys<L, R> create();
+    }
+
+    /**
+     * Extracts and remembers the keys of the current elements of both sides and of the current group.
+     */
+    private abstract static class Keys<L, R> {
+        /**
+         * Extracts the key of the next left element.
+         * @throws IllegalStateException if the key is smaller than that of the previous element
+         */
+        abstract void leftKey(L value);
+
+        abstract void rightKey(R value);
+
+        abstract int compareLeftToRight();
+
+        abstract void groupFromLeft();
+
+        abstract void groupFromRight();
+
+        abstract boolean leftInGroup();
+
+        abstract boolean rightInGroup();
+    }
+
+    private static class LongKeys<L, R> extends Keys<L, R> {
+        private final LongKeyExtractor<L> leftExtractor;
+        private final LongKeyExtractor<R> rightExtractor;
+        private long left = Long.MIN_VALUE;
+        private long right = Long.MIN_VALUE;
+        private long group;
+
+        LongKeys(LongKeyExtractor<L> leftExtractor, LongKeyExtractor<R> rightExtractor) {
+            this.leftExtractor = leftExtractor;
+            this.rightExtractor = rightExtractor;
+        }
+
+        @Override
+        void leftKey(L value) {
+            long key = leftExtractor.key(value);
+            if(key < left) {
+                throw new IllegalStateException("left input is not sorted: " + key + " after " + left);
+            }
+            left = key;
+        }
+
+        @Override
+        void rightKey(R value) {
+            long key = rightExtractor.key(value);
+            if(key < right) {
+                throw new IllegalStateException("right input is not sorted: " + key + " after " + right);
+            }
+            right = key;
+        }
+
+        @Override
+        int compareLeftToRight() {
+            return Long.compare(left, right);
+        }
+
+        @Override
+        void groupFromLeft() {
+            group = left;
+        }
+
+        @Override
+        void groupFromRight() {
+            group = right;
+        }
+
+        @Override
+        boolean leftInGroup() {
+            return left == group;
+        }
+
+        @Override
+        boolean rightInGroup() {
+            return right == group;
+        }
+    }
+
+    private static class ObjectKeys<L, R, K> extends Keys<L, R> {
+        private final Processor<L, K> leftExtractor;
+        private final Processor<R, K> rightExtractor;
+        private final Comparator<? super K> comparator;
+        private K left;
+        private K right;
+        private K group;
+        private boolean hasLeft;
+        private boolean hasRight;
+
+        ObjectKeys(Processor<L, K> leftExtractor, Processor<R, K> rightExtractor, Comparator<? super K> comparator) {
+            this.leftExtractor = leftExtractor;
+            this.rightExtractor = rightExtractor;
+            this.comparator = comparator;
+        }
+
+        @Override
+        void leftKey(L value) {
+            K key = leftExtractor.process(value);
+            if(hasLeft && comparator.compare(key, left) < 0) {
+                throw new IllegalStateException("left input is not sorted: " + key + " after " + left);
+            }
+            left = key;
+            hasLeft = true;
+        }
+
+        @Override
+        void rightKey(R value) {
+            K key = rightExtractor.process(value);
+            if(hasRight && comparator.compare(key, right) < 0) {
+                throw new IllegalStateException("right input is not sorted: " + key + " after " + right);
+            }
+            right = key;
+            hasRight = true;
+        }
+
+        @Override
+        int compareLeftToRight() {
+            return comparator.compare(left, right);
+        }
+
+        @Override
+        void groupFromLeft() {
+            group = left;
+        }
+
+        @Override
+        void groupFromRight() {
+            group = right;
+        }
+
+        @Override
+        boolean leftInGroup() {
+            return comparator.compare(left, group) == 0;
+        }
+
+        @Override
+        boolean rightInGroup() {
+            return comparator.compare(right, group) == 0;
+        }
+    }
+}
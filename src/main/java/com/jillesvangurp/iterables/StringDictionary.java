@@ -0,0 +1,65 @@
+package com.jillesvangurp.iterables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns codes to the distinct values of a csv field. Values are looked up by their chars in the record's buffer, so a
+ * String is only created the first time a value is seen.
+ */
+class StringDictionary {
+    private final List<String> values = new ArrayList<>();
+    private final List<String> readOnlyValues = Collections.unmodifiableList(values);
+    private int[] hashes = new int[64];
+    // code + 1 per slot, 0 for empty slots
+    private int[] slots = new int[64];
+
+    List<String> values() {
+        return readOnlyValues;
+    }
+
+    int code(CsvRecord record, int field) {
+        int hash = record.hashCode(field);
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while(slots[slot] != 0) {
+            int code = slots[slot] - 1;
+            if(hashes[slot] == hash && record.fieldEquals(field, values.get(code))) {
+                return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int code = values.size();
+        values.add(record.get(field));
+        hashes[slot] = hash;
+        slots[slot] = code + 1;
+        if(values.size() * 2 > slots.length) {
+            grow();
+        }
+        return code;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        int[] oldSlots = slots;
+        hashes = new int[oldSlots.length * 2];
+        slots = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for(int i = 0; i < oldSlots.length; i++) {
+            if(oldSlots[i] != 0) {
+                int slot = mix(oldHashes[i]) & mask;
+                while(slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                slots[slot] = oldSlots[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
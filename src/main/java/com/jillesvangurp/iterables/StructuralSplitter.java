@@ -0,0 +1,113 @@
+package com.jillesvangurp.iterables;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Base class for iterators that split a Reader into blobs by scanning its structure, see {@link JsonArrayIterable} and
+ * {@link XmlElementIterable}. The reader is read into a char buffer that is reused like in {@link BlobIterable}.
+ * Subclasses scan buffer from position, call {@link #ensure(int)} before looking at chars and mark the start of a blob
+ * with blobStart; the chars from blobStart are kept when the buffer is refilled, so subclasses must not keep other
+ * indices into the buffer across calls to ensure.
+ */
+abstract class StructuralSplitter implements Iterator<String> {
+    private final Reader reader;
+    char[] buffer;
+    int limit = 0;
+    int position = 0;
+    // start of the blob that is being read or -1
+    int blobStart = -1;
+    private boolean endOfInput = false;
+    private String next;
+    private boolean advanced = false;
+
+    StructuralSplitter(Reader reader, int bufferSize) {
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize should be at least 1");
+        }
+        this.reader = reader;
+        buffer = new char[bufferSize];
+    }
+
+    /**
+     * @return the next blob or null if there are no more
+     */
+    abstract String readNext();
+
+    /**
+     * Makes sure the chars from position up to position + n are in the buffer.
+     * @return false if the input ends before that
+     */
+    boolean ensure(int n) {
+        while(position + n > limit) {
+            if(endOfInput) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * @return the chars from blobStart up to end as a String
+     */
+    String blob(int end) {
+        String blob = new String(buffer, blobStart, end - blobStart);
+        blobStart = -1;
+        return blob;
+    }
+
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private void fill() {
+        int keep = blobStart >= 0 ? blobStart : position;
+        if(keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            limit -= keep;
+            position -= keep;
+            if(blobStart >= 0) {
+                blobStart -= keep;
+            }
+        } else if(limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if(read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read from stream", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!advanced) {
+            next = readNext();
+            advanced = true;
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove is not supported");
+    }
+}
@@ -0,0 +1,59 @@
+package com.jillesvangurp.iterables;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a thread does while waiting for a {@link RingBufferQueue} to become non empty or non full.
+ */
+public enum WaitStrategy {
+    /**
+     * Busy spin. Lowest latency, but burns a full core per waiting thread. Only use this if there are more cores than threads.
+     */
+    SPIN {
+        @Override
+        void idle(int attempt) {
+        }
+    },
+    /**
+     * Yield to other threads between attempts. Low latency and still busy, but plays nicer when there are more threads than cores.
+     */
+    YIELD {
+        @Override
+        void idle(int attempt) {
+            Thread.yield();
+        }
+    },
+    /**
+     * Spin briefly, then yield, then park for exponentially increasing periods of up to a millisecond. Uses hardly any
+     * cpu when idle at the price of some latency.
+     */
+    PARK {
+        @Override
+        void idle(int attempt) {
+            if(attempt < 100) {
+                return;
+            } else if(attempt < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(1000000l, 1000l << Math.min(10, attempt - 200)));
+            }
+        }
+    };
+
+    /**
+     * @param attempt number of times the waiting thread has tried before
+     */
+    abstract void idle(int attempt);
+
+    /**
+     * Wait before the next attempt.
+     * @param attempt number of times the waiting thread has tried before
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    void await(int attempt) throws InterruptedException {
+        if(Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        idle(attempt);
+    }
+}
@@ -0,0 +1,169 @@
+package com.jillesvangurp.iterables;
+
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Iterates over the xml elements at a given depth in a Reader without parsing the whole document. Depth 0 is the root
+ * element, so depth 1 returns its children, e.g. the nodes, ways and relations in an openstreetmap file. Each element
+ * is returned as a String with its xml source, including nested elements with the same name, which a
+ * {@link BlobIterable} cannot tell apart.
+ *
+ * The scanner tracks the nesting of start and end tags and skips quoted attribute values, comments, CDATA sections,
+ * processing instructions and the doctype, so tags inside those are ignored. It does not validate the xml or check
+ * that end tags match their start tags. An element that is cut off by the end of the input is ignored.
+ *
+ * Note. make sure to close the reader after iterating. This class does not attempt to close the reader.
+ */
+public class XmlElementIterable implements Iterable<String> {
+    private final Reader r;
+    private final int depth;
+    private final int bufferSize;
+
+    /**
+     * @param r reader with xml
+     * @param depth depth of the elements that are returned, 0 for the root element
+     */
+    public XmlElementIterable(Reader r, int depth) {
+        this(r, depth, BlobIterable.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param r reader with xml
+     * @param depth depth of the elements that are returned, 0 for the root element
+     * @param bufferSize initial size of the buffer in chars; it grows for elements that are larger
+     */
+    public XmlElementIterable(Reader r, int depth, int bufferSize) {
+        if(depth < 0) {
+            throw new IllegalArgumentException("depth should not be negative");
+        }
+        this.r = r;
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new XmlElementSplitter(r, depth, bufferSize);
+    }
+
+    private static class XmlElementSplitter extends StructuralSplitter {
+        private final int depth;
+        // number of open elements
+        private int level = 0;
+
+        XmlElementSplitter(Reader reader, int depth, int bufferSize) {
+            super(reader, bufferSize);
+            this.depth = depth;
+        }
+
+        @Override
+        String readNext() {
+            while(true) {
+                // skip text
+                while(ensure(1) && buffer[position] != '<') {
+                    position++;
+                }
+                if(!ensure(2)) {
+                    blobStart = -1;
+                    return null;
+                }
+                char c = buffer[position + 1];
+                if(c == '?') {
+                    skipUntil("?>");
+                } else if(c == '!') {
+                    if(startsWith("<!--")) {
+                        skipUntil("-->");
+                    } else if(startsWith("<![CDATA[")) {
+                        skipUntil("]]>");
+                    } else {
+                        skipDeclaration();
+                    }
+                } else if(c == '/') {
+                    level--;
+                    skipTag();
+                    if(level == depth && blobStart >= 0) {
+                        return blob(position);
+                    }
+                } else {
+                    if(level == depth) {
+                        blobStart = position;
+                    }
+                    boolean empty = skipTag();
+                    if(!empty) {
+                        level++;
+                    } else if(level == depth && blobStart >= 0) {
+                        return blob(position);
+                    }
+                }
+            }
+        }
+
+        private boolean startsWith(String prefix) {
+            if(!ensure(prefix.length())) {
+                return false;
+            }
+            for(int i = 0; i < prefix.length(); i++) {
+                if(buffer[position + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Moves position past the next occurrence of end or to the end of the input.
+         */
+        private void skipUntil(String end) {
+            position += 2;
+            while(ensure(end.length())) {
+                if(startsWith(end)) {
+                    position += end.length();
+                    return;
+                }
+                position++;
+            }
+            position = limit;
+        }
+
+        /**
+         * Moves position past a doctype or other declaration, which may have an internal subset between [ and ].
+         */
+        private void skipDeclaration() {
+            int brackets = 0;
+            while(ensure(1)) {
+                char c = buffer[position++];
+                if(c == '[') {
+                    brackets++;
+                } else if(c == ']') {
+                    brackets--;
+                } else if(c == '>' && brackets <= 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Moves position past a start or end tag, skipping quoted attribute values.
+         * @return true if the tag is an empty element tag like &lt;nd ref="1"/&gt;
+         */
+        private boolean skipTag() {
+            char quote = 0;
+            char previous = 0;
+            while(ensure(1)) {
+                char c = buffer[position++];
+                if(quote != 0) {
+                    if(c == quote) {
+                        quote = 0;
+                    }
+                } else if(c == '"' || c == '\'') {
+                    quote = c;
+                } else if(c == '>') {
+                    return previous == '/';
+                }
+                previous = c;
+            }
+            return false;
+        }
+    }
+}
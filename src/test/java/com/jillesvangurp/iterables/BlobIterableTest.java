@@ -21,6 +21,7 @@
  */
 package com.jillesvangurp.iterables;
 
+import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -28,7 +29,12 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.hamcrest.CoreMatchers;
 import org.testng.annotations.DataProvider;
@@ -80,4 +86,63 @@ public class BlobIterableTest {
 			reader.close();
 		}
 	}
+
+	public void shouldFindTagsAcrossBufferBoundaries() {
+		Random random = new Random(42);
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			// noise with partial tags, then a blob of random size
+			content.append("<<no <nod </node> ");
+			content.append("<node id=\"").append(i).append("\">");
+			for (int j = random.nextInt(200); j > 0; j--) {
+				content.append((char) ('a' + random.nextInt(26)));
+			}
+			content.append("</node>\n");
+		}
+		List<String> expected = blobs(content.toString(), "<node", "</node>");
+		assertThat(expected.size(), is(300));
+		for (int bufferSize : new int[] { 1, 2, 3, 7, 64, 4096 }) {
+			List<String> blobs = new ArrayList<>();
+			for (String blob : new BlobIterable(new StringReader(content.toString()), new String[] { "<node" }, new String[] { "</node>" }, bufferSize)) {
+				blobs.add(blob);
+			}
+			assertThat("bufferSize " + bufferSize, blobs, equalTo(expected));
+		}
+	}
+
+	public void shouldFindSeveralKindsOfBlobs() {
+		String osm = "<osm><node id=\"1\"/></node><way id=\"2\"><nd ref=\"1\"/></way><relation/></relation><node id=\"3\"></node></osm>";
+		for (int bufferSize : new int[] { 1, 5, 1024 }) {
+			List<String> blobs = new ArrayList<>();
+			for (String blob : new BlobIterable(new StringReader(osm), new String[] { "<node", "<way", "<relation" },
+					new String[] { "</node>", "</way>", "</relation>" }, bufferSize)) {
+				blobs.add(blob);
+			}
+			assertThat(blobs, equalTo(Arrays.asList("<node id=\"1\"/></node>", "<way id=\"2\"><nd ref=\"1\"/></way>", "<relation/></relation>",
+					"<node id=\"3\"></node>")));
+		}
+	}
+
+	public void shouldIgnoreUnterminatedBlob() {
+		List<String> blobs = new ArrayList<>();
+		for (String blob : new BlobIterable(new StringReader("<i>1</i><i>2"), "<i>", "</i>")) {
+			blobs.add(blob);
+		}
+		assertThat(blobs, equalTo(Arrays.asList("<i>1</i>")));
+	}
+
+	private static List<String> blobs(String content, String open, String close) {
+		List<String> blobs = new ArrayList<>();
+		int start;
+		int from = 0;
+		while ((start = content.indexOf(open, from)) >= 0) {
+			int end = content.indexOf(close, start + open.length());
+			if (end < 0) {
+				break;
+			}
+			blobs.add(content.substring(start, end + close.length()));
+			from = end + close.length();
+		}
+		return blobs;
+	}
 }
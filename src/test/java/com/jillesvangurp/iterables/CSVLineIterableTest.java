@@ -1,13 +1,20 @@
 package com.jillesvangurp.iterables;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.testng.annotations.Test;
 
@@ -30,4 +37,223 @@ public class CSVLineIterableTest {
             throw e;
         }
     }
+
+    @Test
+    public void shouldParseQuotedFields() {
+        String csv = "a, \"b,c\" ,\"say \"\"hi\"\"\"\n"
+                + "\"multi\nline\",\" x \",\n"
+                + "\"\",,  d  \n";
+        List<List<String>> records = new ArrayList<>();
+        for(List<String> fields: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',')) {
+            records.add(fields);
+        }
+        assertThat(records.size(), is(3));
+        assertThat(records.get(0), equalTo(Arrays.asList("a", "b,c", "say \"hi\"")));
+        assertThat(records.get(1), equalTo(Arrays.asList("multi\nline", " x ", "")));
+        assertThat(records.get(2), equalTo(Arrays.asList("", "", "d")));
+    }
+
+    @Test
+    public void shouldTrimUnicodeWhitespace() {
+        // like Guava's CharMatcher.WHITESPACE, which includes non-breaking spaces
+        String csv = "\u00a0a\u2007,\u3000\"b\"\u202f\n";
+        for(List<String> fields: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',')) {
+            assertThat(fields, equalTo(Arrays.asList("a", "b")));
+        }
+    }
+
+    @Test
+    public void shouldKeepTextAfterClosingQuote() {
+        String csv = "\"a\" b,\"c\"d ,\"e\" \"f\"\n";
+        for(List<String> fields: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',')) {
+            assertThat(fields, equalTo(Arrays.asList("a b", "cd", "e \"f\"")));
+        }
+    }
+
+    @Test
+    public void shouldReuseRecord() {
+        String csv = "1;foo;bar\n2;'x;y';baz\n";
+        Iterator<CsvRecord> it = new CSVLineIterable(new LineIterable(new StringReader(csv)), ';', '\'').records().iterator();
+        CsvRecord first = it.next();
+        assertThat(first.size(), is(3));
+        assertThat(first.fieldEquals(1, "foo"), is(true));
+        assertThat(first.get(2), is("bar"));
+        CsvRecord second = it.next();
+        assertThat(second, sameInstance(first));
+        assertThat(second.get(1), is("x;y"));
+        assertThat(second.length(2), is(3));
+        assertThat(second.charAt(2, 0), is('b'));
+        assertThat(second.get(2), is("baz"));
+        assertThat(it.hasNext(), is(false));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldFailOnUnterminatedQuote() {
+        for(CsvRecord record: new CSVLineIterable(new LineIterable(new StringReader("a,\"b\nc\n")), ',').records()) {
+            record.get(0);
+        }
+    }
+
+    @Test
+    public void shouldOnlyParseProjectedColumns() {
+        String csv = "a,b,c,d\n\"e\",\"f\nf\",g,\"h,\nh\"\ni\n";
+        List<List<String>> records = new ArrayList<>();
+        for(List<String> fields: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withColumns(2, 0)) {
+            records.add(fields);
+        }
+        assertThat(records.size(), is(3));
+        assertThat(records.get(0), equalTo(Arrays.asList("c", "a")));
+        assertThat(records.get(1), equalTo(Arrays.asList("g", "e")));
+        assertThat(records.get(2), equalTo(Arrays.asList("", "i")));
+    }
+
+    @Test
+    public void shouldFilterOnRawFields() {
+        String csv = "1,de,\"x\ny\"\n2,nl,z\n3,de,\" w \"\n4,\"d\ne\",v\n";
+        List<List<String>> records = new ArrayList<>();
+        CSVLineIterable iterable = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withColumns(0, 2).withFilter(1, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                return field.length() == 2 && field.charAt(0) == 'd' && field.charAt(1) == 'e';
+            }
+        });
+        for(List<String> fields: iterable) {
+            records.add(fields);
+        }
+        assertThat(records.size(), is(2));
+        assertThat(records.get(0), equalTo(Arrays.asList("1", "x\ny")));
+        assertThat(records.get(1), equalTo(Arrays.asList("3", " w ")));
+    }
+
+    @Test
+    public void shouldCombineFiltersWithoutProjection() {
+        String csv = "1,a\n2,b\n3,c\n4,d\n";
+        CSVLineIterable iterable = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withFilter(0, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                return field.charAt(0) > '1';
+            }
+        }).withFilter(0, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                return field.charAt(0) < '4';
+            }
+        });
+        List<String> values = new ArrayList<>();
+        for(CsvRecord record: iterable.records()) {
+            values.add(record.get(1));
+        }
+        assertThat(values, equalTo(Arrays.asList("b", "c")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldNotAllowDuplicateColumns() {
+        new CSVLineIterable(new LineIterable(new StringReader("")), ',').withColumns(1, 1);
+    }
+
+    @Test
+    public void shouldParseTypedFields() {
+        String csv = "42,-9223372036854775808,3.25,TRUE,-0.001,1e3,0.1234567890123456789\n";
+        CsvRecord record = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').records().iterator().next();
+        assertThat(record.getInt(0), is(42));
+        assertThat(record.getLong(0), is(42L));
+        assertThat(record.getLong(1), is(Long.MIN_VALUE));
+        assertThat(record.getDouble(2), is(3.25));
+        assertThat(record.getBoolean(3), is(true));
+        assertThat(record.getDouble(4), is(-0.001));
+        assertThat(record.getDouble(5), is(1000.0));
+        assertThat(record.getDouble(6), is(0.1234567890123456789));
+    }
+
+    @Test
+    public void shouldParseDoublesLikeParseDouble() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < 10000; i++) {
+            csv.append(random.nextInt(100000) / 100.0).append(',').append(random.nextDouble() * 1000).append(',').append(random.nextLong() % 10000000000000L / 1e7).append('\n');
+        }
+        for(CsvRecord record: new CSVLineIterable(new LineIterable(new StringReader(csv.toString())), ',').records()) {
+            for(int i = 0; i < record.size(); i++) {
+                assertThat(record.getDouble(i), is(Double.parseDouble(record.get(i))));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidNumbers() {
+        String csv = "2147483648,9223372036854775808,12a,,maybe\n";
+        CsvRecord record = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').records().iterator().next();
+        for(int i = 0; i < 4; i++) {
+            try {
+                record.getInt(i);
+                throw new AssertionError("expected NumberFormatException for " + record.get(i));
+            } catch(NumberFormatException e) {
+                // expected
+            }
+        }
+        assertThat(record.getLong(0), is(2147483648L));
+        try {
+            record.getBoolean(4);
+            throw new AssertionError("expected IllegalArgumentException");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldResolveSchemaFromHeader() {
+        String csv = "name,id,price,active\nfoo,1,9.99,true\nbar,2,0.5,false\n";
+        CsvSchema schema = new CsvSchema().column("id", CsvSchema.Type.LONG).column("price", CsvSchema.Type.DOUBLE).column("active", CsvSchema.Type.BOOLEAN);
+        int id = schema.index("id");
+        int price = schema.index("price");
+        int active = schema.index("active");
+        long ids = 0;
+        double total = 0;
+        int activeCount = 0;
+        for(CsvRecord record: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, true).records()) {
+            assertThat(record.size(), is(3));
+            ids += record.getLong(id);
+            total += record.getDouble(price);
+            if(record.getBoolean(active)) {
+                activeCount++;
+            }
+        }
+        assertThat(ids, is(3L));
+        assertThat(total, is(9.99 + 0.5));
+        assertThat(activeCount, is(1));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldFailOnMissingSchemaColumn() {
+        String csv = "name,id\nfoo,1\n";
+        CsvSchema schema = new CsvSchema().column("price", CsvSchema.Type.DOUBLE);
+        new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, true).records().iterator();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldValidateFirstRecordAgainstSchema() {
+        String csv = "id,price\n1,cheap\n2,3.5\n";
+        CsvSchema schema = new CsvSchema().column("id", CsvSchema.Type.LONG).column("price", CsvSchema.Type.DOUBLE);
+        new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, true).records().iterator().hasNext();
+    }
+
+    @Test
+    public void shouldAllowEmptyFieldsInFirstRecord() {
+        String csv = "1,\n2,3.5\n";
+        CsvSchema schema = new CsvSchema().column("id", CsvSchema.Type.LONG).column("price", CsvSchema.Type.DOUBLE);
+        List<String> prices = new ArrayList<>();
+        for(CsvRecord record: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, false).records()) {
+            prices.add(record.get(1));
+        }
+        assertThat(prices, equalTo(Arrays.asList("", "3.5")));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldEnforceDeclaredTypeInGetters() {
+        String csv = "1,2.5\n";
+        CsvSchema schema = new CsvSchema().column("id", CsvSchema.Type.LONG).column("price", CsvSchema.Type.DOUBLE);
+        CsvRecord record = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, false).records().iterator().next();
+        assertThat(record.getLong(0), is(1L));
+        record.getDouble(0);
+    }
 }
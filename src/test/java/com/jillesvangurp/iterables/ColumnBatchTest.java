@@ -0,0 +1,135 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ColumnBatchTest {
+    private final CsvSchema schema = new CsvSchema()
+            .column("id", CsvSchema.Type.LONG)
+            .column("count", CsvSchema.Type.INT)
+            .column("price", CsvSchema.Type.DOUBLE)
+            .column("country", CsvSchema.Type.STRING)
+            .column("active", CsvSchema.Type.BOOLEAN);
+
+    public void shouldDecodeColumns() {
+        String csv = "country,id,price,count,active,ignored\n"
+                + "de,1,1.5,10,true,x\n"
+                + "nl,2,,20,false,y\n"
+                + ",3,2.5,,true,z\n"
+                + "de,4,0.25,40,,w\n";
+        Iterable<ColumnBatch> batches = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, true).batches();
+        int count = 0;
+        for(ColumnBatch batch: batches) {
+            count++;
+            assertThat(batch.size(), is(4));
+            assertThat(Arrays.copyOf(batch.longs(0), 4), equalTo(new long[] {1, 2, 3, 4}));
+            assertThat(Arrays.copyOf(batch.ints(1), 4), equalTo(new int[] {10, 20, 0, 40}));
+            assertThat(batch.isNull(1, 2), is(true));
+            assertThat(batch.nullCount(1), is(1));
+            assertThat(batch.isNull(2, 1), is(true));
+            assertThat(batch.getString(3, 0), is("de"));
+            assertThat(batch.getString(3, 1), is("nl"));
+            assertThat(batch.getString(3, 2), nullValue());
+            assertThat(batch.codes(3)[3], is(batch.codes(3)[0]));
+            assertThat(batch.dictionary(3), equalTo(Arrays.asList("de", "nl")));
+            assertThat(batch.booleans(4)[0], is(true));
+            assertThat(batch.count(4), is(3));
+
+            assertThat(batch.sumLong(0), is(10L));
+            assertThat(batch.sumLong(1), is(70L));
+            assertThat(batch.minLong(1), is(10L));
+            assertThat(batch.maxLong(1), is(40L));
+            assertThat(batch.sumDouble(2), is(4.25));
+            assertThat(batch.minDouble(2), is(0.25));
+            assertThat(batch.maxDouble(2), is(2.5));
+        }
+        assertThat(count, is(1));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldNotAllowWrongColumnType() {
+        String csv = "id,count,price,country,active\n1,2,3.0,de,true\n";
+        for(ColumnBatch batch: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, true).batches()) {
+            batch.doubles(0);
+        }
+    }
+
+    public void shouldLeaveBatchUnchangedWhenRowFails() {
+        String csv = "1,10,1.5,de,true\n,abc,,,\n2,20,2.5,nl,false\n";
+        Iterator<CsvRecord> records = new CSVLineIterable(new LineIterable(new StringReader(csv)), ',').withSchema(schema, false).records().iterator();
+        ColumnBatch batch = new ColumnBatch(schema, 8);
+        batch.add(records.next());
+        try {
+            // the empty id is seen before the count fails to parse
+            batch.add(records.next());
+            throw new AssertionError("expected NumberFormatException");
+        } catch(NumberFormatException e) {
+            // expected
+        }
+        assertThat(batch.size(), is(1));
+        batch.add(records.next());
+        assertThat(batch.size(), is(2));
+        for(int column = 0; column < schema.size(); column++) {
+            assertThat(batch.nullCount(column), is(0));
+            assertThat(batch.isNull(column, 1), is(false));
+        }
+        assertThat(batch.sumLong(0), is(3L));
+        assertThat(batch.getString(3, 1), is("nl"));
+    }
+
+    public void shouldAggregateBatches() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder();
+        int rows = 10000;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        double doubleSum = 0;
+        int nonNull = 0;
+        String[] countries = {"de", "nl", "fr", "uk"};
+        for(int i = 0; i < rows; i++) {
+            int count = random.nextInt(1000) - 500;
+            boolean nullCount = random.nextInt(10) == 0;
+            double price = random.nextInt(100000) / 100.0;
+            csv.append(i).append(',').append(nullCount ? "" : String.valueOf(count)).append(',').append(price).append(',')
+                .append(countries[i % countries.length]).append(',').append(i % 2 == 0).append('\n');
+            if(!nullCount) {
+                sum += count;
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+                nonNull++;
+            }
+            doubleSum += price;
+        }
+        assertThat(Iterables.reduce(Iterables.map(batches(csv), ColumnAggregates.sumLong(1)), Reducers.sum(Long.class)), is(sum));
+        assertThat(Iterables.reduce(Iterables.map(batches(csv), ColumnAggregates.minLong(1)), Reducers.min(Long.class)), is(min));
+        assertThat(Iterables.reduce(Iterables.map(batches(csv), ColumnAggregates.maxLong(1)), Reducers.max(Long.class)), is(max));
+        assertThat(Iterables.reduce(Iterables.map(batches(csv), ColumnAggregates.count(1)), Reducers.sum(Long.class)), is((long) nonNull));
+        double total = Iterables.reduce(Iterables.map(batches(csv), ColumnAggregates.sumDouble(2)), Reducers.sum(Double.class));
+        assertThat(Math.abs(total - doubleSum) < 0.001, is(true));
+
+        int batchCount = 0;
+        long rowCount = 0;
+        for(ColumnBatch batch: batches(csv)) {
+            batchCount++;
+            rowCount += batch.size();
+            assertThat(batch.dictionary(3).size(), is(countries.length));
+        }
+        assertThat(batchCount, is(3));
+        assertThat(rowCount, is((long) rows));
+    }
+
+    private Iterable<ColumnBatch> batches(CharSequence csv) {
+        return new CSVLineIterable(new LineIterable(new StringReader(csv.toString())), ',').withSchema(schema, false).batches();
+    }
+}
@@ -2,10 +2,23 @@ package com.jillesvangurp.iterables;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -45,4 +58,438 @@ public class ConcurrentProcessingIterableTest {
             e.printStackTrace();
         }
     }
+
+    @Test(dataProvider="sizes")
+    public void shouldPreserveOrderInOrderedMode(int totalInput) throws IOException {
+        List<Integer> input = new ArrayList<>(totalInput);
+        for(int i=0; i< totalInput;i++) {
+            input.add(i);
+        }
+
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyOrdered(input, new Processor<Integer, Integer>() {
+
+            @Override
+            public Integer process(Integer input) {
+                if(input % 97 == 0) {
+                    // make some blocks finish out of order
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                return input;
+            }
+        }, 7, 8, 10, 20)){
+            int expected=0;
+            for(Integer o:cpi) {
+                assertThat(o, is(expected++));
+            }
+            assertThat(expected, is(totalInput));
+        }
+    }
+
+    @Test
+    public void shouldNotLetSlowBlockStallOtherWorkersInOrderedMode() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 100;i++) {
+            input.add(i);
+        }
+        final AtomicInteger processedWhileFirstBlockWasSlow = new AtomicInteger();
+        final AtomicInteger firstBlockDone = new AtomicInteger();
+
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyOrdered(input, new Processor<Integer, Integer>() {
+
+            @Override
+            public Integer process(Integer input) {
+                if(input == 0) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    firstBlockDone.set(1);
+                } else if(firstBlockDone.get() == 0) {
+                    processedWhileFirstBlockWasSlow.incrementAndGet();
+                }
+                return input;
+            }
+        }, 1, 4, 10, 5)){
+            int expected=0;
+            for(Integer o:cpi) {
+                assertThat(o, is(expected++));
+            }
+            assertThat(expected, is(100));
+            // the other workers continue until the reorder buffer of 5 blocks is full
+            assertThat(processedWhileFirstBlockWasSlow.get(), is(4));
+        }
+    }
+
+    @Test(expectedExceptions=IllegalStateException.class)
+    public void shouldPropagateFailureToReadInput() throws IOException {
+        Iterable<Integer> failingInput = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    int i=0;
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if(i == 100) {
+                            throw new IllegalStateException("could not read line");
+                        }
+                        return i++;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(failingInput, identity(), 10, 4, 10)) {
+            Iterables.consume(cpi);
+        }
+    }
+
+    @DataProvider
+    private Object[][] orders() {
+        return new Object[][] {{true}, {false}};
+    }
+
+    @Test(dataProvider="orders", timeOut=5000)
+    public void shouldPropagateFailureOfWorker(boolean ordered) throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 1000;i++) {
+            input.add(i);
+        }
+        // used to kill the worker without telling the consumer, which then waited forever
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = new ConcurrentProcessingIterable<>(input, identity(), 10, 4, 10, ordered, 5).withListener(failingOnceListener())) {
+            Iterables.consume(cpi);
+            throw new AssertionError("expected the failure to be rethrown");
+        } catch(IllegalStateException e) {
+            assertThat(e.getCause().getMessage(), is("listener failed"));
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldStopIteratingAfterAbort() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 100000;i++) {
+            input.add(i);
+        }
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input, identity(), 10, 4, 2)) {
+            Iterator<Integer> it = cpi.iterator();
+            it.next();
+            cpi.abort();
+            assertThat(it.hasNext(), is(false));
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldCompleteSmallInputsWithoutDelay() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 10;i++) {
+            input.add(i);
+        }
+        // used to take at least 200ms each to detect the end of the input
+        for(int i=0; i<100; i++) {
+            try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input, identity(), 3, 4, 10)) {
+                assertThat(Iterables.count(cpi), is(10l));
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotShutDownExternalExecutor() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 1000;i++) {
+            input.add(i);
+        }
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for(int i=0; i<3; i++) {
+                try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input, identity(), 10, 4, 10, executor)) {
+                    assertThat(Iterables.count(cpi), is(1000l));
+                }
+                assertThat(executor.isShutdown(), is(false));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut=20000)
+    public void shouldRunEachItemInItsOwnTaskInTaskPerBlockMode() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 1000;i++) {
+            input.add(i);
+        }
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        Processor<Integer, Integer> slowIo = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                int current = inFlight.incrementAndGet();
+                int max;
+                while((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                inFlight.decrementAndGet();
+                return input;
+            }
+        };
+        long start = System.currentTimeMillis();
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyOnVirtualThreads(input, slowIo, 1, 500, 1000)) {
+            assertThat(Iterables.count(cpi), is(1000l));
+        }
+        // sequentially, this would take 50 seconds
+        assertThat(System.currentTimeMillis() - start < 10000, is(true));
+        assertThat(maxInFlight.get() <= 500, is(true));
+        assertThat(maxInFlight.get() > 10, is(true));
+    }
+
+    @Test(dataProvider="sizes")
+    public void shouldPreserveOrderInTaskPerBlockMode(int totalInput) throws IOException {
+        List<Integer> input = new ArrayList<>(totalInput);
+        for(int i=0; i< totalInput;i++) {
+            input.add(i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = new ConcurrentProcessingIterable<>(input, identity(), 10, 4, 10, true, 8, executor, true)) {
+            int expected=0;
+            for(Integer o:cpi) {
+                assertThat(o, is(expected++));
+            }
+            assertThat(expected, is(totalInput));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldPropagateFailureOfTaskInOrderedTaskPerBlockMode() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 1000;i++) {
+            input.add(i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        // the consumer used to wait forever for the sequence number of the failed block
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = new ConcurrentProcessingIterable<>(input, identity(), 10, 4, 10, true, 5, executor, true).withListener(failingOnceListener())) {
+            Iterables.consume(cpi);
+            throw new AssertionError("expected the failure to be rethrown");
+        } catch(IllegalStateException e) {
+            assertThat(e.getCause().getMessage(), is("listener failed"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldPropagateShutdownOfExecutorInOrderedTaskPerBlockMode() throws Exception {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 4;i++) {
+            input.add(i);
+        }
+        final CountDownLatch started = new CountDownLatch(4);
+        Processor<Integer, Integer> blocking = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // shut down
+                }
+                return input;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = new ConcurrentProcessingIterable<>(input, blocking, 1, 4, 10, true, 8, executor, true)) {
+            Iterator<Integer> it = cpi.iterator();
+            started.await();
+            // interrupts the producer while it waits for the tasks to complete
+            executor.shutdownNow();
+            while(it.hasNext()) {
+                it.next();
+            }
+            throw new AssertionError("expected the interrupt to be rethrown");
+        } catch(IllegalStateException e) {
+            assertThat(e.getCause() instanceof InterruptedException, is(true));
+        }
+    }
+
+    @Test
+    public void shouldUseLargeBlocksForCheapItemsInAdaptiveMode() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 200000;i++) {
+            input.add(i);
+        }
+        AdaptiveTuning tuning = new AdaptiveTuning(1, 5000, 1, 4, 5, TimeUnit.MILLISECONDS);
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyAdaptive(input, identity(), tuning, 10)) {
+            assertThat(Iterables.count(cpi), is(200000l));
+            // a trivial processor takes far less than 5ms/5000 per item, so the block size should hit the maximum
+            assertThat(cpi.adaptiveController().blockSize(), is(5000));
+        }
+    }
+
+    @Test
+    public void shouldUseSmallBlocksAndMoreWorkersForExpensiveItemsInAdaptiveMode() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 400;i++) {
+            input.add(i);
+        }
+        Processor<Integer, Integer> expensive = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return input;
+            }
+        };
+        AdaptiveTuning tuning = new AdaptiveTuning(1, 5000, 1, 16, 10, TimeUnit.MILLISECONDS);
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyAdaptive(input, expensive, tuning, 10)) {
+            assertThat(Iterables.count(cpi), is(400l));
+            // 10ms blocks of items that take at least 5ms
+            assertThat(cpi.adaptiveController().blockSize(), lessThanOrEqualTo(2));
+        }
+    }
+
+    @Test
+    public void shouldAdjustWorkersToQueuesInAdaptiveMode() throws InterruptedException {
+        AdaptiveTuning tuning = new AdaptiveTuning(1, 5000, 1, 16, 10, TimeUnit.MILLISECONDS);
+        BlockingQueue<Integer> scheduledWork = new ArrayBlockingQueue<>(10);
+        BlockingQueue<Integer> completedWork = new ArrayBlockingQueue<>(10);
+        AdaptiveController controller = new AdaptiveController(tuning, scheduledWork, completedWork);
+        assertThat(controller.activeWorkers(), is(8));
+        // the producer is ahead of the workers
+        while(scheduledWork.offer(0)) {
+        }
+        completeBlocks(controller, 30);
+        // 10ms blocks of 5ms items
+        assertThat(controller.blockSize(), is(2));
+        assertThat(controller.activeWorkers(), is(16));
+        // the consumer is the bottleneck
+        while(completedWork.offer(0)) {
+        }
+        completeBlocks(controller, 30);
+        assertThat(controller.activeWorkers(), is(1));
+    }
+
+    /**
+     * Reports blocks of two 5ms items, each after waiting long enough for the controller to adjust the workers.
+     */
+    private void completeBlocks(AdaptiveController controller, int blocks) throws InterruptedException {
+        for(int i = 0; i < blocks; i++) {
+            Thread.sleep(11);
+            controller.blockCompleted(2, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    @DataProvider
+    private Object[][] waitStrategies() {
+        return new Object[][] {{WaitStrategy.YIELD}, {WaitStrategy.PARK}};
+    }
+
+    @Test(dataProvider="waitStrategies", timeOut=20000)
+    public void shouldProcessAllInputUsingRingBuffers(WaitStrategy waitStrategy) throws IOException {
+        List<Integer> input = new ArrayList<>();
+        long expectedSum=0;
+        for(int i=0; i< 100000;i++) {
+            input.add(i);
+            expectedSum+=i;
+        }
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input, identity(), 3, 8, 5, waitStrategy)) {
+            long sum=0;
+            long count=0;
+            for(Integer i: cpi) {
+                sum+=i;
+                count++;
+            }
+            assertThat(count, is(100000l));
+            assertThat(sum, is(expectedSum));
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldStopIteratingAfterAbortUsingRingBuffers() throws IOException {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< 100000;i++) {
+            input.add(i);
+        }
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input, identity(), 10, 4, 2, WaitStrategy.PARK)) {
+            Iterator<Integer> it = cpi.iterator();
+            it.next();
+            cpi.abort();
+            assertThat(it.hasNext(), is(false));
+        }
+    }
+
+    @Test(dataProvider="sizes")
+    public void shouldReadAndProcessEachPartitionOnItsOwnThread(int totalInput) throws IOException {
+        List<List<Integer>> partitions = new ArrayList<>();
+        for(int p=0; p<4; p++) {
+            partitions.add(new ArrayList<Integer>());
+        }
+        long expectedSum=0;
+        for(int i=0; i< totalInput;i++) {
+            partitions.get(i % 4).add(i);
+            expectedSum+=i;
+        }
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processPartitionsConcurrently(partitions, new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                threads.add(Thread.currentThread().getName());
+                return input;
+            }
+        }, 10, 5)) {
+            long sum=0;
+            long count=0;
+            for(Integer i: cpi) {
+                sum+=i;
+                count++;
+            }
+            assertThat(count, is((long)totalInput));
+            assertThat(sum, is(expectedSum));
+            assertThat(threads.size(), lessThanOrEqualTo(4));
+        }
+    }
+
+    private Processor<Integer, Integer> identity() {
+        return new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                return input;
+            }
+        };
+    }
+
+    /**
+     * @return listener that throws the first time an item is processed
+     */
+    private PipelineListener failingOnceListener() {
+        final AtomicBoolean failed = new AtomicBoolean();
+        return new PipelineMetrics() {
+            @Override
+            public void itemProcessed(long nanos) {
+                if(failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("listener failed");
+                }
+                super.itemProcessed(nanos);
+            }
+        };
+    }
 }
@@ -0,0 +1,188 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ExternalSortingIterableTest {
+    private static final Comparator<Long> NATURAL = new Comparator<Long>() {
+        @Override
+        public int compare(Long o1, Long o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    private File tempDirectory;
+
+    @BeforeMethod
+    public void before() throws IOException {
+        tempDirectory = File.createTempFile("sort", "test");
+        tempDirectory.delete();
+        tempDirectory.mkdirs();
+    }
+
+    @AfterMethod
+    public void after() {
+        for(File file: tempDirectory.listFiles()) {
+            file.delete();
+        }
+        tempDirectory.delete();
+    }
+
+    public void shouldSortInMemory() {
+        List<Long> input = Arrays.asList(3L, 1L, 2L);
+        List<Long> sorted = toList(new ExternalSortingIterable<Long>(input, Serializers.longs(), NATURAL).withTempDirectory(tempDirectory));
+        assertThat(sorted, equalTo(Arrays.asList(1L, 2L, 3L)));
+        assertThat(tempDirectory.list().length, is(0));
+    }
+
+    public void shouldSortRunsOnDisk() {
+        List<Long> input = randomLongs(10000);
+        List<Long> expected = new ArrayList<>(input);
+        Collections.sort(expected);
+        for(boolean compressed: new boolean[] {false, true}) {
+            ExternalSortingIterable<Long> sorting = new ExternalSortingIterable<Long>(input, Serializers.longs(), NATURAL).withRunSize(333).withThreads(3)
+                    .withTempDirectory(tempDirectory).withCompression(compressed);
+            assertThat(toList(sorting), equalTo(expected));
+            // runs are deleted after they are merged
+            assertThat(tempDirectory.list().length, is(0));
+        }
+    }
+
+    public void shouldMergeInSeveralPasses() {
+        List<Long> input = randomLongs(1000);
+        List<Long> expected = new ArrayList<>(input);
+        Collections.sort(expected);
+        ExternalSortingIterable<Long> sorting = new ExternalSortingIterable<Long>(input, Serializers.longs(), NATURAL).withRunSize(10).withMergeWidth(3)
+                .withTempDirectory(tempDirectory);
+        assertThat(toList(sorting), equalTo(expected));
+        assertThat(tempDirectory.list().length, is(0));
+    }
+
+    public void shouldWriteEachElementOncePerPass() {
+        final AtomicInteger writes = new AtomicInteger();
+        Serializer<Long> counting = new Serializer<Long>() {
+            final Serializer<Long> longs = Serializers.longs();
+
+            @Override
+            public void write(Long value, DataOutput out) throws IOException {
+                writes.incrementAndGet();
+                longs.write(value, out);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return longs.read(in);
+            }
+        };
+        List<Long> input = randomLongs(27);
+        List<Long> expected = new ArrayList<>(input);
+        Collections.sort(expected);
+        ExternalSortingIterable<Long> sorting = new ExternalSortingIterable<Long>(input, counting, NATURAL).withRunSize(1).withMergeWidth(3)
+                .withTempDirectory(tempDirectory);
+        assertThat(toList(sorting), equalTo(expected));
+        // 27 runs, merged into 9 and then into 3 runs before the final merge
+        assertThat(writes.get(), is(3 * 27));
+    }
+
+    public void shouldSortStably() {
+        List<List<String>> records = new ArrayList<>();
+        for(List<String> record: new CSVLineIterable(new LineIterable(new StringReader("b,1\na,2\nb,3\na,4\nc,5\na,6\nb,7\n")), ',')) {
+            records.add(record);
+        }
+        Comparator<List<String>> byFirstColumn = new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> o1, List<String> o2) {
+                return o1.get(0).compareTo(o2.get(0));
+            }
+        };
+        ExternalSortingIterable<List<String>> sorting = new ExternalSortingIterable<List<String>>(records, Serializers.stringLists(), byFirstColumn).withRunSize(2)
+                .withMergeWidth(2).withTempDirectory(tempDirectory);
+        StringBuilder order = new StringBuilder();
+        for(List<String> record: sorting) {
+            order.append(record.get(0)).append(record.get(1));
+        }
+        assertThat(order.toString(), is("a2a4a6b1b3b7c5"));
+    }
+
+    public void shouldDeleteRunsOnClose() throws IOException {
+        try (ExternalSortingIterable<Long> sorting = new ExternalSortingIterable<Long>(randomLongs(100), Serializers.longs(), NATURAL).withRunSize(10)
+                .withTempDirectory(tempDirectory)) {
+            assertThat(sorting.iterator().hasNext(), is(true));
+            assertThat(tempDirectory.list().length, is(10));
+        }
+        assertThat(tempDirectory.list().length, is(0));
+    }
+
+    public void shouldCloseRunsThatAreBeingReadOnClose() throws IOException {
+        Iterator<Long> it;
+        try (ExternalSortingIterable<Long> sorting = new ExternalSortingIterable<Long>(randomLongs(100), Serializers.longs(), NATURAL).withRunSize(10)
+                .withTempDirectory(tempDirectory)) {
+            it = sorting.iterator();
+            it.next();
+        }
+        try {
+            while(it.hasNext()) {
+                it.next();
+            }
+            throw new AssertionError("expected the runs to be closed");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void shouldSerializeStrings() {
+        StringBuilder large = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            large.append("é");
+        }
+        List<String> input = Arrays.asList("b", "", large.toString(), "aé中");
+        List<String> expected = new ArrayList<>(input);
+        Collections.sort(expected);
+        Comparator<String> natural = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+        };
+        assertThat(toList(new ExternalSortingIterable<String>(input, Serializers.strings(), natural).withRunSize(1).withTempDirectory(tempDirectory)),
+                equalTo(expected));
+    }
+
+    private static List<Long> randomLongs(int count) {
+        Random random = new Random(42);
+        List<Long> longs = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            // include negative and large values
+            longs.add(random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(1000) - 500);
+        }
+        return longs;
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        for(T t: iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+}
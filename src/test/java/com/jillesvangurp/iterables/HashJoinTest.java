@@ -0,0 +1,105 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.jillesvangurp.iterables.SortMergeJoin.JoinType;
+
+@Test
+public class HashJoinTest {
+    private final List<Long> left = Arrays.asList(6L, 2L, 1L, 4L, 2L, 6L);
+    private final List<Long> right = Arrays.asList(4L, 2L, 7L, 0L, 4L, 3L, 4L);
+
+    private static final LongKeyExtractor<Long> IDENTITY = new LongKeyExtractor<Long>() {
+        @Override
+        public long key(Long value) {
+            return value;
+        }
+    };
+
+    public void shouldInnerJoin() {
+        List<String> groups = groups(HashJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, JoinType.INNER));
+        assertThat(groups, equalTo(Arrays.asList("[2]:[2]", "[4]:[4, 4, 4]", "[2]:[2]")));
+    }
+
+    public void shouldLeftJoin() {
+        List<String> groups = groups(HashJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, JoinType.LEFT));
+        assertThat(groups, equalTo(Arrays.asList("[6]:[]", "[2]:[2]", "[1]:[]", "[4]:[4, 4, 4]", "[2]:[2]", "[6]:[]")));
+    }
+
+    public void shouldFullJoin() {
+        List<String> groups = groups(HashJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, JoinType.FULL));
+        assertThat(groups.subList(0, 6), equalTo(Arrays.asList("[6]:[]", "[2]:[2]", "[1]:[]", "[4]:[4, 4, 4]", "[2]:[2]", "[6]:[]")));
+        List<String> unmatched = new ArrayList<>(groups.subList(6, groups.size()));
+        Collections.sort(unmatched);
+        assertThat(unmatched, equalTo(Arrays.asList("[]:[0]", "[]:[3]", "[]:[7]")));
+    }
+
+    public void shouldJoinManyKeys() {
+        List<Long> build = new ArrayList<>();
+        for(long i = 0; i < 100000; i++) {
+            // sparse and negative keys, every key twice
+            build.add(i * 7919 - 300000);
+            build.add(i * 7919 - 300000);
+        }
+        List<Long> probe = Arrays.asList(-300000L, 7919L * 99999 - 300000, 1L, 7919L * 5000 - 300000);
+        HashJoin.Cursor<Long, Long> cursor = HashJoin.joinOnLongKeys(probe, IDENTITY, build, IDENTITY, JoinType.LEFT).cursor();
+        List<Integer> counts = new ArrayList<>();
+        while(cursor.next()) {
+            long key = cursor.left().next();
+            int count = 0;
+            Iterator<Long> matches = cursor.right();
+            while(matches.hasNext()) {
+                assertThat(matches.next(), is(key));
+                count++;
+            }
+            counts.add(count);
+        }
+        assertThat(counts, equalTo(Arrays.asList(2, 2, 0, 2)));
+    }
+
+    public void shouldStreamReusedCsvRecords() {
+        String orders = "1,13\n2,10\n3,11\n4,10\n5,14\n";
+        String customers = "10,alice\n11,bob\n12,carol\n13,dave\n";
+        LongKeyExtractor<CsvRecord> orderCustomer = new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(1);
+            }
+        };
+        LongKeyExtractor<List<String>> customerId = new LongKeyExtractor<List<String>>() {
+            @Override
+            public long key(List<String> record) {
+                return Long.parseLong(record.get(0));
+            }
+        };
+        HashJoin.Cursor<CsvRecord, List<String>> cursor = HashJoin.joinOnLongKeys(
+                new CSVLineIterable(new LineIterable(new StringReader(orders)), ',').records(), orderCustomer,
+                new CSVLineIterable(new LineIterable(new StringReader(customers)), ','), customerId, JoinType.FULL).cursor();
+        List<String> result = new ArrayList<>();
+        while(cursor.next()) {
+            String order = cursor.hasLeft() ? cursor.left().next().get(0) : "-";
+            String customer = cursor.hasRight() ? cursor.right().next().get(1) : "-";
+            result.add(order + "=" + customer);
+        }
+        assertThat(result, equalTo(Arrays.asList("1=dave", "2=alice", "3=bob", "4=alice", "5=-", "-=carol")));
+    }
+
+    private static <L, R> List<String> groups(HashJoin<L, R> join) {
+        List<String> groups = new ArrayList<>();
+        for(SortMergeJoin.Group<L, R> group: join) {
+            groups.add(group.getLeft() + ":" + group.getRight());
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,236 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test
+public class IndexedGzipFileTest {
+    private File file;
+    private byte[] content;
+
+    @BeforeClass
+    public void createFile() throws IOException {
+        file = File.createTempFile("indexed", ".gz");
+        StringBuilder buf = new StringBuilder();
+        Random random = new Random(42);
+        for(int i = 0; i < 50000; i++) {
+            buf.append(i).append('\t').append(random.nextInt(1000)).append("\tsome text that compresses ").append(random.nextInt()).append('\n');
+        }
+        byte[] text = buf.toString().getBytes(Charset.forName("UTF-8"));
+        try(OutputStream out = new FileOutputStream(file)) {
+            // a regular member with dynamic blocks
+            try(OutputStream gzip = new NoCloseGzip(out)) {
+                gzip.write(text, 0, text.length / 2);
+            }
+            // a second member that uses stored and fixed blocks
+            writeMember(out, Arrays.copyOfRange(text, text.length / 2, text.length));
+        }
+        content = read(new GZIPInputStream(new FileInputStream(file)));
+        assertThat(content.length, is(text.length));
+    }
+
+    @AfterClass
+    public void deleteFile() {
+        file.delete();
+        GzipIndex.sidecarFile(file).delete();
+    }
+
+    public void shouldReadFromAnyOffset() throws IOException {
+        GzipIndex index = GzipIndex.build(file, 64 * 1024);
+        assertThat(index.getUncompressedSize(), is((long) content.length));
+        assertThat(index.getCheckpoints().size(), greaterThan(10));
+        try(IndexedGzipFile indexed = new IndexedGzipFile(file, index)) {
+            Random random = new Random(1);
+            for(int i = 0; i < 50; i++) {
+                int offset = i == 0 ? 0 : random.nextInt(content.length);
+                byte[] bytes = read(indexed.open(offset));
+                assertThat(Arrays.equals(bytes, Arrays.copyOfRange(content, offset, content.length)), is(true));
+            }
+            // exactly at each checkpoint
+            for(GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+                int offset = (int) checkpoint.getUncompressedOffset();
+                byte[] bytes = read(indexed.open(offset));
+                assertThat(bytes.length, is(content.length - offset));
+            }
+        }
+    }
+
+    public void shouldWriteAndReadSidecarFile() throws IOException {
+        GzipIndex.sidecarFile(file).delete();
+        GzipIndex built = GzipIndex.load(file);
+        assertThat(GzipIndex.sidecarFile(file).exists(), is(true));
+        GzipIndex loaded = GzipIndex.load(file);
+        assertThat(loaded.getCheckpoints().size(), is(built.getCheckpoints().size()));
+        for(int i = 0; i < built.getCheckpoints().size(); i++) {
+            assertThat(loaded.getCheckpoints().get(i).getLineNumber(), is(built.getCheckpoints().get(i).getLineNumber()));
+        }
+        try(IndexedGzipFile indexed = new IndexedGzipFile(file, loaded)) {
+            int offset = content.length / 3;
+            assertThat(Arrays.equals(read(indexed.open(offset)), Arrays.copyOfRange(content, offset, content.length)), is(true));
+        }
+    }
+
+    public void shouldSplitIntoRangesOfLines() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for(String line : new String(content, Charset.forName("UTF-8")).split("\n")) {
+            expected.add(line);
+        }
+        try(IndexedGzipFile indexed = new IndexedGzipFile(file, GzipIndex.build(file, 100 * 1024))) {
+            for(int partitions : new int[] {1, 3, 8, 1000}) {
+                List<String> lines = new ArrayList<>();
+                for(Iterable<String> range : indexed.split(partitions)) {
+                    for(String line : range) {
+                        lines.add(line);
+                    }
+                }
+                assertThat(lines, is(expected));
+            }
+            try(ConcurrentProcessingIterable<String, String> cpi = Iterables.processPartitionsConcurrently(indexed.split(4), new Processor<String, String>() {
+                @Override
+                public String process(String input) {
+                    return input;
+                }
+            }, 100, 10)) {
+                assertThat(Iterables.count(cpi), is((long) expected.size()));
+            }
+        }
+    }
+
+    public void shouldResumeFromLineLikeIterablesFrom() throws IOException {
+        GzipIndex index = GzipIndex.build(file, 64 * 1024);
+        try(IndexedGzipFile indexed = new IndexedGzipFile(file, index)) {
+            for(long from : new long[] {0, 1, 12345, 25000, 49999, 50000, 60000}) {
+                assertThat(toList(Iterables.from(indexed, from)), is(toList(Iterables.from(LineIterable.openGzipFile(file.getPath()), from))));
+                assertThat(toList(Iterables.filterRange(indexed, from, from + 99)), is(toList(Iterables.filterRange(LineIterable.openGzipFile(file.getPath()), from, from + 99))));
+            }
+            // exactly at each checkpoint
+            for(GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+                long line = checkpoint.getLineNumber();
+                assertThat(toList(Iterables.filterRange(indexed, line, line + 1)), is(toList(Iterables.filterRange(LineIterable.openGzipFile(file.getPath()), line, line + 1))));
+            }
+            assertThat(toList(Iterables.filterRange(indexed, 10, 9)).size(), is(0));
+        }
+        // inflating starts close to the line
+        GzipIndex.Checkpoint checkpoint = index.checkpointForLine(40000);
+        assertThat(checkpoint.getLineNumber() < 40000, is(true));
+        assertThat(checkpoint.getUncompressedOffset() > content.length / 2, is(true));
+    }
+
+    public void shouldCloseRangesThatAreBeingReadOnClose() throws IOException {
+        List<Iterator<String>> iterators = new ArrayList<>();
+        try(IndexedGzipFile indexed = new IndexedGzipFile(file, GzipIndex.build(file, 100 * 1024))) {
+            for(Iterable<String> range : indexed.split(4)) {
+                Iterator<String> it = range.iterator();
+                it.next();
+                iterators.add(it);
+            }
+        }
+        for(Iterator<String> it : iterators) {
+            try {
+                while(it.hasNext()) {
+                    it.next();
+                }
+                throw new AssertionError("expected the range to be closed");
+            } catch(IllegalStateException e) {
+                assertThat(e.getCause().getMessage(), is("stream closed"));
+            }
+        }
+    }
+
+    private static List<String> toList(Iterable<String> iterable) {
+        List<String> list = new ArrayList<>();
+        for(String s : iterable) {
+            list.add(s);
+        }
+        return list;
+    }
+
+    private byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a gzip member that alternates stored, fixed and dynamic blocks.
+     */
+    private void writeMember(OutputStream out, byte[] bytes) throws IOException {
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[64 * 1024];
+        int chunk = 20000;
+        for(int offset = 0, i = 0; offset < bytes.length; offset += chunk, i++) {
+            // no compression gives stored blocks, filtered/huffman only gives other block types
+            deflater.setLevel(i % 3 == 0 ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            deflater.setStrategy(i % 3 == 2 ? Deflater.HUFFMAN_ONLY : Deflater.DEFAULT_STRATEGY);
+            deflater.setInput(bytes, offset, Math.min(chunk, bytes.length - offset));
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, n);
+            } while(n == buffer.length || !deflater.needsInput());
+        }
+        deflater.finish();
+        while(!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, bytes.length);
+    }
+
+    private void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Finishes the gzip member without closing the underlying stream.
+     */
+    private static class NoCloseGzip extends GZIPOutputStream {
+        NoCloseGzip(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.testng.annotations.Test;
 
@@ -89,4 +90,53 @@ public class IterablesTest {
         Integer reduced = mapReduce(l, identityProcessor, Reducers.sum(Integer.class), 5, 10, 100);
         assertThat(reduced, is(666*l.size()));
     }
+
+    public void shouldMapReduceWithManyThreads() {
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        for(int i = 0; i< 100000; i++) {
+            l.add(i);
+        }
+        Processor<Integer,Long> toLong = new Processor<Integer,Long>() {
+
+            @Override
+            public Long process(Integer input) {
+                return input.longValue();
+            }};
+        for(int threads: new int[] {2,3,8,17}) {
+            Long reduced = mapReduce(l, toLong, Reducers.sum(Long.class), 100, threads, 10);
+            assertThat(reduced, is(100000l*99999l/2));
+        }
+    }
+
+    public void shouldMapReducePartitions() {
+        List<List<Integer>> partitions = new ArrayList<>();
+        long expected = 0;
+        for(int p = 0; p < 5; p++) {
+            List<Integer> partition = new ArrayList<>();
+            // one partition without anything in it
+            for(int i = 0; i < p * 1000; i++) {
+                partition.add(i);
+                expected += i;
+            }
+            partitions.add(partition);
+        }
+        Processor<Integer,Long> toLong = new Processor<Integer,Long>() {
+
+            @Override
+            public Long process(Integer input) {
+                return input.longValue();
+            }};
+        assertThat(Iterables.mapReducePartitions(partitions, toLong, Reducers.sum(Long.class)), is(expected));
+    }
+
+    @Test(expectedExceptions=NoSuchElementException.class)
+    public void shouldNotMapReduceEmptyInput() {
+        Processor<Integer,Integer> identityProcessor = new Processor<Integer,Integer>() {
+
+            @Override
+            public Integer process(Integer input) {
+                return input;
+            }};
+        mapReduce(new ArrayList<Integer>(), identityProcessor, Reducers.sum(Integer.class), 5, 10, 100);
+    }
 }
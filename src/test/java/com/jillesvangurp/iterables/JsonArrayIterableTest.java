@@ -0,0 +1,71 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test
+public class JsonArrayIterableTest {
+    @DataProvider
+    public Object[][] bufferSizes() {
+        return new Object[][] { {1}, {2}, {7}, {BlobIterable.DEFAULT_BUFFER_SIZE} };
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void shouldSplitElements(int bufferSize) {
+        String json = " [{\"a\":1,\"b\":[1,2,{\"c\":\"]}\"}]}, [1,[2]],\"x\\\"],[\\\\\" ,\n42,true, null,-1.5e3,{},[] ]";
+        List<String> expected = Arrays.asList("{\"a\":1,\"b\":[1,2,{\"c\":\"]}\"}]}", "[1,[2]]", "\"x\\\"],[\\\\\"", "42", "true", "null", "-1.5e3", "{}", "[]");
+        assertThat(toList(new JsonArrayIterable(new StringReader(json), bufferSize)), equalTo(expected));
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void shouldSplitGeneratedElements(int bufferSize) {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder json = new StringBuilder("\uFEFF[\n");
+        for(int i = 0; i < 500; i++) {
+            StringBuilder element = new StringBuilder("{\"id\":").append(i).append(",\"tags\":[");
+            int tags = random.nextInt(random.nextInt(10) == 0 ? 500 : 5);
+            for(int j = 0; j < tags; j++) {
+                element.append(j == 0 ? "" : ",").append("\"t").append(random.nextInt(3) == 0 ? "\\\"{[" : "é").append(j).append('"');
+            }
+            element.append("]}");
+            expected.add(element.toString());
+            json.append(i == 0 ? "  " : ",\n  ").append(element);
+        }
+        json.append("\n]\n");
+        assertThat(toList(new JsonArrayIterable(new StringReader(json.toString()), bufferSize)), equalTo(expected));
+    }
+
+    public void shouldHandleEmptyInput() {
+        assertThat(toList(new JsonArrayIterable(new StringReader(""))).size(), is(0));
+        assertThat(toList(new JsonArrayIterable(new StringReader(" [ ] "))).size(), is(0));
+    }
+
+    public void shouldIgnoreTruncatedElement() {
+        assertThat(toList(new JsonArrayIterable(new StringReader("[1,{\"a\":[1,2"))), equalTo(Arrays.asList("1")));
+        assertThat(toList(new JsonArrayIterable(new StringReader("[\"a\",\"b"))), equalTo(Arrays.asList("\"a\"")));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectObject() {
+        toList(new JsonArrayIterable(new StringReader("{\"a\":1}")));
+    }
+
+    private static List<String> toList(Iterable<String> iterable) {
+        List<String> list = new ArrayList<>();
+        for(String s: iterable) {
+            list.add(s);
+        }
+        return list;
+    }
+}
@@ -5,9 +5,17 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.testng.annotations.Test;
 
@@ -29,4 +37,35 @@ public class LineIterableTest {
             throw e;
         }
     }
+
+    @Test
+    public void shouldIterateGzipFileWithReadAhead() throws Exception {
+        File file = File.createTempFile("lines", ".gz");
+        try {
+            StringBuilder buf = new StringBuilder();
+            for(int i=0; i<10000;i++) {
+                buf.append("line ").append(i).append(" ü\n");
+            }
+            try(Writer w = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), Charset.forName("UTF-8"))) {
+                w.write(buf.toString());
+            }
+            List<String> expected = new ArrayList<>();
+            try(LineIterable lines = LineIterable.openGzipFile(file.getAbsolutePath())) {
+                for(String line: lines) {
+                    expected.add(line);
+                }
+            }
+            List<String> result = new ArrayList<>();
+            // small buffers so lines span buffers
+            try(LineIterable lines = LineIterable.openGzipFileWithReadAhead(file.getAbsolutePath(), 1000, 2)) {
+                for(String line: lines) {
+                    result.add(line);
+                }
+            }
+            assertThat(expected.size(), equalTo(10000));
+            assertThat(result, equalTo(expected));
+        } finally {
+            file.delete();
+        }
+    }
 }
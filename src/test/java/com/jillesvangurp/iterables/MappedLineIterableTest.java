@@ -0,0 +1,170 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class MappedLineIterableTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @DataProvider
+    private Object[][] windowSizes() {
+        // tiny windows force lines to cross window boundaries and windows to grow
+        return new Object[][] {{1}, {3}, {16}, {MappedLineIterable.DEFAULT_WINDOW_SIZE}};
+    }
+
+    @Test(dataProvider="windowSizes")
+    public void shouldIterateSameLinesAsLineIterable(int windowSize) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for(int i=0; i<1000;i++) {
+            buf.append("line").append(i).append('\t').append("café€");
+            for(int j=0; j<i%50;j++) {
+                buf.append('x');
+            }
+            buf.append(i % 7 == 0 ? "\r\n" : "\n");
+            if(i % 13 == 0) {
+                buf.append('\n');
+            }
+        }
+        buf.append("no newline at the end");
+        String content = buf.toString();
+        assertThat(read(content, windowSize), is(readWithLineIterable(content)));
+    }
+
+    @Test(dataProvider="windowSizes")
+    public void shouldHandleEdgeCases(int windowSize) throws IOException {
+        for(String content: new String[] {"", "\n", "\n\n", "x", "x\n", "\r\n", "one\ntwo\n"}) {
+            assertThat(content, read(content, windowSize), is(readWithLineIterable(content)));
+        }
+    }
+
+    @Test
+    public void shouldProvideByteViewWithoutDecoding() throws IOException {
+        File file = write("a\tb\tc\ndé\te\n");
+        try(MappedLineIterable lines = new MappedLineIterable(file)) {
+            List<ByteLine> result = new ArrayList<>();
+            for(ByteLine line: lines) {
+                result.add(line);
+            }
+            ByteLine first = result.get(0);
+            assertThat(first.byteLength(), is(5));
+            assertThat(first.indexOf((byte)'\t', 0), is(1));
+            assertThat(first.slice(2, 3).toString(), is("b"));
+            assertThat(first.startsWith("a\t".getBytes(UTF8)), is(true));
+            assertThat(first.charAt(4), is('c'));
+            ByteLine second = result.get(1);
+            // é is two bytes in UTF-8
+            assertThat(second.byteLength(), is(5));
+            assertThat(second.length(), is(4));
+            assertThat(second.charAt(1), is('é'));
+            assertThat(second.toString(), is("dé\te"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldIterateMoreThanOnce() throws IOException {
+        File file = write("1\n2\n3\n");
+        try(MappedLineIterable lines = new MappedLineIterable(file)) {
+            assertThat(Iterables.count(lines), is(3l));
+            assertThat(Iterables.count(lines), is(3l));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(dataProvider="windowSizes")
+    public void shouldSplitIntoRangesAlignedOnLines(int windowSize) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for(int i=0; i<500;i++) {
+            buf.append("line").append(i);
+            for(int j=0; j<i%30;j++) {
+                buf.append('x');
+            }
+            buf.append('\n');
+        }
+        String content = buf.toString();
+        List<String> expected = readWithLineIterable(content);
+        File file = write(content);
+        try(MappedLineIterable lines = new MappedLineIterable(file, UTF8, windowSize)) {
+            for(int partitions: new int[] {1, 2, 3, 7, 100, 10000}) {
+                List<MappedLineIterable> ranges = lines.split(partitions);
+                assertThat(ranges.size(), lessThanOrEqualTo(partitions));
+                List<String> result = new ArrayList<>();
+                for(MappedLineIterable range: ranges) {
+                    long count = 0;
+                    for(ByteLine line: range) {
+                        result.add(line.toString());
+                        count++;
+                    }
+                    assertThat(count, greaterThan(0l));
+                }
+                assertThat(result, is(expected));
+            }
+            // ranges can be split again
+            List<String> result = new ArrayList<>();
+            for(MappedLineIterable range: lines.split(3)) {
+                for(MappedLineIterable subRange: range.split(3)) {
+                    for(ByteLine line: subRange) {
+                        result.add(line.toString());
+                    }
+                }
+            }
+            assertThat(result, is(expected));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldNotSplitEmptyFile() throws IOException {
+        File file = write("");
+        try(MappedLineIterable lines = new MappedLineIterable(file)) {
+            assertThat(lines.split(4).size(), is(0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private List<String> read(String content, int windowSize) throws IOException {
+        File file = write(content);
+        try(MappedLineIterable lines = new MappedLineIterable(file, UTF8, windowSize)) {
+            List<String> result = new ArrayList<>();
+            for(ByteLine line: lines) {
+                result.add(line.toString());
+            }
+            return result;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private List<String> readWithLineIterable(String content) throws IOException {
+        List<String> result = new ArrayList<>();
+        try(LineIterable lines = new LineIterable(new StringReader(content))) {
+            for(String line: lines) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    private File write(String content) throws IOException {
+        File file = File.createTempFile("mappedlines", ".txt");
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file;
+    }
+}
@@ -5,6 +5,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -26,4 +29,21 @@ public class MergingCsvIterableTest {
         assertThat(iterator.next().size(), equalTo(1));
         assertThat(iterator.next().size(), equalTo(3));
     }
+
+    public void shouldMergeDuplicatePrimaryKeys() {
+        String primaryWithDuplicates = "1\tfoo\n2\tbar\n2\tbaz\n5\tqux\n";
+        CSVLineIterable primaryCsvIterable = new CSVLineIterable(new LineIterable(new StringReader(primaryWithDuplicates)), '\t');
+        CSVLineIterable secondaryCsvIterable = new CSVLineIterable(new LineIterable(new StringReader(secondary)), '\t');
+
+        List<List<List<String>>> merged = new ArrayList<>();
+        for(List<List<String>> records: new MergingCsvIterable(primaryCsvIterable, secondaryCsvIterable, 0, 1)) {
+            merged.add(records);
+        }
+        assertThat(merged.size(), equalTo(4));
+        assertThat(merged.get(1).get(0), equalTo(Arrays.asList("2", "bar")));
+        assertThat(merged.get(1).subList(1, 3), equalTo(Arrays.asList(Arrays.asList("y", "2", "bar"), Arrays.asList("z", "2", "foobar"))));
+        assertThat(merged.get(2).get(0), equalTo(Arrays.asList("2", "baz")));
+        assertThat(merged.get(2).size(), equalTo(3));
+        assertThat(merged.get(3).size(), equalTo(1));
+    }
 }
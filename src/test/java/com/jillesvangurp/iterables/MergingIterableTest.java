@@ -0,0 +1,122 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+@Test
+public class MergingIterableTest {
+    private static final LongKeyExtractor<Long> IDENTITY = new LongKeyExtractor<Long>() {
+        @Override
+        public long key(Long value) {
+            return value;
+        }
+    };
+
+    private static final Comparator<Long> NATURAL = new Comparator<Long>() {
+        @Override
+        public int compare(Long o1, Long o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    public void shouldMergeSortedLists() {
+        List<List<Long>> inputs = Arrays.asList(Arrays.asList(1L, 4L, 9L), Arrays.asList(2L, 3L, 10L, 11L), Collections.<Long>emptyList(), Arrays.asList(0L, 5L));
+        List<Long> expected = Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 9L, 10L, 11L);
+        assertThat(toList(MergingIterable.onLongKeys(inputs, IDENTITY)), equalTo(expected));
+        assertThat(toList(Iterables.merge(inputs, NATURAL)), equalTo(expected));
+    }
+
+    public void shouldMergeAnyNumberOfInputs() {
+        Random random = new Random(42);
+        for(int k = 0; k <= 70; k++) {
+            List<List<Long>> inputs = new ArrayList<>();
+            List<Long> expected = new ArrayList<>();
+            for(int i = 0; i < k; i++) {
+                List<Long> input = new ArrayList<>();
+                int size = random.nextInt(20);
+                for(int j = 0; j < size; j++) {
+                    input.add((long) random.nextInt(100));
+                }
+                Collections.sort(input);
+                inputs.add(input);
+                expected.addAll(input);
+            }
+            Collections.sort(expected);
+            assertThat("k=" + k, toList(MergingIterable.onLongKeys(inputs, IDENTITY)), equalTo(expected));
+            assertThat("k=" + k, toList(new MergingIterable<Long>(inputs, NATURAL)), equalTo(expected));
+        }
+    }
+
+    public void shouldReturnEqualKeysInInputOrder() {
+        Comparator<String> byKey = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.substring(0, 1).compareTo(o2.substring(0, 1));
+            }
+        };
+        List<List<String>> inputs = Arrays.asList(Arrays.asList("a0", "b0"), Arrays.asList("b1", "c1"), Arrays.asList("a2", "b2", "b2"));
+        assertThat(toList(new MergingIterable<String>(inputs, byKey)), equalTo(Arrays.asList("a0", "a2", "b0", "b1", "b2", "b2", "c1")));
+        assertThat(toList(new MergingIterable<String>(inputs, byKey).withoutDuplicates()), equalTo(Arrays.asList("a0", "b0", "c1")));
+        List<String> groups = new ArrayList<>();
+        for(List<String> group: new MergingIterable<String>(inputs, byKey).groups()) {
+            groups.add(group.toString());
+        }
+        assertThat(groups, equalTo(Arrays.asList("[a0, a2]", "[b0, b1, b2, b2]", "[c1]")));
+    }
+
+    public void shouldRemoveDuplicateLongKeys() {
+        List<List<Long>> inputs = Arrays.asList(Arrays.asList(1L, 1L, 3L), Arrays.asList(1L, 2L, 3L), Arrays.asList(3L, 4L));
+        assertThat(toList(MergingIterable.onLongKeys(inputs, IDENTITY).withoutDuplicates()), equalTo(Arrays.asList(1L, 2L, 3L, 4L)));
+        int groups = 0;
+        for(List<Long> group: MergingIterable.onLongKeys(inputs, IDENTITY).groups()) {
+            assertThat(group.size(), is(Arrays.asList(3, 1, 3, 1).get(groups++)));
+        }
+        assertThat(groups, is(4));
+    }
+
+    public void shouldMergeReusedCsvRecords() {
+        List<Iterable<CsvRecord>> shards = new ArrayList<>();
+        shards.add(csv("1\ta\n4\td\n").records());
+        shards.add(csv("2\tb\n3\tc\n5\te\n").records());
+        LongKeyExtractor<CsvRecord> key = new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(0);
+            }
+        };
+        StringBuilder values = new StringBuilder();
+        for(CsvRecord record: MergingIterable.onLongKeys(shards, key)) {
+            values.append(record.get(1));
+        }
+        assertThat(values.toString(), is("abcde"));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldFailOnUnsortedInput() {
+        List<List<Long>> inputs = Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L, 1L));
+        toList(MergingIterable.onLongKeys(inputs, IDENTITY));
+    }
+
+    private static CSVLineIterable csv(String content) {
+        return new CSVLineIterable(new LineIterable(new StringReader(content)), '\t');
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        for(T t: iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,160 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ParallelBlobIterableTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] OPEN_TAGS = new String[] {"<node", "<way"};
+    private static final String[] CLOSE_TAGS = new String[] {"</node>", "</way>"};
+
+    private String xml;
+    private File file;
+
+    @BeforeClass
+    public void before() throws IOException {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder("<osm>\n");
+        for(int i = 0; i < 1000; i++) {
+            String tag = random.nextInt(3) == 0 ? "way" : "node";
+            buf.append('<').append(tag).append(" id=\"").append(i).append("\">");
+            // multi byte chars and a few large blobs
+            int length = random.nextInt(10) == 0 ? 5000 : random.nextInt(100);
+            for(int j = 0; j < length; j++) {
+                buf.append(random.nextInt(10) == 0 ? 'é' : (char) ('a' + random.nextInt(26)));
+            }
+            buf.append("</").append(tag).append(">\n  <nd/> </no\n");
+        }
+        buf.append("<node id=\"unterminated\">");
+        xml = buf.toString();
+        file = File.createTempFile("parallel", ".xml");
+        Files.write(file.toPath(), xml.getBytes(UTF8));
+    }
+
+    @AfterClass
+    public void after() {
+        file.delete();
+    }
+
+    @DataProvider
+    public Object[][] chunkSizes() {
+        return new Object[][] { {7}, {100}, {4096}, {64 * 1024}, {ParallelBlobIterable.DEFAULT_CHUNK_SIZE} };
+    }
+
+    @Test(dataProvider = "chunkSizes")
+    public void shouldExtractSameBlobsAsBlobIterable(int chunkSize) throws IOException {
+        List<String> expected = expected();
+        assertThat(expected.size(), is(1000));
+        try (ParallelBlobIterable blobs = new ParallelBlobIterable(file, UTF8, OPEN_TAGS, CLOSE_TAGS, 3, chunkSize, true)) {
+            assertThat(toList(blobs), equalTo(expected));
+            // can iterate more than once
+            assertThat(toList(blobs), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void shouldExtractUnordered() throws IOException {
+        List<String> expected = expected();
+        Collections.sort(expected);
+        try (ParallelBlobIterable blobs = new ParallelBlobIterable(file, UTF8, OPEN_TAGS, CLOSE_TAGS, 4, 1024, false)) {
+            List<String> result = toList(blobs);
+            Collections.sort(result);
+            assertThat(result, equalTo(expected));
+        }
+    }
+
+    @Test
+    public void shouldProcessBlobsConcurrently() throws IOException {
+        long expected = 0;
+        for(String blob: expected()) {
+            expected += blob.length();
+        }
+        try (ParallelBlobIterable blobs = new ParallelBlobIterable(file, "<node", "</node>", 2, true)) {
+            Iterable<Integer> lengths = blobs.process(new Processor<String, Integer>() {
+                @Override
+                public Integer process(String blob) {
+                    return blob.length();
+                }
+            });
+            long total = 0;
+            for(int length: lengths) {
+                total += length;
+            }
+            long nodes = 0;
+            for(String blob: new BlobIterable(new StringReader(xml), "<node", "</node>")) {
+                nodes += blob.length();
+            }
+            assertThat(total, is(nodes));
+            assertThat(total < expected, is(true));
+        }
+    }
+
+    @DataProvider
+    public Object[][] orders() {
+        return new Object[][] { {true}, {false} };
+    }
+
+    @Test(dataProvider = "orders")
+    public void shouldRethrowWhenBlobFails(boolean ordered) throws IOException {
+        int count = 0;
+        try (ParallelBlobIterable blobs = new ParallelBlobIterable(file, UTF8, OPEN_TAGS, CLOSE_TAGS, 3, 4096, ordered)) {
+            Iterable<String> processed = blobs.process(new Processor<String, String>() {
+                @Override
+                public String process(String blob) {
+                    if(blob.contains(" id=\"500\"")) {
+                        throw new IllegalArgumentException("oops");
+                    }
+                    return blob;
+                }
+            });
+            try {
+                for(@SuppressWarnings("unused") String blob: processed) {
+                    count++;
+                }
+                throw new AssertionError("expected the failure to be rethrown");
+            } catch (IllegalStateException e) {
+                Throwable cause = e;
+                while(cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                assertThat(cause.getMessage(), is("oops"));
+            }
+            // the chunk with the failing blob is never returned
+            assertThat(count < 1000, is(true));
+            // the failure does not affect the next iteration
+            List<String> expected = expected();
+            List<String> result = toList(blobs);
+            Collections.sort(expected);
+            Collections.sort(result);
+            assertThat(result, equalTo(expected));
+        }
+    }
+
+    private List<String> expected() {
+        return toList(new BlobIterable(new StringReader(xml), OPEN_TAGS, CLOSE_TAGS, BlobIterable.DEFAULT_BUFFER_SIZE));
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        for(T t: iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,187 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ParallelCsvIterableTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String csv;
+    private File file;
+
+    @BeforeClass
+    public void before() throws IOException {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder();
+        for(int i = 0; i < 2000; i++) {
+            buf.append(i).append(',');
+            switch(random.nextInt(4)) {
+            case 0:
+                buf.append("\"multi\nline, \"\"quoted\"\"\n field ").append(i).append('"');
+                break;
+            case 1:
+                buf.append("\"quoted, field\"");
+                break;
+            case 2:
+                buf.append("plain ").append("café".substring(0, random.nextInt(4)));
+                break;
+            default:
+                buf.append("\"\"");
+            }
+            buf.append(',').append(random.nextInt(1000)).append('\n');
+        }
+        csv = buf.toString();
+        file = File.createTempFile("parallel", ".csv");
+        Files.write(file.toPath(), csv.getBytes(UTF8));
+    }
+
+    @AfterClass
+    public void after() {
+        file.delete();
+    }
+
+    @DataProvider
+    private Object[][] chunkSizes() {
+        // small chunks make sure chunks start inside quoted fields and records span several chunks
+        return new Object[][] {{1}, {7}, {100}, {4096}, {ParallelCsvIterable.DEFAULT_CHUNK_SIZE}};
+    }
+
+    @Test(dataProvider="chunkSizes")
+    public void shouldParseInOrder(int chunkSize) throws IOException {
+        List<List<String>> expected = sequential();
+        List<List<String>> records = new ArrayList<>();
+        try(ParallelCsvIterable it = new ParallelCsvIterable(file, UTF8, ',', '"', 3, chunkSize, true)) {
+            for(List<String> record: it) {
+                records.add(record);
+            }
+        }
+        assertThat(records.size(), is(2000));
+        assertThat(records, equalTo(expected));
+    }
+
+    @Test(dataProvider="chunkSizes")
+    public void shouldParseUnordered(int chunkSize) throws IOException {
+        List<List<String>> expected = sequential();
+        List<List<String>> records = new ArrayList<>();
+        try(ParallelCsvIterable it = new ParallelCsvIterable(file, UTF8, ',', '"', 3, chunkSize, false)) {
+            for(List<String> record: it) {
+                records.add(record);
+            }
+        }
+        Comparator<List<String>> byId = new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> o1, List<String> o2) {
+                return Integer.compare(Integer.parseInt(o1.get(0)), Integer.parseInt(o2.get(0)));
+            }
+        };
+        Collections.sort(records, byId);
+        assertThat(records, equalTo(expected));
+    }
+
+    @Test
+    public void shouldApplyColumnsAndFilters() throws IOException {
+        int count = 0;
+        try(ParallelCsvIterable it = new ParallelCsvIterable(file, UTF8, ',', '"', 2, 1000, true).withColumns(1, 0).withFilter(1, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                return field.length() > 0 && field.charAt(0) == 'm';
+            }
+        })) {
+            for(List<String> record: it) {
+                assertThat(record.size(), is(2));
+                assertThat(record.get(0), equalTo("multi\nline, \"quoted\"\n field " + record.get(1)));
+                count++;
+            }
+        }
+        int expected = 0;
+        for(List<String> record: sequential()) {
+            if(record.get(1).startsWith("m")) {
+                expected++;
+            }
+        }
+        assertThat(count, is(expected));
+    }
+
+    @DataProvider
+    private Object[][] orders() {
+        return new Object[][] {{true}, {false}};
+    }
+
+    @Test(dataProvider="orders")
+    public void shouldRethrowWhenChunkFails(boolean ordered) throws IOException {
+        int count = 0;
+        try(ParallelCsvIterable it = new ParallelCsvIterable(file, UTF8, ',', '"', 3, 1000, ordered).withFilter(0, new Filter<CharSequence>() {
+            @Override
+            public boolean passes(CharSequence field) {
+                if("1234".equals(field.toString())) {
+                    throw new IllegalArgumentException("oops");
+                }
+                return true;
+            }
+        })) {
+            try {
+                for(@SuppressWarnings("unused") List<String> record: it) {
+                    count++;
+                }
+                throw new AssertionError("expected the failure to be rethrown");
+            } catch(IllegalStateException e) {
+                Throwable cause = e;
+                while(cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                assertThat(cause.getMessage(), is("oops"));
+            }
+        }
+        // the chunk with the failing record is never returned
+        assertThat(count < 2000, is(true));
+    }
+
+    @Test
+    public void shouldIterateMoreThanOnce() throws IOException {
+        List<List<String>> expected = sequential();
+        try(ParallelCsvIterable it = new ParallelCsvIterable(file, UTF8, ',', '"', 2, 1000, true)) {
+            for(int i = 0; i < 3; i++) {
+                List<List<String>> records = new ArrayList<>();
+                for(List<String> record: it) {
+                    records.add(record);
+                }
+                assertThat(records, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void shouldHandleEmptyFile() throws IOException {
+        File empty = File.createTempFile("empty", ".csv");
+        try(ParallelCsvIterable it = new ParallelCsvIterable(empty, ',', 2, true)) {
+            assertThat(it.iterator().hasNext(), is(false));
+        } finally {
+            empty.delete();
+        }
+    }
+
+    private List<List<String>> sequential() {
+        List<List<String>> records = new ArrayList<>();
+        for(List<String> record: new CSVLineIterable(new LineIterable(new StringReader(csv)), ',')) {
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,224 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ParallelGzipInputStreamTest {
+    public void shouldInflateConcatenatedMembers() throws IOException {
+        File file = File.createTempFile("members", ".gz");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                for(int i = 0; i < 20; i++) {
+                    out.write(gzip(content(i, 1000 * i)));
+                }
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldInflateLargeMembersWhileReading() throws IOException {
+        File file = File.createTempFile("members", ".gz");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                out.write(gzip(content(1, 10)));
+                // larger than MAX_MEMBER_SIZE
+                out.write(gzip(content(2, ParallelGzipInputStream.MAX_MEMBER_SIZE / 50 + 1000)));
+                out.write(gzip(content(3, 10)));
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldInflateBgzfBlocks() throws IOException {
+        File file = File.createTempFile("blocks", ".bgz");
+        try {
+            byte[] content = content(42, 50000);
+            try(OutputStream out = new FileOutputStream(file)) {
+                for(int offset = 0; offset < content.length; offset += 60000) {
+                    out.write(bgzfBlock(content, offset, Math.min(60000, content.length - offset)));
+                }
+                // BGZF end of file marker
+                out.write(bgzfBlock(content, 0, 0));
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldInflateMembersAfterBgzfBlocks() throws IOException {
+        File file = File.createTempFile("blocks", ".bgz");
+        try {
+            byte[] content = content(42, 10000);
+            try(OutputStream out = new FileOutputStream(file)) {
+                for(int offset = 0; offset < content.length; offset += 60000) {
+                    out.write(bgzfBlock(content, offset, Math.min(60000, content.length - offset)));
+                }
+                for(int i = 0; i < 3; i++) {
+                    out.write(gzip(content(i, 1000)));
+                }
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldInflateSingleMember() throws IOException {
+        File file = File.createTempFile("single", ".gz");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                out.write(gzip(content(7, 10000)));
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldIgnoreTrailingGarbage() throws IOException {
+        File file = File.createTempFile("garbage", ".gz");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                out.write(gzip(content(1, 100)));
+                out.write(gzip(content(2, 100)));
+                out.write(new byte[] {0, 0, 0, 0});
+            }
+            assertSameAsGzipInputStream(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expectedExceptions=IOException.class)
+    public void shouldFailOnCorruptMember() throws IOException {
+        File file = File.createTempFile("corrupt", ".gz");
+        try {
+            byte[] second = gzip(content(2, 1000));
+            // break the crc in the trailer
+            second[second.length - 8] ^= 1;
+            try(OutputStream out = new FileOutputStream(file)) {
+                out.write(gzip(content(1, 1000)));
+                out.write(second);
+            }
+            read(new ParallelGzipInputStream(file, 2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void shouldReadLinesInParallel() throws IOException {
+        File file = File.createTempFile("lines", ".gz");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                for(int i = 0; i < 10; i++) {
+                    StringBuilder buf = new StringBuilder();
+                    for(int j = 0; j < 1000; j++) {
+                        buf.append(i * 1000 + j).append('\n');
+                    }
+                    out.write(gzip(buf.toString().getBytes(Charset.forName("UTF-8"))));
+                }
+            }
+            int expected = 0;
+            try(LineIterable lines = LineIterable.openGzipFileInParallel(file.getAbsolutePath(), 4)) {
+                for(String line: lines) {
+                    assertThat(line, is("" + expected++));
+                }
+            }
+            assertThat(expected, is(10000));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertSameAsGzipInputStream(File file) throws IOException {
+        byte[] expected = read(new GZIPInputStream(new FileInputStream(file)));
+        for(int threads: new int[] {1, 4}) {
+            assertThat(read(new ParallelGzipInputStream(file, threads)), is(expected));
+        }
+    }
+
+    private byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Pseudo random lines; compressible but not too much.
+     */
+    private byte[] content(long seed, int lines) {
+        Random random = new Random(seed);
+        StringBuilder buf = new StringBuilder();
+        for(int i = 0; i < lines; i++) {
+            buf.append(random.nextInt()).append(',').append(random.nextInt(1000)).append(",some text\n");
+        }
+        return buf.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] bgzfBlock(byte[] content, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(content, offset, length);
+        int blockSize = 18 + compressedLength + 8;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeShort(out, blockSize - 1);
+        out.write(compressed, 0, compressedLength);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, length);
+        return out.toByteArray();
+    }
+
+    private void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xffff);
+        writeShort(out, (value >>> 16) & 0xffff);
+    }
+}
@@ -0,0 +1,130 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+@Test
+public class PipelineMetricsTest {
+    private final Processor<Integer, Integer> failOnMultiplesOfTen = new Processor<Integer, Integer>() {
+        @Override
+        public Integer process(Integer input) {
+            if(input % 10 == 0) {
+                throw new IllegalArgumentException("no multiples of 10");
+            }
+            return input;
+        }
+    };
+
+    public void shouldCollectMetricsForConcurrentProcessing() throws IOException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input(1000), failOnMultiplesOfTen, 10, 4, 5).withListener(metrics)) {
+            assertThat(Iterables.count(cpi), is(900l));
+        }
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getItemsIn(), is(1000l));
+        assertThat(snapshot.getItemsOut(), is(900l));
+        assertThat(snapshot.getBlocksScheduled(), is(100l));
+        assertThat(snapshot.getBlocksCompleted(), is(100l));
+        // the first item in every block is sampled
+        assertThat(snapshot.getLatencySamples(), is(100l));
+        assertThat(snapshot.getProcessorExceptions(), is(100l));
+        assertThat(snapshot.getLatencyPercentileNanos(99), greaterThanOrEqualTo(snapshot.getLatencyPercentileNanos(50)));
+    }
+
+    public void shouldCollectMetricsInTaskPerBlockMode() throws IOException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrentlyOnVirtualThreads(input(100), failOnMultiplesOfTen, 1, 10, 5).withListener(metrics)) {
+            assertThat(Iterables.count(cpi), is(90l));
+        }
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getItemsIn(), is(100l));
+        assertThat(snapshot.getItemsOut(), is(90l));
+        assertThat(snapshot.getBlocksScheduled(), is(100l));
+        assertThat(snapshot.getProcessorExceptions(), is(10l));
+    }
+
+    public void shouldReportBlockedConsumer() throws IOException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        Processor<Integer, Integer> slow = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return input;
+            }
+        };
+        try(ConcurrentProcessingIterable<Integer, Integer> cpi = Iterables.processConcurrently(input(20), slow, 1, 2, 5).withListener(metrics)) {
+            Iterables.consume(cpi);
+        }
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        // the consumer waits for a single worker that needs 100ms in total
+        assertThat(snapshot.getConsumerBlockedNanos(), greaterThan(50000000l));
+        assertThat(snapshot.getMeanLatencyNanos() > 5000000, is(true));
+    }
+
+    public void shouldCollectMetricsForProcessingIterable() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ProcessingIterable<Integer, Integer> it = new ProcessingIterable<>(input(10).iterator(), failOnMultiplesOfTen).withListener(metrics);
+        int failures = 0;
+        for(Iterator<Integer> iterator = it.iterator(); iterator.hasNext();) {
+            try {
+                iterator.next();
+            } catch (IllegalArgumentException e) {
+                failures++;
+            }
+        }
+        assertThat(failures, is(1));
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getItemsIn(), is(10l));
+        assertThat(snapshot.getItemsOut(), is(9l));
+        assertThat(snapshot.getLatencySamples(), is(1l));
+        assertThat(snapshot.getProcessorExceptions(), is(1l));
+    }
+
+    public void shouldCollectMetricsForFilteringIterable() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        FilteringIterable<Integer> it = new FilteringIterable<>(input(100), new Filter<Integer>() {
+            @Override
+            public boolean passes(Integer o) {
+                return o % 4 == 0;
+            }
+        }).withListener(metrics);
+        assertThat(Iterables.count(it), is(25l));
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getItemsIn(), is(100l));
+        assertThat(snapshot.getItemsOut(), is(25l));
+    }
+
+    public void shouldCalculatePercentiles() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        for(int i=0;i<99;i++) {
+            metrics.itemProcessed(1000);
+        }
+        metrics.itemProcessed(1000000);
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getLatencyPercentileNanos(50), is(1023l));
+        assertThat(snapshot.getLatencyPercentileNanos(99), is(1023l));
+        assertThat(snapshot.getLatencyPercentileNanos(100), is((1l<<20)-1));
+        assertThat(snapshot.getMeanLatencyNanos(), is((99*1000 + 1000000)/100.0));
+    }
+
+    private List<Integer> input(int size) {
+        List<Integer> input = new ArrayList<>();
+        for(int i=0; i< size;i++) {
+            input.add(i);
+        }
+        return input;
+    }
+}
@@ -0,0 +1,161 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ReadAheadInputStreamTest {
+    public void shouldReadAllBytes() throws IOException {
+        byte[] bytes = new byte[100000];
+        new Random(42).nextBytes(bytes);
+        for(int bufferSize: new int[] {1, 7, 4096, 1000000}) {
+            try(ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(bytes), bufferSize, 3)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                // mix single byte and bulk reads
+                int b = in.read();
+                out.write(b);
+                byte[] buf = new byte[333];
+                int read;
+                while((read = in.read(buf)) >= 0) {
+                    out.write(buf, 0, read);
+                }
+                assertThat(in.read(), is(-1));
+                assertThat(out.toByteArray(), is(bytes));
+            }
+        }
+    }
+
+    @Test(expectedExceptions=IOException.class)
+    public void shouldRethrowFailureOfUnderlyingStream() throws IOException {
+        InputStream failing = new InputStream() {
+            int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if(count++ > 10000) {
+                    throw new IOException("oops");
+                }
+                return 'x';
+            }
+        };
+        try(ReadAheadInputStream in = new ReadAheadInputStream(failing, 100, 2)) {
+            byte[] buf = new byte[100];
+            while(in.read(buf) >= 0) {
+            }
+        }
+    }
+
+    @Test(expectedExceptions=IOException.class)
+    public void shouldRethrowRuntimeExceptionOfUnderlyingStream() throws IOException {
+        InputStream failing = new InputStream() {
+            int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if(count++ > 10000) {
+                    throw new IllegalStateException("oops");
+                }
+                return 'x';
+            }
+        };
+        try(ReadAheadInputStream in = new ReadAheadInputStream(failing, 100, 2)) {
+            byte[] buf = new byte[100];
+            while(in.read(buf) >= 0) {
+            }
+        }
+    }
+
+    public void shouldKeepFailingAfterFailure() throws IOException {
+        InputStream failing = new InputStream() {
+            int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if(count++ > 10000) {
+                    throw new IOException("oops");
+                }
+                return 'x';
+            }
+        };
+        try(ReadAheadInputStream in = new ReadAheadInputStream(failing, 100, 2)) {
+            byte[] buf = new byte[100];
+            int failures = 0;
+            // a caller that catches the exception and reads again should not see the end of the stream
+            for(int i = 0; i < 1000 && failures < 3; i++) {
+                try {
+                    assertThat(in.read(buf) >= 0, is(true));
+                } catch(IOException e) {
+                    assertThat(e.getCause().getMessage(), is("oops"));
+                    failures++;
+                }
+            }
+            assertThat(failures, is(3));
+        }
+    }
+
+    @Test(timeOut=5000)
+    public void shouldNotCloseUnderlyingStreamDuringRead() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicBoolean closedDuringRead = new AtomicBoolean();
+        InputStream slow = new InputStream() {
+            volatile boolean inRead = false;
+
+            @Override
+            public int read() throws IOException {
+                inRead = true;
+                reading.countDown();
+                try {
+                    // uninterruptible, like a read that is blocked in native code
+                    while(release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // keep blocking
+                        }
+                    }
+                    return 'x';
+                } finally {
+                    inRead = false;
+                }
+            }
+
+            @Override
+            public void close() {
+                closedDuringRead.set(inRead);
+                closed.countDown();
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(slow, 100, 2);
+        reading.await();
+        in.close();
+        assertThat(closed.getCount(), is(1L));
+        release.countDown();
+        closed.await();
+        assertThat(closedDuringRead.get(), is(false));
+    }
+
+    @Test(timeOut=5000)
+    public void shouldStopReadingWhenClosedEarly() throws IOException {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return 'x';
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(endless, 100, 2);
+        assertThat(in.read(), is((int)'x'));
+        in.close();
+    }
+}
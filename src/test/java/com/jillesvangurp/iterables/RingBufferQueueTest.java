@@ -0,0 +1,122 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+@Test
+public class RingBufferQueueTest {
+    public void shouldOfferAndPollInFifoOrder() {
+        RingBufferQueue<Integer> queue = RingBufferQueue.singleProducerMultiConsumer(3, WaitStrategy.YIELD);
+        // wraps around the buffer several times
+        for(int round=0; round<10; round++) {
+            assertThat(queue.offer(1), is(true));
+            assertThat(queue.offer(2), is(true));
+            assertThat(queue.offer(3), is(true));
+            // capacity is not rounded up from the outside
+            assertThat(queue.offer(4), is(false));
+            assertThat(queue.size(), is(3));
+            assertThat(queue.remainingCapacity(), is(0));
+            assertThat(queue.peek(), is(1));
+            assertThat(queue.poll(), is(1));
+            assertThat(queue.poll(), is(2));
+            assertThat(queue.poll(), is(3));
+            assertThat(queue.poll(), nullValue());
+            assertThat(queue.isEmpty(), is(true));
+        }
+    }
+
+    public void shouldTimeOutWhenFullOrEmpty() throws InterruptedException {
+        RingBufferQueue<Integer> queue = RingBufferQueue.multiProducerSingleConsumer(1, WaitStrategy.PARK);
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), nullValue());
+        queue.put(1);
+        assertThat(queue.offer(2, 10, TimeUnit.MILLISECONDS), is(false));
+        assertThat(queue.take(), is(1));
+    }
+
+    @Test(timeOut=5000, expectedExceptions=InterruptedException.class)
+    public void shouldBeInterruptible() throws InterruptedException {
+        RingBufferQueue<Integer> queue = RingBufferQueue.multiProducerSingleConsumer(1, WaitStrategy.PARK);
+        Thread.currentThread().interrupt();
+        queue.take();
+    }
+
+    @Test(timeOut=20000)
+    public void shouldHandOffAllElementsFromOneProducerToManyConsumers() throws Exception {
+        final RingBufferQueue<Integer> queue = RingBufferQueue.singleProducerMultiConsumer(16, WaitStrategy.YIELD);
+        int consumers = 4;
+        final int elements = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(consumers);
+        try {
+            List<Future<Long>> sums = new ArrayList<>();
+            for(int i=0; i<consumers;i++) {
+                sums.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        long sum=0;
+                        int element;
+                        while((element = queue.take()) >= 0) {
+                            sum+=element;
+                        }
+                        return sum;
+                    }
+                }));
+            }
+            long expected=0;
+            for(int i=0; i<elements;i++) {
+                queue.put(i);
+                expected+=i;
+            }
+            for(int i=0; i<consumers;i++) {
+                queue.put(-1);
+            }
+            long sum=0;
+            for (Future<Long> future : sums) {
+                sum+=future.get();
+            }
+            assertThat(sum, is(expected));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut=20000)
+    public void shouldHandOffAllElementsFromManyProducersToOneConsumer() throws Exception {
+        final RingBufferQueue<Integer> queue = RingBufferQueue.multiProducerSingleConsumer(16, WaitStrategy.YIELD);
+        int producers = 4;
+        final int elementsPerProducer = 25000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            for(int i=0; i<producers;i++) {
+                executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for(int j=0; j<elementsPerProducer;j++) {
+                            queue.put(j);
+                        }
+                        return null;
+                    }
+                });
+            }
+            long sum=0;
+            for(int i=0; i<producers*elementsPerProducer;i++) {
+                sum+=queue.take();
+            }
+            long expected = producers * ((long)elementsPerProducer * (elementsPerProducer-1) / 2);
+            assertThat(sum, is(expected));
+            assertThat(queue.poll(), nullValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+@Test
+public class SortMergeJoinTest {
+    private final List<Long> left = Arrays.asList(1L, 2L, 2L, 4L, 6L, 6L);
+    private final List<Long> right = Arrays.asList(0L, 2L, 3L, 4L, 4L, 4L, 7L);
+
+    private static final LongKeyExtractor<Long> IDENTITY = new LongKeyExtractor<Long>() {
+        @Override
+        public long key(Long value) {
+            return value;
+        }
+    };
+
+    public void shouldInnerJoin() {
+        List<String> groups = groups(SortMergeJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, SortMergeJoin.JoinType.INNER));
+        assertThat(groups, equalTo(Arrays.asList("[2, 2]:[2]", "[4]:[4, 4, 4]")));
+    }
+
+    public void shouldLeftJoin() {
+        List<String> groups = groups(SortMergeJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, SortMergeJoin.JoinType.LEFT));
+        assertThat(groups, equalTo(Arrays.asList("[1]:[]", "[2, 2]:[2]", "[4]:[4, 4, 4]", "[6, 6]:[]")));
+    }
+
+    public void shouldFullJoin() {
+        List<String> groups = groups(SortMergeJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, SortMergeJoin.JoinType.FULL));
+        assertThat(groups, equalTo(Arrays.asList("[]:[0]", "[1]:[]", "[2, 2]:[2]", "[]:[3]", "[4]:[4, 4, 4]", "[6, 6]:[]", "[]:[7]")));
+    }
+
+    public void shouldJoinWithComparator() {
+        List<String> names = Arrays.asList("Bob", "alice", "Carol");
+        List<String> pets = Arrays.asList("ALICE:cat", "bob:dog", "bob:fish", "dave:cow");
+        Processor<String, String> name = new Processor<String, String>() {
+            @Override
+            public String process(String input) {
+                return input;
+            }
+        };
+        Processor<String, String> owner = new Processor<String, String>() {
+            @Override
+            public String process(String input) {
+                return input.substring(0, input.indexOf(':'));
+            }
+        };
+        Comparator<String> ignoreCase = String.CASE_INSENSITIVE_ORDER;
+        List<String> sortedNames = new ArrayList<>(names);
+        Collections.sort(sortedNames, ignoreCase);
+        List<String> groups = groups(SortMergeJoin.join(sortedNames, name, pets, owner, ignoreCase, SortMergeJoin.JoinType.LEFT));
+        assertThat(groups, equalTo(Arrays.asList("[alice]:[ALICE:cat]", "[Bob]:[bob:dog, bob:fish]", "[Carol]:[]")));
+    }
+
+    public void shouldStreamGroupsAndSkipUnreadElements() {
+        SortMergeJoin.Cursor<Long, Long> cursor = SortMergeJoin.joinOnLongKeys(left, IDENTITY, right, IDENTITY, SortMergeJoin.JoinType.FULL).cursor();
+        assertThat(cursor.next(), is(true));
+        assertThat(cursor.hasLeft(), is(false));
+        assertThat(cursor.right().next(), is(0L));
+        assertThat(cursor.next(), is(true));
+        assertThat(cursor.next(), is(true));
+        // only read one of the two left elements of group 2
+        assertThat(cursor.left().next(), is(2L));
+        assertThat(cursor.next(), is(true));
+        assertThat(cursor.hasRight(), is(true));
+        assertThat(cursor.right().next(), is(3L));
+        assertThat(cursor.right().hasNext(), is(false));
+        assertThat(cursor.next(), is(true));
+        Iterator<Long> group = cursor.right();
+        int count = 0;
+        while(group.hasNext()) {
+            assertThat(group.next(), is(4L));
+            count++;
+        }
+        assertThat(count, is(3));
+        assertThat(cursor.next(), is(true));
+        assertThat(cursor.next(), is(true));
+        assertThat(cursor.right().next(), is(7L));
+        assertThat(cursor.next(), is(false));
+        assertThat(cursor.next(), is(false));
+    }
+
+    public void shouldJoinReusedCsvRecords() {
+        String orders = "1,10\n2,10\n3,11\n4,13\n";
+        String customers = "10,alice\n11,bob\n12,carol\n13,dave\n";
+        LongKeyExtractor<CsvRecord> orderCustomer = new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(1);
+            }
+        };
+        LongKeyExtractor<CsvRecord> customerId = new LongKeyExtractor<CsvRecord>() {
+            @Override
+            public long key(CsvRecord record) {
+                return record.getLong(0);
+            }
+        };
+        SortMergeJoin.Cursor<CsvRecord, CsvRecord> cursor = SortMergeJoin.joinOnLongKeys(
+                new CSVLineIterable(new LineIterable(new StringReader(customers)), ',').records(), customerId,
+                new CSVLineIterable(new LineIterable(new StringReader(orders)), ',').records(), orderCustomer,
+                SortMergeJoin.JoinType.LEFT).cursor();
+        List<String> result = new ArrayList<>();
+        while(cursor.next()) {
+            String customer = cursor.left().next().get(1);
+            int count = 0;
+            Iterator<CsvRecord> customerOrders = cursor.right();
+            while(customerOrders.hasNext()) {
+                customerOrders.next();
+                count++;
+            }
+            result.add(customer + "=" + count);
+        }
+        assertThat(result, equalTo(Arrays.asList("alice=2", "bob=1", "carol=0", "dave=1")));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldFailOnUnsortedInput() {
+        groups(SortMergeJoin.joinOnLongKeys(Arrays.asList(1L, 3L, 2L), IDENTITY, right, IDENTITY, SortMergeJoin.JoinType.INNER));
+    }
+
+    private static <L, R> List<String> groups(SortMergeJoin<L, R> join) {
+        List<String> groups = new ArrayList<>();
+        for(SortMergeJoin.Group<L, R> group: join) {
+            groups.add(group.getLeft() + ":" + group.getRight());
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,80 @@
+package com.jillesvangurp.iterables;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test
+public class XmlElementIterableTest {
+    private static final String XML = "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE root [<!ELEMENT root ANY> <!ENTITY gt \"&#62;\">]>\n"
+            + "<!-- <a>not an element</a> -->\n"
+            + "<root id='1'>\n"
+            + "  <a x=\"1>2\" y='/>'><a>nested</a><b/></a>\n"
+            + "  <b/>\n"
+            + "  <c><![CDATA[</c><c>]]><!-- </c> --><?pi </c>?></c >\n"
+            + "  text &amp; more\n"
+            + "  <d\n    z=\"'\"\n  />\n"
+            + "</root>\n";
+
+    @DataProvider
+    public Object[][] bufferSizes() {
+        return new Object[][] { {1}, {3}, {16}, {BlobIterable.DEFAULT_BUFFER_SIZE} };
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void shouldSplitChildrenOfRoot(int bufferSize) {
+        List<String> expected = Arrays.asList("<a x=\"1>2\" y='/>'><a>nested</a><b/></a>", "<b/>", "<c><![CDATA[</c><c>]]><!-- </c> --><?pi </c>?></c >", "<d\n    z=\"'\"\n  />");
+        assertThat(toList(new XmlElementIterable(new StringReader(XML), 1, bufferSize)), equalTo(expected));
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void shouldSplitAtOtherDepths(int bufferSize) {
+        List<String> root = toList(new XmlElementIterable(new StringReader(XML), 0, bufferSize));
+        assertThat(root.size(), is(1));
+        assertThat(root.get(0).startsWith("<root id='1'>"), is(true));
+        assertThat(root.get(0).endsWith("</root>"), is(true));
+        assertThat(toList(new XmlElementIterable(new StringReader(XML), 2, bufferSize)), equalTo(Arrays.asList("<a>nested</a>", "<b/>")));
+    }
+
+    @Test(dataProvider = "bufferSizes")
+    public void shouldSplitGeneratedElements(int bufferSize) {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder xml = new StringBuilder("<osm>\n");
+        for(int i = 0; i < 500; i++) {
+            StringBuilder element = new StringBuilder("<node id=\"").append(i).append("\">");
+            int tags = random.nextInt(random.nextInt(10) == 0 ? 500 : 5);
+            for(int j = 0; j < tags; j++) {
+                element.append("<tag k=\"k").append(j).append("\" v=\"</node>é\"/>");
+            }
+            element.append("</node>");
+            expected.add(element.toString());
+            xml.append("  ").append(element).append('\n');
+        }
+        xml.append("</osm>\n");
+        assertThat(toList(new XmlElementIterable(new StringReader(xml.toString()), 1, bufferSize)), equalTo(expected));
+    }
+
+    public void shouldIgnoreTruncatedElement() {
+        assertThat(toList(new XmlElementIterable(new StringReader("<r><a/><b><c></c>"), 1)), equalTo(Arrays.asList("<a/>")));
+        assertThat(toList(new XmlElementIterable(new StringReader(""), 1)).size(), is(0));
+    }
+
+    private static List<String> toList(Iterable<String> iterable) {
+        List<String> list = new ArrayList<>();
+        for(String s: iterable) {
+            list.add(s);
+        }
+        return list;
+    }
+}